@@ -32,4 +32,16 @@ public interface AnalysisListener {
    * @param cause
    */
   public void error(Object src, String message, Throwable cause);
+
+  /**
+   * Receive notification about the amount of data buffered while analyzing a non-seekable input
+   * stream. The default implementation passes it on as an informational message.
+   * 
+   * @param src
+   * @param memoryBytes the number of bytes held in memory
+   * @param diskBytes the number of bytes spilled to a temporary file
+   */
+  public default void buffered(Object src, long memoryBytes, long diskBytes) {
+    info(src, "Buffered " + memoryBytes + " bytes in memory and " + diskBytes + " bytes on disk");
+  }
 }
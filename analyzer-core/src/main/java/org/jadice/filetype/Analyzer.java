@@ -1,12 +1,31 @@
 package org.jadice.filetype;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.stream.XMLStreamException;
 
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
@@ -15,24 +34,53 @@ import jakarta.xml.bind.ValidationEvent;
 import jakarta.xml.bind.ValidationEventHandler;
 import jakarta.xml.bind.ValidationEventLocator;
 
+import org.jadice.filetype.database.CompiledDatabase;
 import org.jadice.filetype.database.Database;
+import org.jadice.filetype.database.DatabaseLoader;
+import org.jadice.filetype.database.DatabaseSnapshot;
 import org.jadice.filetype.database.DescriptionAction;
 import org.jadice.filetype.database.Type;
-import org.jadice.filetype.io.MemoryInputStream;
+import org.jadice.filetype.io.ByteBufferInputStream;
+import org.jadice.filetype.io.MappedFileInputStream;
 import org.jadice.filetype.io.RandomAccessFileInputStream;
+import org.jadice.filetype.io.SeekableByteChannelInputStream;
 import org.jadice.filetype.io.SeekableInputStream;
+import org.jadice.filetype.io.SpillingInputStream;
 import org.jadice.filetype.io.UncloseableInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * The controller class and main entry point for the filetype analyzer package.
+ * <p>
+ * The database is frozen when the analyzer is created. A single instance may therefore be shared
+ * between any number of threads without external synchronization.
  *
  */
 public class Analyzer {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Analyzer.class);
 
+  /**
+   * The system property controlling whether {@link #analyze(File)} memory maps regular files. Set
+   * to <code>true</code> to map files of at least {@link #MAPPED_FILES_MIN_SIZE} bytes, all other
+   * files are read using a {@link RandomAccessFileInputStream}.
+   */
+  public static final String MAPPED_FILES_PROPERTY = "jadice.filetype.mappedFiles";
+
+  /**
+   * The minimum size of files which are memory mapped if enabled via the
+   * {@link #MAPPED_FILES_PROPERTY}. An analysis usually touches only a few kilobytes, so smaller
+   * files are read faster than they are mapped and unmapped.
+   */
+  public static final long MAPPED_FILES_MIN_SIZE = 1 << 20;
+
+  /**
+   * The default number of bytes of a non-seekable input stream which are buffered in memory, see
+   * {@link #setMemoryThreshold(long)}.
+   */
+  public static final long DEFAULT_MEMORY_THRESHOLD = 64L * 1024 * 1024;
+
   static final class LoggingEventHandler implements ValidationEventHandler {
     @Override
     public boolean handleEvent(final ValidationEvent event) {
@@ -88,43 +136,71 @@ public class Analyzer {
   };
 
   /**
-   * The filetype database (usually read from a magic.xml definition).
+   * The filetype database (usually read from a magic.xml definition) in its compiled form.
    */
-  private final Type database;
+  private final CompiledDatabase database;
+
+  private volatile Locale locale = Locale.getDefault();
+
+  private volatile long memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
 
-  private Locale locale = Locale.getDefault();
+  private volatile boolean openDocumentMetadata;
 
   public Analyzer(final Type database) {
+    this.database = CompiledDatabase.compile(database);
+  }
+
+  /**
+   * Create an {@link Analyzer} evaluating the given compiled database, e.g. an adaptive one.
+   *
+   * @param database the compiled database
+   */
+  public Analyzer(final CompiledDatabase database) {
     this.database = database;
   }
 
+  /**
+   * Get the compiled database evaluated by this analyzer, e.g. to monitor its match statistics.
+   *
+   * @return the compiled database
+   */
+  public CompiledDatabase getCompiledDatabase() {
+    return database;
+  }
+
 
   /**
    * Create an {@link Analyzer} instance based on a magic.xml definition {@link Database} read from
-   * a named classpath resource.
+   * a named classpath resource. The resource may also contain a {@link DatabaseSnapshot}.
    *
    * @param database classpath resource path, pointing to a XML {@link Database} definition
    * @return a configured {@link Analyzer} instance
    * @throws AnalyzerException if reading the XML {@link Database} failed
    */
   public static Analyzer getInstance(final String database) throws AnalyzerException {
-    try {
-      Unmarshaller unmarshaller = createUnmarshaller();
-      return new Analyzer((Database) unmarshaller.unmarshal(Analyzer.class.getResource(database)));
-    } catch (JAXBException e) {
-      throw new AnalyzerException("Can't load magic database", e);
-    }
+    return getInstance(Analyzer.class.getResource(database));
   }
 
   /**
    * Create an {@link Analyzer} instance based on a magic.xml definition {@link Database} read from
-   * a given {@link URL}.
+   * a given {@link URL}. The URL may also point to a {@link DatabaseSnapshot}.
    *
    * @param database a {@link URL} pointing to a XML {@link Database}
    * @return a configured {@link Analyzer} instance
    * @throws AnalyzerException if reading the XML {@link Database} failed
    */
   public static Analyzer getInstance(final URL database) throws AnalyzerException {
+    if (null != database) {
+      try (InputStream is = database.openStream()) {
+        final Database db = load(is, database);
+        if (null != db) {
+          return new Analyzer(db);
+        }
+      } catch (IOException e) {
+        LOGGER.debug("Can't read {}, falling back to JAXB", database, e);
+      }
+    }
+
     try {
       Unmarshaller unmarshaller = createUnmarshaller();
       return new Analyzer((Database) unmarshaller.unmarshal(database));
@@ -135,13 +211,22 @@ public class Analyzer {
 
   /**
    * Create an {@link Analyzer} instance based on a magic.xml definition {@link Database} contained
-   * in a file.
+   * in a file. The file may also contain a {@link DatabaseSnapshot}.
    *
    * @param database a {@link File} pointing to a XML {@link Database}
    * @return a configured {@link Analyzer} instance
    * @throws AnalyzerException if reading the XML {@link Database} failed
    */
   public static Analyzer getInstance(final File database) throws AnalyzerException {
+    try (InputStream is = new FileInputStream(database)) {
+      final Database db = load(is, database);
+      if (null != db) {
+        return new Analyzer(db);
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Can't read {}, falling back to JAXB", database, e);
+    }
+
     try {
       Unmarshaller unmarshaller = createUnmarshaller();
       return new Analyzer((Database) unmarshaller.unmarshal(database));
@@ -152,29 +237,100 @@ public class Analyzer {
 
   /**
    * Create an {@link Analyzer} instance based on a magic.xml definition {@link Database} read from
-   * a stream.
+   * a stream. The stream may also contain a {@link DatabaseSnapshot}.
    *
    * @param is an {@link InputStream} containing a XML {@link Database}
    * @return a configured {@link Analyzer} instance
    * @throws AnalyzerException if reading the XML {@link Database} failed
    */
   public static Analyzer getInstance(final InputStream is) throws AnalyzerException {
+    final byte[] data;
     try {
-      Unmarshaller unmarshaller = createUnmarshaller();
+      data = is.readAllBytes();
+    } catch (IOException e) {
+      throw new AnalyzerException("Can't load magic database", e);
+    } finally {
       try {
-        return new Analyzer((Database) unmarshaller.unmarshal(is));
-      } finally {
-        try {
-          is.close();
-        } catch (IOException e) {
-          LOGGER.debug("Error when closing a stream", e);
-        }
+        is.close();
+      } catch (IOException e) {
+        LOGGER.debug("Error when closing a stream", e);
       }
+    }
+
+    final Database db;
+    try {
+      db = load(new ByteArrayInputStream(data), is);
+    } catch (IOException e) {
+      throw new AnalyzerException("Can't load magic database", e);
+    }
+    if (null != db) {
+      return new Analyzer(db);
+    }
+
+    try {
+      Unmarshaller unmarshaller = createUnmarshaller();
+      return new Analyzer((Database) unmarshaller.unmarshal(new ByteArrayInputStream(data)));
     } catch (JAXBException e) {
       throw new AnalyzerException("Can't load magic database", e);
     }
   }
 
+  /**
+   * Create an {@link Analyzer} instance based on a {@link DatabaseSnapshot} or a magic.xml
+   * definition {@link Database} contained in a file. Snapshots are memory mapped and loaded without
+   * any XML processing.
+   *
+   * @param database a {@link Path} pointing to a snapshot or a XML {@link Database}
+   * @return a configured {@link Analyzer} instance
+   * @throws AnalyzerException if reading the {@link Database} failed
+   */
+  public static Analyzer getInstance(final Path database) throws AnalyzerException {
+    if (database.getFileSystem() != FileSystems.getDefault()) {
+      try {
+        return getInstance(Files.newInputStream(database));
+      } catch (IOException e) {
+        throw new AnalyzerException("Can't load magic database", e);
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(database, StandardOpenOption.READ)) {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (DatabaseSnapshot.isSnapshot(buffer)) {
+        return new Analyzer(DatabaseSnapshot.load(buffer));
+      }
+    } catch (IOException e) {
+      throw new AnalyzerException("Can't load magic database", e);
+    }
+
+    return getInstance(database.toFile());
+  }
+
+  /**
+   * Load a database from a {@link DatabaseSnapshot} or using the fast {@link DatabaseLoader}.
+   *
+   * @return the database or <code>null</code> if the loader can't handle it and JAXB must be used
+   *         instead
+   * @throws IOException if the stream can't be read
+   * @throws AnalyzerException if the stream contains an invalid snapshot
+   */
+  private static Database load(final InputStream is, final Object source) throws IOException, AnalyzerException {
+    final InputStream in = is.markSupported() ? is : new BufferedInputStream(is);
+    if (DatabaseSnapshot.isSnapshot(in)) {
+      try {
+        return DatabaseSnapshot.load(in);
+      } catch (IOException e) {
+        throw new AnalyzerException("Can't load database snapshot " + source, e);
+      }
+    }
+
+    try {
+      return DatabaseLoader.load(in);
+    } catch (XMLStreamException e) {
+      LOGGER.debug("Can't load {} without JAXB, falling back", source, e);
+      return null;
+    }
+  }
+
   private static Unmarshaller createUnmarshaller() throws JAXBException {
     JAXBContext jc = JAXBContext.newInstance("org.jadice.filetype.database:org.jadice.filetype.matchers:org.jadice.filetype.matchers");
 
@@ -226,25 +382,133 @@ public class Analyzer {
    */
   public Map<String, Object> analyze(final InputStream is, final AnalysisListener listener, final String fileName)
       throws IOException {
-    Map<String, Object> result = new HashMap<>();
     final AnalysisListener effectiveListener = listener != null ? listener : DEFAULT_LISTENER;
-    // POI may close streams during analysis; shield callers by using an uncloseable, seekable wrapper.
     // If the input is already seekable, avoid buffering the full stream in memory.
-    final SeekableInputStream baseStream;
+    if (is instanceof SeekableInputStream)
+      return analyzeSeekable((SeekableInputStream) is, effectiveListener, fileName);
+
+    // Data beyond the memory threshold is spilled to a temporary file.
+    final SpillingInputStream buffer = new SpillingInputStream(new UncloseableInputStream(is), memoryThreshold);
+    try {
+      return analyzeSeekable(buffer, effectiveListener, fileName);
+    } finally {
+      buffer.close();
+      effectiveListener.buffered(this, buffer.getMemoryBytes(), buffer.getDiskBytes());
+    }
+  }
+
+  /**
+   * Analyze the remaining content of the given buffer, i.e. the bytes between its position and its
+   * limit. The data is read in place without copying it, and the position of the buffer is left
+   * unchanged. Memory segments can be analyzed through their {@link ByteBuffer} view.
+   *
+   * @param buffer The data to analyze
+   * @param listener an {@link AnalysisListener} to inform about the analysis progress. May be
+   *          <code>null</code>.
+   * @param fileName for the input
+   * @return analysis results.
+   * @throws IOException if there is a problem accessing the input data.
+   */
+  public Map<String, Object> analyze(final ByteBuffer buffer, final AnalysisListener listener, final String fileName)
+      throws IOException {
+    return analyzeSeekable(new ByteBufferInputStream(buffer), listener != null ? listener : DEFAULT_LISTENER,
+        fileName);
+  }
+
+  /**
+   * Analyze the remaining content of the given buffer without copying it.
+   *
+   * @param buffer The data to analyze
+   * @return analysis results.
+   * @throws IOException if there is a problem accessing the input data.
+   * @see #analyze(ByteBuffer, AnalysisListener, String)
+   */
+  public Map<String, Object> analyze(final ByteBuffer buffer) throws IOException {
+    return analyze(buffer, DEFAULT_LISTENER, null);
+  }
+
+  /**
+   * Analyze a range of the given array without copying it.
+   *
+   * @param data The data to analyze
+   * @param offset the offset of the first byte
+   * @param length the number of bytes
+   * @return analysis results.
+   * @throws IOException if there is a problem accessing the input data.
+   */
+  public Map<String, Object> analyze(final byte[] data, final int offset, final int length) throws IOException {
+    return analyze(ByteBuffer.wrap(data, offset, length), DEFAULT_LISTENER, null);
+  }
+
+  /**
+   * Analyze the supplied stream and pass its content through: the returned
+   * {@link PassThroughAnalysis} holds the analysis results as well as a stream delivering the
+   * complete data from the beginning. Only the data required by the analysis is buffered, the
+   * remainder is read from the given stream once the returned stream gets there. This way, the data
+   * is read from its source exactly once, e.g. when analyzing uploads before forwarding them.
+   * <p>
+   * The given stream is closed by closing the {@link PassThroughAnalysis} or if the analysis fails.
+   *
+   * @param is The data to analyze
+   * @param listener an {@link AnalysisListener} to inform about the analysis progress. May be
+   *          <code>null</code>.
+   * @param fileName for the input
+   * @return analysis results and the content
+   * @throws IOException if there is a problem accessing the input data.
+   */
+  public PassThroughAnalysis analyzeAndPassThrough(final InputStream is, final AnalysisListener listener,
+      final String fileName) throws IOException {
+    final AnalysisListener effectiveListener = listener != null ? listener : DEFAULT_LISTENER;
     if (is instanceof SeekableInputStream) {
-      baseStream = (SeekableInputStream) is;
-    } else {
-      final UncloseableInputStream uis = new UncloseableInputStream(is);
-      baseStream = new MemoryInputStream(uis);
+      final SeekableInputStream sis = (SeekableInputStream) is;
+      final Map<String, Object> result = analyzeSeekable(sis, effectiveListener, fileName);
+      sis.seek(0);
+      return new PassThroughAnalysis(result, sis);
+    }
+
+    final SpillingInputStream buffer = new SpillingInputStream(is, memoryThreshold);
+    try {
+      final Map<String, Object> result = analyzeSeekable(buffer, effectiveListener, fileName);
+      effectiveListener.buffered(this, buffer.getMemoryBytes(), buffer.getDiskBytes());
+      return new PassThroughAnalysis(result, buffer.replay());
+    } catch (IOException | RuntimeException e) {
+      buffer.close();
+      throw e;
     }
-    final UncloseableSeekableInputStreamWrapper usis = new UncloseableSeekableInputStreamWrapper(baseStream);
+  }
+
+  private Map<String, Object> analyzeSeekable(final SeekableInputStream sis, final AnalysisListener listener,
+      final String fileName) throws IOException {
+    return analyzeSeekable(sis, listener, fileName, null);
+  }
+
+  /**
+   * @param deferredStatistics collects the updates of the match statistics instead of applying them,
+   *          see {@link Context#countMatch(java.util.concurrent.atomic.LongAdder)}, or
+   *          <code>null</code>
+   */
+  private Map<String, Object> analyzeSeekable(final SeekableInputStream sis, final AnalysisListener listener,
+      final String fileName, final List<Runnable> deferredStatistics) throws IOException {
+    Map<String, Object> result = new HashMap<>();
+    // POI may close streams during analysis; shield callers by using an uncloseable, seekable wrapper.
+    final UncloseableSeekableInputStreamWrapper usis = new UncloseableSeekableInputStreamWrapper(sis);
     usis.lockClose(); // do not unlock later as POI may attempt to close asynchronously
     final String sanitizedFileName = fileName != null ? fileName.replaceAll("[:\\\\/*?|<>]", "_") : null;
     String extension = getExtension(sanitizedFileName);
 
-    Context ctx = new Context(usis, result, effectiveListener, locale, extension);
+    Context ctx = new Context(usis, result, listener, locale, extension);
+    ctx.setOpenDocumentMetadata(openDocumentMetadata);
+    ctx.setDeferredStatistics(deferredStatistics);
 
-    database.analyze(ctx);
+    try {
+      database.analyze(ctx);
+    } catch (InternalError e) {
+      if (!(sis instanceof MappedFileInputStream)) {
+        throw e;
+      }
+      // raised asynchronously if the mapped file has been truncated, see MappedFileInputStream
+      throw new IOException("Failed to read the mapped file, it was probably truncated", e);
+    }
 
     Object obj = ctx.getProperty(DescriptionAction.KEY);
     if (null != obj && obj instanceof DescriptionAction.Description) {
@@ -265,10 +529,148 @@ public class Analyzer {
     }
   }
 
+  /**
+   * Analyze the file at the given path. Files of the default file system are read like
+   * {@link #analyze(File, AnalysisListener)}, files of other file systems, e.g. ZIP file systems,
+   * through a {@link SeekableByteChannel}.
+   *
+   * @param path the file
+   * @param listener an {@link AnalysisListener} to inform about the analysis progress. May be
+   *          <code>null</code>.
+   * @return a map of analysis results
+   * @throws IOException if there is a problem accessing the input data.
+   */
+  public Map<String, Object> analyze(final Path path, final AnalysisListener listener) throws IOException {
+    if (path.getFileSystem() == FileSystems.getDefault())
+      return analyze(path.toFile(), listener);
+
+    try (SeekableInputStream sis = new SeekableByteChannelInputStream(Files.newByteChannel(path))) {
+      return analyze(sis, listener, null != path.getFileName() ? path.getFileName().toString() : null);
+    }
+  }
+
+  /**
+   * Analyze the file at the given path.
+   *
+   * @param path the file
+   * @return a map of analysis results
+   * @throws IOException if there is a problem accessing the input data.
+   * @see #analyze(Path, AnalysisListener)
+   */
+  public Map<String, Object> analyze(final Path path) throws IOException {
+    return analyze(path, DEFAULT_LISTENER);
+  }
+
+  /**
+   * Analyze the content of the given channel from position 0. The position of the channel is
+   * restored afterwards, the channel is not closed.
+   *
+   * @param channel the data to analyze
+   * @param listener an {@link AnalysisListener} to inform about the analysis progress. May be
+   *          <code>null</code>.
+   * @return a map of analysis results
+   * @throws IOException if there is a problem accessing the input data.
+   */
+  public Map<String, Object> analyze(final SeekableByteChannel channel, final AnalysisListener listener)
+      throws IOException {
+    final long position = channel.position();
+    try {
+      return analyze(new SeekableByteChannelInputStream(channel), listener, null);
+    } finally {
+      channel.position(position);
+    }
+  }
+
+  /**
+   * Analyze the content of the given channel from position 0.
+   *
+   * @param channel the data to analyze
+   * @return a map of analysis results
+   * @throws IOException if there is a problem accessing the input data.
+   * @see #analyze(SeekableByteChannel, AnalysisListener)
+   */
+  public Map<String, Object> analyze(final SeekableByteChannel channel) throws IOException {
+    return analyze(channel, DEFAULT_LISTENER);
+  }
+
+  /**
+   * Analyze the file at the given path asynchronously. The file is read using an
+   * {@link AsynchronousFileChannel}, so that no thread is blocked while waiting for I/O. Only the
+   * parts of the file required by the analysis are read. The analysis itself runs on the given
+   * executor, not on the threads completing the reads.
+   * <p>
+   * The analysis is run against the data loaded so far and repeated from the start whenever it
+   * needs data which hasn't been loaded yet. Each of these rounds evaluates the whole database
+   * again. Their number grows logarithmically with the amount of data read.
+   * <p>
+   * At most 16 MB of the file are kept in memory. An analysis requiring more data falls back to
+   * reading it synchronously, which blocks an executor thread for the duration of each read. Pass an
+   * executor which tolerates blocking tasks, not the {@link ForkJoinPool#commonPool()}, if such
+   * analyses are to be expected.
+   * <p>
+   * File systems which don't support asynchronous channels are analyzed like
+   * {@link #analyze(Path, AnalysisListener)} on the executor.
+   *
+   * @param path the file
+   * @param listener an {@link AnalysisListener} to inform about the analysis progress. May be
+   *          <code>null</code>.
+   * @param executor the executor running the analysis
+   * @return a future completed with the analysis results, or exceptionally if there is a problem
+   *         accessing the input data
+   */
+  public CompletableFuture<Map<String, Object>> analyzeAsync(final Path path, final AnalysisListener listener,
+      final Executor executor) {
+    final AnalysisListener effectiveListener = listener != null ? listener : DEFAULT_LISTENER;
+    final AsynchronousFileChannel channel;
+    try {
+      channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+    } catch (UnsupportedOperationException e) {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          return analyze(path, effectiveListener);
+        } catch (IOException e1) {
+          throw new UncheckedIOException(e1);
+        }
+      }, executor);
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    final String fileName = null != path.getFileName() ? path.getFileName().toString() : null;
+    return new AsyncAnalysis(channel, (sis, l, statistics) -> analyzeSeekable(sis, l, fileName, statistics),
+        effectiveListener, executor).start();
+  }
+
+  /**
+   * Analyze the file at the given path asynchronously. The analysis runs on a pool of daemon
+   * threads shared by all analyzers, not on the {@link ForkJoinPool#commonPool()}, because it may
+   * block while reading.
+   *
+   * @param path the file
+   * @param listener an {@link AnalysisListener} to inform about the analysis progress. May be
+   *          <code>null</code>.
+   * @return a future completed with the analysis results
+   * @see #analyzeAsync(Path, AnalysisListener, Executor)
+   */
+  public CompletableFuture<Map<String, Object>> analyzeAsync(final Path path, final AnalysisListener listener) {
+    return analyzeAsync(path, listener, AsyncAnalysis.DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Analyze the file at the given path asynchronously.
+   *
+   * @param path the file
+   * @return a future completed with the analysis results
+   * @see #analyzeAsync(Path, AnalysisListener, Executor)
+   */
+  public CompletableFuture<Map<String, Object>> analyzeAsync(final Path path) {
+    return analyzeAsync(path, DEFAULT_LISTENER);
+  }
+
   /**
    * Analyze the stream supplied as a {@link File}. <br>
    * Caveat: the specified file will be accessed in a random-access fashion while during the
-   * analysis and will therefore be locked (ro) on some systems.
+   * analysis and will therefore be locked (ro) on some systems. Large regular files can be memory
+   * mapped, see {@link #MAPPED_FILES_PROPERTY}.
    *
    * @param file
    * @param listener an {@link AnalysisListener} to inform about the analysis progress. May be
@@ -277,7 +679,7 @@ public class Analyzer {
    * @throws IOException if there is a problem accessing the input data.
    */
   public Map<String, Object> analyze(final File file, final AnalysisListener listener) throws IOException {
-    SeekableInputStream sis = new RandomAccessFileInputStream(file);
+    SeekableInputStream sis = open(file);
     try {
       String fileName = file.getName();
       return analyze(sis, listener, fileName);
@@ -286,11 +688,27 @@ public class Analyzer {
         sis.close();
       } catch (IOException e) {
         final AnalysisListener effectiveListener = listener != null ? listener : DEFAULT_LISTENER;
-        effectiveListener.error(this, "Exception closing RandomAccessFileInputStream", e);
+        effectiveListener.error(this, "Exception closing " + sis.getClass().getSimpleName(), e);
+      }
+    }
+  }
+  /**
+   * Open a large regular file as a {@link MappedFileInputStream} if enabled via the
+   * {@link #MAPPED_FILES_PROPERTY}. Other files, or files which can't be mapped, are read using a
+   * {@link RandomAccessFileInputStream}.
+   */
+  private static SeekableInputStream open(final File file) throws IOException {
+    if (Boolean.getBoolean(MAPPED_FILES_PROPERTY) && file.isFile() && file.length() >= MAPPED_FILES_MIN_SIZE) {
+      try {
+        return new MappedFileInputStream(file);
+      } catch (IOException | UnsupportedOperationException e) {
+        LOGGER.debug("Can't map {}, falling back to RandomAccessFile", file, e);
       }
     }
+    return new RandomAccessFileInputStream(file);
   }
 
+
   /**
    * Analyze the stream supplied via a {@link SeekableInputStream}.
    *
@@ -351,4 +769,47 @@ public class Analyzer {
   public void setLocale(final Locale locale) {
     this.locale = locale;
   }
+
+  /**
+   * Get the maximum number of bytes of a non-seekable input stream which are buffered in memory.
+   *
+   * @return the threshold in bytes
+   */
+  public long getMemoryThreshold() {
+    return memoryThreshold;
+  }
+
+  /**
+   * Set the maximum number of bytes of a non-seekable input stream which are buffered in memory
+   * during the analysis. Any data beyond this threshold is spilled to a temporary file. The
+   * amounts actually buffered are reported to the {@link AnalysisListener} after each analysis.
+   *
+   * @param memoryThreshold the threshold in bytes, {@link Long#MAX_VALUE} to never spill to disk
+   */
+  public void setMemoryThreshold(final long memoryThreshold) {
+    if (memoryThreshold < 0)
+      throw new IllegalArgumentException("memoryThreshold must not be negative");
+    this.memoryThreshold = memoryThreshold;
+  }
+
+  /**
+   * Determine whether the metadata of OpenDocument files is extracted.
+   *
+   * @return <code>true</code> if the metadata is extracted
+   */
+  public boolean isOpenDocumentMetadata() {
+    return openDocumentMetadata;
+  }
+
+  /**
+   * Set whether the metadata of OpenDocument files, i.e. the content of their <code>meta.xml</code>,
+   * is extracted into the <code>ODF_DETAILS</code> result property. This is off by default, since
+   * the type of OpenDocument files is detected from their header alone, whereas the metadata
+   * requires the archive to be opened and an XML document to be parsed.
+   *
+   * @param openDocumentMetadata <code>true</code> to extract the metadata
+   */
+  public void setOpenDocumentMetadata(final boolean openDocumentMetadata) {
+    this.openDocumentMetadata = openDocumentMetadata;
+  }
 }
@@ -0,0 +1,408 @@
+package org.jadice.filetype;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.jadice.filetype.io.SeekableInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The analysis of a file read through an {@link AsynchronousFileChannel}, which doesn't block a
+ * thread while waiting for I/O.
+ * <p>
+ * The analysis itself reads synchronously. It is therefore run against the pages of the file loaded
+ * so far. If it requests data which hasn't been loaded yet, its results are discarded, the missing
+ * pages are read asynchronously and the analysis is repeated once they have arrived. The number of
+ * pages read ahead of a miss doubles with each round, so that even matchers scanning the whole file
+ * need only a logarithmic number of rounds. The rounds run on an {@link Executor}, not on the
+ * threads completing the reads. Notifications to the {@link AnalysisListener} and updates of the
+ * match statistics of an adaptive database are only passed on for the final round.
+ * <p>
+ * Every round evaluates the whole database again, so an analysis which misses pages repeatedly
+ * costs a multiple of a synchronous one in CPU time.
+ * <p>
+ * At most {@link #MAX_PAGES} pages are kept in memory. If an analysis requires more, the final
+ * round reads the missing pages synchronously instead, evicting the least recently used ones. That
+ * round blocks its executor thread while waiting for each read.
+ */
+final class AsyncAnalysis {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncAnalysis.class);
+
+  static final int PAGE_SIZE = 64 * 1024;
+
+  /**
+   * The maximum number of pages kept in memory.
+   */
+  static final int MAX_PAGES = 256;
+
+  /**
+   * The executor used if the caller doesn't pass one: a pool of daemon threads shared by all
+   * analyzers, which time out when idle. Rounds reading synchronously block these threads instead of
+   * those of the common fork-join pool.
+   */
+  static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+  /**
+   * A synchronous analysis of a stream.
+   */
+  @FunctionalInterface
+  interface Analysis {
+    Map<String, Object> analyze(SeekableInputStream sis, AnalysisListener listener, List<Runnable> statistics)
+        throws IOException;
+  }
+
+  private final AsynchronousFileChannel channel;
+
+  private final Analysis analysis;
+
+  private final AnalysisListener listener;
+
+  private final Executor executor;
+
+  private final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+
+  /**
+   * The pages loaded so far, in access order.
+   */
+  private final Map<Long, byte[]> pages = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Long, byte[]> eldest) {
+      return size() > MAX_PAGES;
+    }
+  });
+
+  /**
+   * Whether missing pages are read synchronously, see {@link #MAX_PAGES}.
+   */
+  private volatile boolean blocking;
+
+  private long size;
+
+  private long pageCount;
+
+  private int readAhead = 1;
+
+  private int rounds;
+
+  AsyncAnalysis(final AsynchronousFileChannel channel, final Analysis analysis, final AnalysisListener listener,
+      final Executor executor) {
+    this.channel = channel;
+    this.analysis = analysis;
+    this.listener = listener;
+    this.executor = executor;
+  }
+
+  private static Executor createDefaultExecutor() {
+    final AtomicInteger threads = new AtomicInteger();
+    final int size = Math.max(2, Runtime.getRuntime().availableProcessors());
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), r -> {
+          final Thread thread = new Thread(r, AsyncAnalysis.class.getSimpleName() + "-" + threads.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Start the analysis.
+   *
+   * @return the future completed with the analysis results
+   */
+  CompletableFuture<Map<String, Object>> start() {
+    try {
+      size = channel.size();
+      pageCount = (size + PAGE_SIZE - 1) / PAGE_SIZE;
+      final Set<Long> first = new TreeSet<>();
+      if (pageCount > 0)
+        first.add(0L);
+      load(first);
+    } catch (IOException | RuntimeException e) {
+      fail(e);
+    }
+    return future;
+  }
+
+  private void load(final Set<Long> missing) {
+    if (missing.isEmpty()) {
+      schedule();
+      return;
+    }
+    final AtomicInteger pending = new AtomicInteger(missing.size());
+    for (long index : missing) {
+      final ByteBuffer page = ByteBuffer.allocate((int) Math.min(PAGE_SIZE, size - index * PAGE_SIZE));
+      read(index, page, pending);
+    }
+  }
+
+  private void read(final long index, final ByteBuffer page, final AtomicInteger pending) {
+    channel.read(page, index * PAGE_SIZE + page.position(), null, new CompletionHandler<Integer, Void>() {
+      @Override
+      public void completed(final Integer read, final Void attachment) {
+        if (read < 0) {
+          fail(new EOFException("File truncated during analysis"));
+        } else if (page.hasRemaining()) {
+          read(index, page, pending);
+        } else {
+          pages.put(index, page.array());
+          if (pending.decrementAndGet() == 0)
+            schedule();
+        }
+      }
+
+      @Override
+      public void failed(final Throwable t, final Void attachment) {
+        fail(t);
+      }
+    });
+  }
+
+  private void schedule() {
+    try {
+      executor.execute(this::analyze);
+    } catch (RejectedExecutionException e) {
+      fail(e);
+    }
+  }
+
+  private void analyze() {
+    try {
+      analyzeRound();
+    } catch (RuntimeException | Error e) {
+      fail(e);
+    }
+  }
+
+  private void analyzeRound() {
+    if (future.isDone())
+      return;
+
+    rounds++;
+    final PagedInputStream sis = new PagedInputStream();
+    final RecordingListener recorder = new RecordingListener();
+    final List<Runnable> statistics = new ArrayList<>();
+    Map<String, Object> result = null;
+    Throwable failure = null;
+    try {
+      result = analysis.analyze(sis, recorder, statistics);
+    } catch (IOException | RuntimeException e) {
+      failure = e;
+    }
+
+    if (sis.missing.isEmpty()) {
+      statistics.forEach(Runnable::run);
+      recorder.replay(listener);
+      if (null != failure)
+        fail(failure);
+      else
+        complete(result);
+      return;
+    }
+
+    // repeat with more data
+    LOGGER.debug("Analysis round {} requires {} more pages", rounds, sis.missing.size());
+    final Set<Long> missing = new TreeSet<>();
+    for (long index : sis.missing) {
+      if (!pages.containsKey(index))
+        missing.add(index);
+    }
+    if (pages.size() + missing.size() > MAX_PAGES) {
+      LOGGER.debug("Analysis round {} exceeds {} pages, reading synchronously", rounds, MAX_PAGES);
+      blocking = true;
+      schedule();
+      return;
+    }
+
+    readAhead = (int) Math.min(2L * readAhead, Integer.MAX_VALUE);
+    for (long index : sis.missing) {
+      for (long i = index + 1; i < Math.min(pageCount, index + readAhead); i++) {
+        if (pages.size() + missing.size() >= MAX_PAGES)
+          break;
+        if (!pages.containsKey(i))
+          missing.add(i);
+      }
+    }
+    load(missing);
+  }
+
+  /**
+   * Read a page, blocking until it has been read.
+   */
+  private byte[] readPage(final long index) throws IOException {
+    final ByteBuffer page = ByteBuffer.allocate((int) Math.min(PAGE_SIZE, size - index * PAGE_SIZE));
+    while (page.hasRemaining()) {
+      final int read;
+      try {
+        read = channel.read(page, index * PAGE_SIZE + page.position()).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while reading");
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+      }
+      if (read < 0)
+        throw new EOFException("File truncated during analysis");
+    }
+    return page.array();
+  }
+
+  private void complete(final Map<String, Object> result) {
+    close();
+    future.complete(result);
+  }
+
+  private void fail(final Throwable t) {
+    close();
+    future.completeExceptionally(t);
+  }
+
+  private void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.warn("Can't close channel", e);
+    }
+  }
+
+  /**
+   * Reads the pages loaded so far and records the missing ones.
+   */
+  private final class PagedInputStream extends SeekableInputStream {
+    final Set<Long> missing = new TreeSet<>();
+
+    private long position;
+
+    private byte[] page(final long index) throws IOException {
+      byte[] page = pages.get(index);
+      if (null == page) {
+        if (!blocking) {
+          missing.add(index);
+          throw new IOException("Data at " + index * PAGE_SIZE + " has not been loaded yet");
+        }
+        page = readPage(index);
+        pages.put(index, page);
+      }
+      return page;
+    }
+
+    @Override
+    public int read() throws IOException {
+      checkClosed();
+      bitOffset = 0;
+
+      if (position >= size)
+        return -1;
+
+      final int b = page(position / PAGE_SIZE)[(int) (position % PAGE_SIZE)] & 0xff;
+      position++;
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      checkClosed();
+      bitOffset = 0;
+
+      if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+        throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length!");
+      if (len == 0)
+        return 0;
+      if (position >= size)
+        return -1;
+
+      // read across pages like a contiguous stream would
+      int read = 0;
+      while (read < len && position < size) {
+        final byte[] page = page(position / PAGE_SIZE);
+        final int inPage = (int) (position % PAGE_SIZE);
+        final int n = Math.min(len - read, page.length - inPage);
+        System.arraycopy(page, inPage, b, off + read, n);
+        position += n;
+        read += n;
+      }
+      return read;
+    }
+
+    @Override
+    public void seek(final long pos) throws IOException {
+      checkClosed();
+
+      if (pos < flushedPos)
+        throw new IndexOutOfBoundsException("pos < flushedPos!");
+
+      position = pos;
+      bitOffset = 0;
+    }
+
+    @Override
+    public long getStreamPosition() throws IOException {
+      return position;
+    }
+
+    @Override
+    public long length() throws IOException {
+      return size;
+    }
+
+    @Override
+    public long getSizeEstimate() {
+      return size;
+    }
+  }
+
+  /**
+   * Records the notifications of an analysis round.
+   */
+  private static final class RecordingListener implements AnalysisListener {
+    private final List<Consumer<AnalysisListener>> notifications = new ArrayList<>();
+
+    @Override
+    public void info(final Object src, final String message) {
+      notifications.add(l -> l.info(src, message));
+    }
+
+    @Override
+    public void warning(final Object src, final String message) {
+      notifications.add(l -> l.warning(src, message));
+    }
+
+    @Override
+    public void error(final Object src, final String message, final Throwable cause) {
+      notifications.add(l -> l.error(src, message, cause));
+    }
+
+    @Override
+    public void buffered(final Object src, final long memoryBytes, final long diskBytes) {
+      notifications.add(l -> l.buffered(src, memoryBytes, diskBytes));
+    }
+
+    void replay(final AnalysisListener listener) {
+      notifications.forEach(n -> n.accept(listener));
+    }
+  }
+}
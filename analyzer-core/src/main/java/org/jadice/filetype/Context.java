@@ -1,9 +1,14 @@
 package org.jadice.filetype;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.jadice.filetype.io.SeekableInputStream;
+import org.jadice.filetype.ziputil.ZipArchive;
 
 /**
  * A context used to hold data relevant to a single analysis run.
@@ -26,6 +31,42 @@ public class Context {
 
   private final String statedExtension;
 
+  /**
+   * The first bytes of the source data, shared by all matchers inspecting fixed offsets.
+   */
+  private byte[] header = new byte[0];
+
+  /**
+   * The number of valid bytes in the header window.
+   */
+  private int headerLength;
+
+  /**
+   * Whether the header window holds the complete source data.
+   */
+  private boolean headerComplete;
+
+  /**
+   * The ZIP archive contained in the source data, shared by all matchers inspecting ZIP entries.
+   */
+  private ZipArchive zipArchive;
+
+  /**
+   * The reason why {@link #zipArchive} could not be opened.
+   */
+  private IOException zipArchiveFailure;
+
+  /**
+   * Whether the metadata of OpenDocument files has been requested.
+   */
+  private boolean openDocumentMetadata;
+
+  /**
+   * Updates of the match statistics which are applied by the caller once the analysis turns out to
+   * be final, <code>null</code> to apply them right away.
+   */
+  private List<Runnable> deferredStatistics;
+
   public Context(final SeekableInputStream sis, final Map<String, Object> result, final AnalysisListener listener, final Locale locale, final String statedExtension) {
     this.sis = sis;
     this.result = result;
@@ -53,6 +94,155 @@ public class Context {
     return sis;
   }
 
+  /**
+   * Read the first <code>size</code> bytes of the source data into the header window, unless the
+   * window already covers them. The stream position is left unchanged. If the stream is shorter, the
+   * header window will contain all of it. If the source data is held in a single array, that array
+   * becomes the header window without copying it.
+   *
+   * @param size the requested size of the header window
+   * @throws IOException if there is a problem accessing the input data
+   */
+  public void prefetchHeader(final int size) throws IOException {
+    if (header.length >= size) {
+      return;
+    }
+
+    final ByteBuffer backing = sis.getBackingBuffer();
+    if (null != backing && backing.hasArray() && backing.arrayOffset() == 0) {
+      header = backing.array();
+      headerLength = backing.limit();
+      headerComplete = true;
+      return;
+    }
+
+    final byte[] data = new byte[size];
+    int length = 0;
+    final long position = sis.getStreamPosition();
+    try {
+      sis.seek(0);
+      int read;
+      while (length < size && (read = sis.read(data, length, size - length)) > 0) {
+        length += read;
+      }
+    } finally {
+      sis.seek(position);
+    }
+
+    header = data;
+    headerLength = length;
+    headerComplete = length < size;
+  }
+
+  /**
+   * Get the header window. Only the first {@link #getHeaderLength()} bytes are valid.
+   *
+   * @return the header bytes
+   */
+  public byte[] getHeader() {
+    return header;
+  }
+
+  /**
+   * Get the number of valid bytes in the header window.
+   *
+   * @return the number of bytes
+   */
+  public int getHeaderLength() {
+    return headerLength;
+  }
+
+  /**
+   * Determine whether the header window holds the complete source data, i.e. whether the stream
+   * ended before the header window was filled.
+   *
+   * @return <code>true</code> if there is no data beyond {@link #getHeaderLength()}
+   */
+  public boolean isHeaderComplete() {
+    return headerComplete;
+  }
+
+  /**
+   * Determine whether the header window covers the given range of the source data.
+   *
+   * @param offset the absolute offset of the range
+   * @param length the length of the range
+   * @return <code>true</code> if all bytes of the range are available from {@link #getHeader()}
+   */
+  public boolean isInHeader(final int offset, final int length) {
+    return offset >= 0 && length <= headerLength - offset;
+  }
+
+  /**
+   * Get the ZIP archive contained in the source data. The archive is opened by the first matcher
+   * asking for it and shared by all others during this analysis run, so that its entries are
+   * located only once. The stream position is left unchanged.
+   *
+   * @return the archive
+   * @throws IOException if the source data is no readable ZIP archive; the same exception is thrown
+   *           on every call
+   */
+  public ZipArchive getZipArchive() throws IOException {
+    if (null == zipArchive && null == zipArchiveFailure) {
+      final long position = sis.getStreamPosition();
+      try {
+        zipArchive = ZipArchive.open(sis);
+      } catch (IOException e) {
+        zipArchiveFailure = e;
+      } finally {
+        sis.seek(position);
+      }
+    }
+    if (null != zipArchiveFailure) {
+      throw zipArchiveFailure;
+    }
+    return zipArchive;
+  }
+
+  /**
+   * Determine whether the metadata of OpenDocument files, i.e. the content of their
+   * <code>meta.xml</code>, has been requested. Otherwise only their type is detected.
+   *
+   * @return <code>true</code> if the metadata should be extracted
+   */
+  public boolean isOpenDocumentMetadata() {
+    return openDocumentMetadata;
+  }
+
+  /**
+   * Set whether the metadata of OpenDocument files should be extracted.
+   *
+   * @param openDocumentMetadata <code>true</code> to extract the metadata
+   */
+  public void setOpenDocumentMetadata(final boolean openDocumentMetadata) {
+    this.openDocumentMetadata = openDocumentMetadata;
+  }
+
+  /**
+   * Count a match of a type of an adaptive database, see
+   * {@link org.jadice.filetype.database.CompiledDatabase}. The count is deferred if this analysis
+   * may still be discarded.
+   *
+   * @param counter the match counter of the type
+   */
+  public void countMatch(final LongAdder counter) {
+    if (null != deferredStatistics) {
+      deferredStatistics.add(counter::increment);
+    } else {
+      counter.increment();
+    }
+  }
+
+  /**
+   * Collect the updates of the match statistics in the given list instead of applying them right
+   * away.
+   *
+   * @param deferredStatistics the list or <code>null</code> to apply them right away
+   */
+  void setDeferredStatistics(final List<Runnable> deferredStatistics) {
+    this.deferredStatistics = deferredStatistics;
+  }
+
   /**
    * Get a result property.
    *
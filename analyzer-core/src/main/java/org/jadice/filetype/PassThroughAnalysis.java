@@ -0,0 +1,47 @@
+package org.jadice.filetype;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The result of {@link Analyzer#analyzeAndPassThrough(InputStream, AnalysisListener, String)}: the
+ * analysis results along with a stream delivering the analyzed data from the beginning.
+ */
+public class PassThroughAnalysis implements Closeable {
+
+  private final Map<String, Object> result;
+
+  private final InputStream stream;
+
+  PassThroughAnalysis(final Map<String, Object> result, final InputStream stream) {
+    this.result = result;
+    this.stream = stream;
+  }
+
+  /**
+   * @return the analysis results
+   */
+  public Map<String, Object> getResult() {
+    return result;
+  }
+
+  /**
+   * Get the stream delivering the complete analyzed data. The data buffered during the analysis is
+   * replayed first, then the rest is read from the original stream.
+   *
+   * @return the stream
+   */
+  public InputStream getStream() {
+    return stream;
+  }
+
+  /**
+   * Close the stream, releasing the buffered data and closing the original stream.
+   */
+  @Override
+  public void close() throws IOException {
+    stream.close();
+  }
+}
@@ -1,6 +1,7 @@
 package org.jadice.filetype;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.jadice.filetype.io.SeekableInputStream;
 
@@ -19,6 +20,11 @@ public class UncloseableSeekableInputStreamWrapper extends SeekableInputStream {
     return delegate.getSizeEstimate();
   }
 
+  @Override
+  public ByteBuffer getBackingBuffer() {
+    return delegate.getBackingBuffer();
+  }
+
   @Override
   public long length() throws IOException {
     return delegate.length();
@@ -22,4 +22,8 @@ public class AbsoluteLocation extends Location {
     sis.seek(offset);
     return sis;
   }
+
+  public int getOffset() {
+    return offset;
+  }
 }
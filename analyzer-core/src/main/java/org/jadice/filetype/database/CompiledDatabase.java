@@ -0,0 +1,852 @@
+package org.jadice.filetype.database;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jadice.filetype.Context;
+import org.jadice.filetype.matchers.AhoCorasick;
+import org.jadice.filetype.matchers.CustomMatcher;
+import org.jadice.filetype.matchers.FixedOffsetMatcher;
+import org.jadice.filetype.matchers.Matcher;
+import org.jadice.filetype.matchers.Matcher.Cost;
+import org.jadice.filetype.matchers.StreamMatcher;
+import org.jadice.filetype.matchers.StringMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable, compiled form of a {@link Type} tree. Instances may be shared between any number of
+ * threads.
+ * <p>
+ * While {@link Type#analyze(Context)} tries all child types in document order, the compiled form
+ * indexes the children of each type by the byte they expect at a fixed offset. During the analysis
+ * a jump table keyed by the actual bytes at those offsets selects the plausible candidates, and
+ * only those are evaluated - still in document order. Since a type is only skipped if one of its
+ * side effect free {@link FixedOffsetMatcher}s cannot succeed, the results are identical to those
+ * of the tree walk.
+ * <p>
+ * Sibling types guarded by a {@link StringMatcher} are indexed by their complete pattern: all
+ * patterns at the same offset are combined into one trie, and all patterns searched within a range
+ * into one {@link AhoCorasick} automaton, so that a single pass over the header window selects the
+ * candidates among them.
+ * <p>
+ * Within each type, runs of side effect free matchers are evaluated cheap first according to their
+ * {@link Matcher#getCost() cost}, see {@link #writeCostReport(Appendable)}.
+ * <p>
+ * An adaptive database counts the matches of every type and periodically reorders siblings by
+ * their frequency, see {@link #compile(Type, Duration)}. Only siblings which are mutually
+ * exclusive are moved past each other: two siblings are exclusive if they have side effect free
+ * leading matchers which expect different bytes at the same position. As at most one of them can match
+ * and the other fails before any side effect, the results are the same as for the document order.
+ *
+ */
+public final class CompiledDatabase {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompiledDatabase.class);
+
+  /**
+   * The system property enabling adaptive sibling ordering, see {@link #compile(Type, Duration)}.
+   * If set to <code>true</code>, databases compiled via {@link #compile(Type)} are reordered every
+   * {@link #DEFAULT_REORDER_INTERVAL}.
+   */
+  public static final String ADAPTIVE_PROPERTY = "jadice.filetype.adaptive";
+
+  /**
+   * The default interval between two reorderings of an adaptive database.
+   */
+  public static final Duration DEFAULT_REORDER_INTERVAL = Duration.ofSeconds(1);
+
+  /**
+   * The match statistics of a type and the current evaluation order of its children.
+   */
+  public static final class Statistics {
+    private final String label;
+    private final int index;
+    private final long hits;
+    private final List<Statistics> children;
+
+    Statistics(final String label, final int index, final long hits, final List<Statistics> children) {
+      this.label = label;
+      this.index = index;
+      this.hits = hits;
+      this.children = Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Get a label for the type: its mime type and/or description.
+     *
+     * @return the label
+     */
+    public String getLabel() {
+      return label;
+    }
+
+    /**
+     * Get the position of the type among its siblings in the database document.
+     *
+     * @return the index
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * Get the number of analyses the type matched. Always zero unless the database is adaptive.
+     *
+     * @return the number of matches
+     */
+    public long getHits() {
+      return hits;
+    }
+
+    /**
+     * Get the statistics of the child types in their current evaluation order.
+     *
+     * @return the children
+     */
+    public List<Statistics> getChildren() {
+      return children;
+    }
+
+    @Override
+    public String toString() {
+      return label + "[" + index + "]: " + hits;
+    }
+  }
+
+  /**
+   * The compiled form of a single {@link Type}.
+   */
+  private static final class Node {
+    private final Matcher[] matchers;
+    private final Action[] actions;
+    private final Dispatch dispatch;
+
+    /**
+     * The matcher used to index this node among its siblings, or <code>null</code> if the node must
+     * always be evaluated.
+     */
+    private final FixedOffsetMatcher guard;
+
+    /**
+     * Per matcher: the stream position to restore after it succeeded, or -1. Set after runs of
+     * matchers reordered by {@link #orderCheapFirst(Matcher[], long[])}.
+     */
+    private final long[] positions;
+
+    /**
+     * The number of matches, <code>null</code> unless the database is adaptive.
+     */
+    private final LongAdder hits;
+
+    Node(final Type type, final boolean adaptive) {
+      this.positions = new long[type.getMatchers().length];
+      this.matchers = orderCheapFirst(type.getMatchers(), positions);
+      this.actions = type.getActions().clone();
+      this.guard = findGuard(matchers);
+
+      this.hits = adaptive ? new LongAdder() : null;
+
+      final Type[] c = type.getChildren();
+      final Node[] children = new Node[c.length];
+      for (int i = 0; i < children.length; i++) {
+        children[i] = new Node(c[i], adaptive);
+      }
+      this.dispatch = children.length > 0 ? new Dispatch(children, adaptive) : null;
+    }
+
+    boolean analyze(final Context ctx) throws IOException {
+      // try matchers, return if one of them fails
+      for (int i = 0; i < matchers.length; i++) {
+        if (!matchers[i].matches(ctx) || positions[i] >= 0 && !seek(ctx, positions[i])) {
+          ctx.getStream().seek(0);
+          return false;
+        }
+      }
+
+      // apply actions
+      for (Action action : actions) {
+        action.perform(ctx);
+      }
+
+      if (null != hits) {
+        ctx.countMatch(hits);
+      }
+
+      // try child types until one of them matches
+      if (null != dispatch) {
+        dispatch.analyze(ctx);
+      }
+
+      ctx.getStream().seek(0);
+      return true;
+    }
+
+    /**
+     * Determine whether this type and the given one can't both match, because their leading side
+     * effect free matchers contain a pair which can't both succeed.
+     */
+    boolean excludes(final Node other) {
+      for (Matcher a : matchers) {
+        if (!(a instanceof StreamMatcher)) {
+          break;
+        }
+        for (Matcher b : other.matchers) {
+          if (!(b instanceof StreamMatcher)) {
+            break;
+          }
+          if (a instanceof FixedOffsetMatcher && b instanceof FixedOffsetMatcher
+              && isExclusive((FixedOffsetMatcher) a, (FixedOffsetMatcher) b)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    void reorder() {
+      if (null != dispatch) {
+        dispatch.reorder();
+      }
+    }
+
+    Statistics getStatistics(final int index) {
+      final List<Statistics> children = new ArrayList<>();
+      if (null != dispatch) {
+        final int[] order = dispatch.order;
+        for (int i = 0; i < dispatch.children.length; i++) {
+          final int c = null != order ? order[i] : i;
+          children.add(dispatch.children[c].getStatistics(c));
+        }
+      }
+      return new Statistics(label(), index, null != hits ? hits.sum() : 0, children);
+    }
+
+    private static boolean seek(final Context ctx, final long position) {
+      try {
+        ctx.getStream().seek(position);
+        return true;
+      } catch (IOException e) {
+        LOGGER.debug("Mismatch due to exception", e);
+        return false;
+      }
+    }
+
+    void writeCostReport(final Appendable out, final int depth, final Cost parent) throws IOException {
+      Cost own = null;
+      final StringBuilder details = new StringBuilder();
+      for (Matcher m : matchers) {
+        own = null == own || m.getCost().compareTo(own) > 0 ? m.getCost() : own;
+        details.append(details.length() > 0 ? ", " : "").append(describe(m)).append('=').append(m.getCost());
+      }
+      final Cost path = null == own || null != parent && parent.compareTo(own) > 0 ? parent : own;
+
+      out.append(String.format(Locale.ROOT, "%-14s  %-14s  ", null != own ? own : "-", null != path ? path : "-"));
+      for (int i = 0; i < depth; i++) {
+        out.append("  ");
+      }
+      out.append(label()).append(": ").append(details.length() > 0 ? details : "-").append(System.lineSeparator());
+
+      if (null != dispatch) {
+        for (Node child : dispatch.children) {
+          child.writeCostReport(out, depth + 1, path);
+        }
+      }
+    }
+
+    private String label() {
+      String mimeType = null;
+      String description = null;
+      for (Action a : actions) {
+        if (a instanceof MimeTypeAction && null == mimeType) {
+          mimeType = ((MimeTypeAction) a).getType();
+        } else if (a instanceof DescriptionAction && null == description) {
+          description = ((DescriptionAction) a).getDescription();
+        }
+      }
+      if (null != mimeType && null != description) {
+        return mimeType + " (" + description + ")";
+      }
+      return null != mimeType ? mimeType : null != description ? description : "(type)";
+    }
+
+    private static String describe(final Matcher m) {
+      if (m instanceof CustomMatcher && null != ((CustomMatcher) m).getDelegate()) {
+        return ((CustomMatcher) m).getDelegate().getClass().getSimpleName();
+      }
+      final String name = m.getClass().getSimpleName();
+      return m instanceof StreamMatcher ? name + "@" + ((StreamMatcher) m).getOffset() : name;
+    }
+
+    int getRequiredHeaderLength() {
+      int length = 0;
+      for (Matcher matcher : matchers) {
+        if (matcher instanceof FixedOffsetMatcher) {
+          final FixedOffsetMatcher f = (FixedOffsetMatcher) matcher;
+          if (f.getOffset() >= 0) {
+            length = Math.max(length, f.getOffset() + f.getLength());
+          }
+        }
+      }
+      if (null != dispatch) {
+        for (Node child : dispatch.children) {
+          length = Math.max(length, child.getRequiredHeaderLength());
+        }
+      }
+      return length;
+    }
+  }
+
+  /**
+   * The jump table selecting the plausible candidates among a list of sibling types. Candidates are
+   * represented as bit sets over the sibling indices.
+   */
+  private static final class Dispatch {
+    private final Node[] children;
+
+    /**
+     * Number of <code>long</code> words per bit set.
+     */
+    private final int words;
+
+    /**
+     * The children which must always be evaluated.
+     */
+    private final long[] unguarded;
+
+    /**
+     * The distinct offsets the guards of the children refer to.
+     */
+    private final int[] offsets;
+
+    /**
+     * Per offset: all children guarded at that offset. Used if the stream is too short to decide.
+     */
+    private final long[][] guarded;
+
+    /**
+     * Per offset: for each of the 256 possible byte values the children accepting it.
+     */
+    private final long[][] table;
+
+    /**
+     * Per offset: the patterns of the children guarded by a {@link StringMatcher} at that offset or
+     * <code>null</code> if there are none.
+     */
+    private final AhoCorasick[] patterns;
+
+    /**
+     * Per offset: the index of the child each pattern belongs to.
+     */
+    private final int[][] patternChildren;
+
+    /**
+     * The patterns of the children guarded by a {@link StringMatcher} searching a range or
+     * <code>null</code> if there are none.
+     */
+    private final AhoCorasick rangePatterns;
+
+    /**
+     * Per range pattern: the index of the child, the start and the end (exclusive) of the range.
+     */
+    private final int[] rangeChildren;
+    private final int[] rangeFrom;
+    private final int[] rangeTo;
+
+    /**
+     * Per child: the preceding siblings it is not exclusive with, which must therefore be evaluated
+     * before it. <code>null</code> unless the database is adaptive.
+     */
+    private final long[][] predecessors;
+
+    /**
+     * The current evaluation order or <code>null</code> for the document order.
+     */
+    private volatile int[] order;
+
+    Dispatch(final Node[] children, final boolean adaptive) {
+      this.children = children;
+      this.words = (children.length + 63) >>> 6;
+      this.unguarded = new long[words];
+
+      if (adaptive) {
+        this.predecessors = new long[children.length][words];
+        for (int i = 0; i < children.length; i++) {
+          for (int j = 0; j < i; j++) {
+            if (!children[i].excludes(children[j])) {
+              set(predecessors[i], 0, j);
+            }
+          }
+        }
+      } else {
+        this.predecessors = null;
+      }
+
+      final Map<Integer, Integer> offsetIndex = new LinkedHashMap<>();
+      final List<Integer> ranged = new ArrayList<>();
+      for (int i = 0; i < children.length; i++) {
+        final FixedOffsetMatcher guard = children[i].guard;
+        if (isRangeSearch(guard)) {
+          ranged.add(i);
+        } else if (null != guard) {
+          offsetIndex.putIfAbsent(guard.getOffset(), offsetIndex.size());
+        }
+      }
+
+      this.offsets = new int[offsetIndex.size()];
+      for (Map.Entry<Integer, Integer> e : offsetIndex.entrySet()) {
+        offsets[e.getValue()] = e.getKey();
+      }
+      this.guarded = new long[offsets.length][words];
+      this.table = new long[offsets.length][256 * words];
+
+      final List<List<Integer>> strings = new ArrayList<>();
+      for (int o = 0; o < offsets.length; o++) {
+        strings.add(new ArrayList<>());
+      }
+
+      for (int i = 0; i < children.length; i++) {
+        final FixedOffsetMatcher guard = children[i].guard;
+        if (null == guard) {
+          set(unguarded, 0, i);
+          continue;
+        }
+        if (isRangeSearch(guard)) {
+          continue;
+        }
+
+        final int o = offsetIndex.get(guard.getOffset());
+        set(guarded[o], 0, i);
+        if (guard instanceof StringMatcher) {
+          strings.get(o).add(i);
+          continue;
+        }
+        for (int b = 0; b < 256; b++) {
+          if (guard.acceptsLeadingByte(b)) {
+            set(table[o], b * words, i);
+          }
+        }
+      }
+
+      this.patterns = new AhoCorasick[offsets.length];
+      this.patternChildren = new int[offsets.length][];
+      for (int o = 0; o < offsets.length; o++) {
+        if (!strings.get(o).isEmpty()) {
+          patternChildren[o] = toArray(strings.get(o));
+          patterns[o] = new AhoCorasick(patternsOf(children, patternChildren[o]));
+        }
+      }
+
+      this.rangeChildren = toArray(ranged);
+      this.rangeFrom = new int[rangeChildren.length];
+      this.rangeTo = new int[rangeChildren.length];
+      for (int p = 0; p < rangeChildren.length; p++) {
+        final FixedOffsetMatcher guard = children[rangeChildren[p]].guard;
+        rangeFrom[p] = guard.getOffset();
+        rangeTo[p] = guard.getOffset() + guard.getLength();
+      }
+      this.rangePatterns = rangeChildren.length > 0 ? new AhoCorasick(patternsOf(children, rangeChildren)) : null;
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+      return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static byte[][] patternsOf(final Node[] children, final int[] indices) {
+      final byte[][] result = new byte[indices.length][];
+      for (int p = 0; p < indices.length; p++) {
+        result[p] = ((StringMatcher) children[indices[p]].guard).getPattern();
+      }
+      return result;
+    }
+
+    private static void set(final long[] bits, final int base, final int index) {
+      bits[base + (index >>> 6)] |= 1L << index;
+    }
+
+    void analyze(final Context ctx) throws IOException {
+      final byte[] header = ctx.getHeader();
+      final int headerLength = ctx.getHeaderLength();
+      final long[] candidates = unguarded.clone();
+      for (int o = 0; o < offsets.length; o++) {
+        final int offset = offsets[o];
+        if (offset < headerLength) {
+          final long[] t = table[o];
+          final int base = (header[offset] & 0xff) * words;
+          for (int w = 0; w < words; w++) {
+            candidates[w] |= t[base + w];
+          }
+          if (null != patterns[o]) {
+            final int[] targets = patternChildren[o];
+            patterns[o].matchAt(header, offset, headerLength, (p, start) -> {
+              set(candidates, 0, targets[p]);
+              return true;
+            });
+          }
+        } else {
+          // not enough data to decide
+          final long[] g = guarded[o];
+          for (int w = 0; w < words; w++) {
+            candidates[w] |= g[w];
+          }
+        }
+      }
+
+      if (null != rangePatterns) {
+        selectRanges(header, headerLength, candidates);
+      }
+
+      final int[] order = this.order;
+      if (null != order) {
+        for (int i : order) {
+          if ((candidates[i >>> 6] & 1L << i) != 0 && children[i].analyze(ctx)) {
+            return;
+          }
+        }
+        return;
+      }
+
+      for (int w = 0; w < words; w++) {
+        long bits = candidates[w];
+        while (bits != 0) {
+          final int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+          bits &= bits - 1;
+          if (children[i].analyze(ctx)) {
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Publish a new evaluation order: repeatedly pick the most frequently matched child among those
+     * whose predecessors have all been placed, the earliest one in case of a tie.
+     */
+    void reorder() {
+      final long[] counts = new long[children.length];
+      for (int i = 0; i < children.length; i++) {
+        counts[i] = children[i].hits.sum();
+      }
+
+      final int[] result = new int[children.length];
+      final long[] placed = new long[words];
+      boolean identity = true;
+      for (int k = 0; k < children.length; k++) {
+        int best = -1;
+        for (int i = 0; i < children.length; i++) {
+          if ((placed[i >>> 6] & 1L << i) == 0 && containsAll(placed, predecessors[i])
+              && (best < 0 || counts[i] > counts[best])) {
+            best = i;
+          }
+        }
+        result[k] = best;
+        set(placed, 0, best);
+        identity &= best == k;
+      }
+      order = identity ? null : result;
+
+      for (Node child : children) {
+        child.reorder();
+      }
+    }
+
+    private static boolean containsAll(final long[] bits, final long[] subset) {
+      for (int w = 0; w < bits.length; w++) {
+        if ((subset[w] & ~bits[w]) != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void selectRanges(final byte[] header, final int headerLength, final long[] candidates) {
+      int from = Integer.MAX_VALUE;
+      int to = 0;
+      for (int p = 0; p < rangeChildren.length; p++) {
+        if (rangeTo[p] > headerLength) {
+          // not enough data to decide
+          set(candidates, 0, rangeChildren[p]);
+        }
+        from = Math.min(from, rangeFrom[p]);
+        to = Math.max(to, rangeTo[p]);
+      }
+
+      rangePatterns.search(header, from, Math.min(to, headerLength), (p, start) -> {
+        if (start >= rangeFrom[p] && start + rangePatterns.getPatternLength(p) <= rangeTo[p]) {
+          set(candidates, 0, rangeChildren[p]);
+        }
+        return true;
+      });
+    }
+  }
+
+  /**
+   * Upper bound for the header window. Matchers inspecting data beyond it read from the stream.
+   */
+  public static final int MAX_HEADER_WINDOW = 8192;
+
+  private final Node root;
+
+  private final int headerWindowSize;
+
+  /**
+   * The interval between two reorderings in nanoseconds, 0 if the database isn't adaptive.
+   */
+  private final long reorderInterval;
+
+  /**
+   * The {@link System#nanoTime()} at which the next reordering is due.
+   */
+  private final AtomicLong nextReorder;
+
+  private CompiledDatabase(final Node root, final Duration reorderInterval) {
+    this.root = root;
+    this.headerWindowSize = Math.min(root.getRequiredHeaderLength(), MAX_HEADER_WINDOW);
+    this.reorderInterval = null != reorderInterval ? Math.max(1, reorderInterval.toNanos()) : 0;
+    this.nextReorder = new AtomicLong(System.nanoTime() + this.reorderInterval);
+  }
+
+  /**
+   * Compile the given {@link Type} tree, usually a {@link Database}. The database is adaptive if
+   * the {@link #ADAPTIVE_PROPERTY} system property is set to <code>true</code>.
+   *
+   * @param type the root type
+   * @return the compiled database
+   */
+  public static CompiledDatabase compile(final Type type) {
+    return compile(type, Boolean.getBoolean(ADAPTIVE_PROPERTY) ? DEFAULT_REORDER_INTERVAL : null);
+  }
+
+  /**
+   * Compile the given {@link Type} tree, usually a {@link Database}. If a reorder interval is
+   * given, the database counts the matches of every type and, once per interval, reorders mutually
+   * exclusive siblings by descending frequency. The reordering is performed by the analysis which
+   * finds it due and published to all other threads without locking.
+   *
+   * @param type the root type
+   * @param reorderInterval the interval between two reorderings or <code>null</code> to always
+   *          evaluate siblings in document order
+   * @return the compiled database
+   */
+  public static CompiledDatabase compile(final Type type, final Duration reorderInterval) {
+    return new CompiledDatabase(new Node(type, null != reorderInterval), reorderInterval);
+  }
+
+  /**
+   * Write a report of the expected cost of each type to the given destination. For every type, in
+   * document order and indented by depth, it lists the most expensive {@link Cost} class of its own
+   * matchers, the most expensive one on the path from the root, and its matchers in evaluation
+   * order.
+   *
+   * @param out the destination
+   * @throws IOException if writing fails
+   */
+  public void writeCostReport(final Appendable out) throws IOException {
+    out.append(String.format(Locale.ROOT, "%-14s  %-14s  %s%n", "own", "path", "type: matchers"));
+    root.writeCostReport(out, 0, null);
+  }
+
+  /**
+   * Determine whether this database reorders sibling types by their match frequency.
+   *
+   * @return <code>true</code> if adaptive
+   */
+  public boolean isAdaptive() {
+    return reorderInterval > 0;
+  }
+
+  /**
+   * Reorder the sibling types of an adaptive database according to the current match statistics
+   * right away instead of waiting for the reorder interval to elapse. Does nothing if the database
+   * isn't adaptive.
+   */
+  public void reorder() {
+    if (isAdaptive()) {
+      root.reorder();
+    }
+  }
+
+  /**
+   * Get the match statistics of the root type. Its children, and theirs, are listed in their
+   * current evaluation order.
+   *
+   * @return the statistics
+   */
+  public Statistics getStatistics() {
+    return root.getStatistics(0);
+  }
+
+  /**
+   * Analyze the stream of the given {@link Context}. Yields the same results as
+   * {@link Type#analyze(Context)} on the type this database was compiled from.
+   *
+   * @param ctx the analysis context
+   * @return whether the root type matched
+   * @throws IOException if there is a problem accessing the input data
+   */
+  public boolean analyze(final Context ctx) throws IOException {
+    try {
+      ctx.prefetchHeader(headerWindowSize);
+    } catch (IOException e) {
+      // the matchers will fall back to reading from the stream
+      LOGGER.debug("Can't prefetch header", e);
+    }
+    if (reorderInterval > 0) {
+      final long now = System.nanoTime();
+      final long due = nextReorder.get();
+      if (now - due >= 0 && nextReorder.compareAndSet(due, now + reorderInterval)) {
+        root.reorder();
+      }
+    }
+    return root.analyze(ctx);
+  }
+
+  /**
+   * Get the size of the header window read once per analysis. It covers the bytes inspected by all
+   * {@link FixedOffsetMatcher}s of the database, up to {@link #MAX_HEADER_WINDOW}.
+   *
+   * @return the header window size in bytes
+   */
+  public int getHeaderWindowSize() {
+    return headerWindowSize;
+  }
+
+  /**
+   * Order the matchers of a type cheap and selective first. Only runs of consecutive
+   * {@link StreamMatcher}s are reordered: they have no side effects and position the stream
+   * themselves, while any other matcher may depend on the stream position or on properties set by
+   * its predecessors. Since subsequent matchers and child types may depend on the stream position
+   * left by a run, the last matcher of a run stays in place unless it ends at a fixed position,
+   * which is then restored after the run.
+   *
+   * @param matchers the matchers in document order
+   * @param positions receives the positions to restore, -1 for none
+   * @return the matchers in evaluation order
+   */
+  private static Matcher[] orderCheapFirst(final Matcher[] matchers, final long[] positions) {
+    final Matcher[] result = matchers.clone();
+    Arrays.fill(positions, -1);
+
+    int start = 0;
+    while (start < result.length) {
+      if (!(result[start] instanceof StreamMatcher)) {
+        start++;
+        continue;
+      }
+
+      int end = start;
+      while (end < result.length && result[end] instanceof StreamMatcher) {
+        end++;
+      }
+
+      final Matcher last = result[end - 1];
+      final long lastEnd = getFixedEnd(last);
+      Arrays.sort(result, start, lastEnd >= 0 ? end : end - 1, CHEAP_FIRST);
+      if (result[end - 1] != last) {
+        positions[end - 1] = lastEnd;
+      }
+      start = end;
+    }
+    return result;
+  }
+
+  private static final Comparator<Matcher> CHEAP_FIRST = Comparator.comparing(Matcher::getCost) //
+      .thenComparing(m -> !(m instanceof FixedOffsetMatcher && isSelective((FixedOffsetMatcher) m)));
+
+  /**
+   * @return the stream position after the given matcher succeeded or -1 if it depends on the data
+   */
+  private static long getFixedEnd(final Matcher m) {
+    if (m instanceof FixedOffsetMatcher && !isRangeSearch((FixedOffsetMatcher) m)) {
+      final FixedOffsetMatcher f = (FixedOffsetMatcher) m;
+      return f.getOffset() >= 0 ? f.getOffset() + f.getLength() : -1;
+    }
+    return -1;
+  }
+
+  /**
+   * Select the matcher used to index a type among its siblings. Only matchers preceding the first
+   * matcher with potential side effects qualify, since skipping the type must not be observable.
+   */
+  private static FixedOffsetMatcher findGuard(final Matcher[] matchers) {
+    for (Matcher m : matchers) {
+      if (!(m instanceof StreamMatcher)) {
+        return null;
+      }
+      if (m instanceof FixedOffsetMatcher) {
+        final FixedOffsetMatcher f = (FixedOffsetMatcher) m;
+        if (f.getOffset() >= 0 && f.getLength() > 0 && isSelective(f)) {
+          return f;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Determine whether two matchers can't both succeed on the same stream because they expect
+   * different bytes at the same position: strings which differ where they overlap, a string and a
+   * matcher not accepting the byte of the string at its offset, or two matchers at the same offset
+   * accepting disjoint leading bytes.
+   */
+  private static boolean isExclusive(final FixedOffsetMatcher a, final FixedOffsetMatcher b) {
+    if (a.getOffset() < 0 || b.getOffset() < 0 || isRangeSearch(a) || isRangeSearch(b) || a.getLength() == 0
+        || b.getLength() == 0) {
+      return false;
+    }
+
+    if (a instanceof StringMatcher && b instanceof StringMatcher) {
+      final byte[] p = ((StringMatcher) a).getPattern();
+      final byte[] q = ((StringMatcher) b).getPattern();
+      final int from = Math.max(a.getOffset(), b.getOffset());
+      final int to = Math.min(a.getOffset() + p.length, b.getOffset() + q.length);
+      return from < to && Arrays.mismatch(p, from - a.getOffset(), to - a.getOffset(), q, from - b.getOffset(),
+          to - b.getOffset()) >= 0;
+    }
+    if (b instanceof StringMatcher) {
+      return isExclusive(b, a);
+    }
+    if (a instanceof StringMatcher) {
+      final byte[] p = ((StringMatcher) a).getPattern();
+      final int k = b.getOffset() - a.getOffset();
+      return k >= 0 && k < p.length && !b.acceptsLeadingByte(p[k] & 0xff);
+    }
+
+    if (a.getOffset() != b.getOffset()) {
+      return false;
+    }
+    for (int v = 0; v < 256; v++) {
+      if (a.acceptsLeadingByte(v) && b.acceptsLeadingByte(v)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isRangeSearch(final FixedOffsetMatcher guard) {
+    return guard instanceof StringMatcher && ((StringMatcher) guard).isRangeSearch();
+  }
+
+  private static boolean isSelective(final FixedOffsetMatcher f) {
+    if (isRangeSearch(f)) {
+      return ((StringMatcher) f).getPattern().length > 0;
+    }
+
+    for (int b = 0; b < 256; b++) {
+      if (!f.acceptsLeadingByte(b)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,42 @@
+package org.jadice.filetype.database;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.jadice.filetype.matchers.Matcher;
+
+/**
+ * Prints the expected {@link Matcher.Cost cost} of every type in a magic database, see
+ * {@link CompiledDatabase#writeCostReport(Appendable)}. Expensive types near the root are the ones
+ * slowing down every analysis.
+ */
+public final class CostReport {
+
+  private CostReport() {
+    // static only
+  }
+
+  /**
+   * @param args the path of a magic XML database or snapshot
+   * @throws Exception if the database can't be loaded
+   */
+  public static void main(final String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("Usage: " + CostReport.class.getName() + " <magic.xml or snapshot>");
+      System.exit(1);
+    }
+
+    final Database db;
+    try (InputStream is = new BufferedInputStream(new FileInputStream(args[0]))) {
+      db = DatabaseSnapshot.isSnapshot(is) ? DatabaseSnapshot.load(is) : DatabaseLoader.load(is);
+    }
+
+    final Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+    CompiledDatabase.compile(db).writeCostReport(out);
+    out.flush();
+  }
+}
@@ -0,0 +1,178 @@
+package org.jadice.filetype.database;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jadice.filetype.matchers.MatcherFactory;
+
+/**
+ * A streaming loader for magic XML databases. It constructs the {@link Type}s, matchers and
+ * {@link Action}s directly while reading the document with StAX, avoiding the cost of setting up a
+ * JAXB context.
+ * <p>
+ * The loader only understands the elements and attributes of the standard mapping. Any document it
+ * cannot handle exactly like JAXB would is rejected with an {@link XMLStreamException}, so that
+ * the caller may fall back to JAXB.
+ *
+ */
+public final class DatabaseLoader {
+
+  private DatabaseLoader() {
+    // static only
+  }
+
+  /**
+   * An element of the database document: either a container (<code>magic</code> or
+   * <code>type</code>) with children or a leaf with attributes and text content.
+   */
+  static final class Element {
+    final String name;
+    final Map<String, String> attributes;
+    final String text;
+    final List<Element> children;
+
+    Element(final String name, final Map<String, String> attributes, final String text, final List<Element> children) {
+      this.name = name;
+      this.attributes = attributes;
+      this.text = text;
+      this.children = children;
+    }
+
+    boolean isContainer() {
+      return null != children;
+    }
+  }
+
+  /**
+   * Load a database from the given stream. The stream is not closed.
+   *
+   * @param is the stream containing the XML database
+   * @return the frozen database
+   * @throws XMLStreamException if the document can't be read or contains unsupported constructs
+   */
+  public static Database load(final InputStream is) throws XMLStreamException {
+    final Element root = parse(is);
+    try {
+      return (Database) create(root);
+    } catch (IllegalArgumentException | ReflectiveOperationException | UnsupportedEncodingException e) {
+      throw new XMLStreamException("Invalid database: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Parse the database document into a tree of {@link Element}s.
+   */
+  static Element parse(final InputStream is) throws XMLStreamException {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+
+    final XMLStreamReader r = factory.createXMLStreamReader(is);
+    try {
+      r.nextTag();
+      checkNamespace(r);
+      if (!"magic".equals(r.getLocalName())) {
+        throw new XMLStreamException("Unexpected root element " + r.getLocalName(), r.getLocation());
+      }
+      return readContainer(r);
+    } finally {
+      r.close();
+    }
+  }
+
+  /**
+   * Create the object represented by the given element.
+   *
+   * @param element the element
+   * @return a {@link Database}, {@link Type}, matcher or {@link Action}
+   */
+  static Object create(final Element element)
+      throws ReflectiveOperationException, UnsupportedEncodingException {
+    if (element.isContainer()) {
+      final Type type = "magic".equals(element.name) ? new Database() : new Type();
+      final List<Object> content = new ArrayList<Object>(element.children.size());
+      for (Element child : element.children) {
+        content.add(create(child));
+      }
+      type.setContent(content);
+      return type;
+    }
+
+    switch (element.name){
+      case "mime-type" :
+        return new MimeTypeAction(element.text);
+      case "extension" :
+        return new ExtensionAction(element.text);
+      case "description" :
+        return new DescriptionAction(element.attributes.get("lang"), element.text);
+      case "property" :
+        return new SetPropertyAction(element.attributes.get("name"), element.text);
+      default :
+        return MatcherFactory.create(element.name, element.attributes, element.text);
+    }
+  }
+
+  private static Element readContainer(final XMLStreamReader r) throws XMLStreamException {
+    final String name = r.getLocalName();
+    final List<Element> children = new ArrayList<Element>();
+    while (r.next() != XMLStreamConstants.END_ELEMENT) {
+      if (r.getEventType() == XMLStreamConstants.START_ELEMENT) {
+        children.add(readElement(r));
+      }
+    }
+    return new Element(name, Collections.<String, String> emptyMap(), null, children);
+  }
+
+  private static Element readElement(final XMLStreamReader r) throws XMLStreamException {
+    checkNamespace(r);
+    final String name = r.getLocalName();
+    if ("type".equals(name)) {
+      return readContainer(r);
+    }
+
+    final Map<String, String> attributes = new LinkedHashMap<String, String>();
+    for (int i = 0; i < r.getAttributeCount(); i++) {
+      if (null == r.getAttributePrefix(i) || r.getAttributePrefix(i).isEmpty()) {
+        attributes.put(r.getAttributeLocalName(i), r.getAttributeValue(i));
+      }
+    }
+    return new Element(name, attributes, readText(r), null);
+  }
+
+  private static String readText(final XMLStreamReader r) throws XMLStreamException {
+    final StringBuilder text = new StringBuilder();
+    while (r.next() != XMLStreamConstants.END_ELEMENT) {
+      switch (r.getEventType()){
+        case XMLStreamConstants.CHARACTERS :
+        case XMLStreamConstants.CDATA :
+        case XMLStreamConstants.SPACE :
+          text.append(r.getText());
+          break;
+        case XMLStreamConstants.COMMENT :
+        case XMLStreamConstants.PROCESSING_INSTRUCTION :
+          break;
+        default :
+          throw new XMLStreamException("Unexpected content", r.getLocation());
+      }
+    }
+    return text.toString();
+  }
+
+  private static void checkNamespace(final XMLStreamReader r) throws XMLStreamException {
+    final String ns = r.getNamespaceURI();
+    if (null != ns && !ns.isEmpty()) {
+      throw new XMLStreamException("Unsupported namespace " + ns, r.getLocation());
+    }
+  }
+}
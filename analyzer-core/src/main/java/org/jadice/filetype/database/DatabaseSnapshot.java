@@ -0,0 +1,298 @@
+package org.jadice.filetype.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jadice.filetype.matchers.Matcher;
+import org.jadice.filetype.matchers.MatcherSnapshot;
+
+/**
+ * A compact binary form of a magic XML database. A snapshot contains the complete type tree with the
+ * matchers and actions in the form they have after parsing, e.g. offsets, masks and reference values
+ * as numbers and patterns as the bytes to be matched, with every string stored only once. Loading a
+ * snapshot rebuilds the matchers directly and requires neither an XML parser nor JAXB, nor any
+ * parsing of attribute values.
+ * <p>
+ * Snapshots are created at build time using {@link #main(String[])} or
+ * {@link #write(InputStream, OutputStream)} and are loaded via
+ * {@link org.jadice.filetype.Analyzer#getInstance(java.nio.file.Path)} or any of the other
+ * <code>getInstance</code> methods, which recognize snapshots automatically.
+ * <p>
+ * The format is versioned: a snapshot written with a different {@link #VERSION} is rejected and
+ * must be rebuilt from its XML source.
+ * <p>
+ * Layout (big endian):
+ *
+ * <pre>
+ * int     magic ("JFTD")
+ * int     version
+ * int     string count, followed by (int length, UTF-8 bytes) for each string
+ * type    root type
+ *
+ * type    := int matcher count, matcher..., int action count, action..., int child count, type...
+ * matcher := see {@link MatcherSnapshot}
+ * action  := byte kind followed by
+ *   mime-type, extension: int value
+ *   description:          int lang, int description
+ *   property:             int name, int value
+ * </pre>
+ *
+ * Strings are referenced by their index in the string table, <code>-1</code> denotes
+ * <code>null</code>.
+ */
+public final class DatabaseSnapshot {
+
+  /**
+   * The magic number at the start of every snapshot.
+   */
+  public static final int MAGIC = 0x4A465444; // JFTD
+
+  /**
+   * The version of the snapshot format written by this class.
+   */
+  public static final int VERSION = 3;
+
+  private static final byte ACTION_MIME_TYPE = 0;
+  private static final byte ACTION_EXTENSION = 1;
+  private static final byte ACTION_DESCRIPTION = 2;
+  private static final byte ACTION_PROPERTY = 3;
+
+  private DatabaseSnapshot() {
+    // static only
+  }
+
+  /**
+   * Compile a magic XML database into a snapshot. The XML is fully validated before anything is
+   * written. Neither stream is closed.
+   *
+   * @param xml the stream containing the XML database
+   * @param out the stream to write the snapshot to
+   * @throws XMLStreamException if the database can't be read by the {@link DatabaseLoader}
+   * @throws IOException if writing the snapshot failed
+   */
+  public static void write(final InputStream xml, final OutputStream out) throws XMLStreamException, IOException {
+    final Database database = DatabaseLoader.load(xml);
+
+    // the string table is collected while writing the type tree
+    final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+    final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+    try {
+      writeType(database, new DataOutputStream(tree),
+          s -> null == s ? -1 : strings.computeIfAbsent(s, k -> strings.size()));
+    } catch (IllegalArgumentException e) {
+      throw new XMLStreamException("Invalid database: " + e.getMessage(), e);
+    }
+
+    final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+    dos.writeInt(MAGIC);
+    dos.writeInt(VERSION);
+    dos.writeInt(strings.size());
+    for (String s : strings.keySet()) {
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      dos.writeInt(bytes.length);
+      dos.write(bytes);
+    }
+    tree.writeTo(dos);
+    dos.flush();
+  }
+
+  /**
+   * Determine whether the given buffer contains a snapshot. The buffer's position is not changed.
+   *
+   * @param buffer the buffer
+   * @return <code>true</code> if the buffer starts with the snapshot magic
+   */
+  public static boolean isSnapshot(final ByteBuffer buffer) {
+    return buffer.remaining() >= 4 && buffer.duplicate().order(ByteOrder.BIG_ENDIAN).getInt() == MAGIC;
+  }
+
+  /**
+   * Determine whether the given stream contains a snapshot. The stream must support
+   * {@link InputStream#mark(int)}; it is reset to its current position.
+   *
+   * @param is the stream
+   * @return <code>true</code> if the stream starts with the snapshot magic
+   * @throws IOException if the stream can't be read
+   */
+  public static boolean isSnapshot(final InputStream is) throws IOException {
+    is.mark(4);
+    try {
+      final byte[] head = is.readNBytes(4);
+      return isSnapshot(ByteBuffer.wrap(head));
+    } finally {
+      is.reset();
+    }
+  }
+
+  /**
+   * Load a database from a snapshot read from the given stream. The stream is not closed.
+   *
+   * @param is the stream
+   * @return the frozen database
+   * @throws IOException if the stream can't be read or doesn't contain a valid snapshot of the
+   *           current {@link #VERSION}
+   */
+  public static Database load(final InputStream is) throws IOException {
+    return load(ByteBuffer.wrap(is.readAllBytes()));
+  }
+
+  /**
+   * Load a database from a snapshot contained in the remaining bytes of the given buffer, e.g. a
+   * memory mapped file.
+   *
+   * @param buffer the buffer
+   * @return the frozen database
+   * @throws IOException if the buffer doesn't contain a valid snapshot of the current
+   *           {@link #VERSION}
+   */
+  public static Database load(final ByteBuffer buffer) throws IOException {
+    final ByteBuffer b = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    try {
+      if (b.getInt() != MAGIC) {
+        throw new IOException("Not a database snapshot");
+      }
+      final int version = b.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported snapshot version " + version + ", expected " + VERSION);
+      }
+
+      final String[] strings = new String[checkCount(b.getInt(), b)];
+      for (int i = 0; i < strings.length; i++) {
+        final byte[] bytes = new byte[checkCount(b.getInt(), b)];
+        b.get(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+
+      final Database database = new Database();
+      readType(database, b, i -> i < 0 ? null : strings[i]);
+      if (b.hasRemaining()) {
+        throw new IOException("Trailing data after snapshot");
+      }
+      return database;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated snapshot", e);
+    } catch (IllegalArgumentException | IndexOutOfBoundsException | ReflectiveOperationException e) {
+      throw new IOException("Invalid snapshot: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Compile a magic XML database into a snapshot.
+   * <p>
+   * Usage: <code>DatabaseSnapshot &lt;magic.xml&gt; &lt;snapshot&gt;</code>
+   *
+   * @param args the XML source and the snapshot file to write
+   * @throws Exception if the snapshot can't be created
+   */
+  public static void main(final String[] args) throws Exception {
+    if (args.length != 2) {
+      System.err.println("Usage: " + DatabaseSnapshot.class.getName() + " <magic.xml> <snapshot>");
+      System.exit(1);
+    }
+
+    try (InputStream is = new BufferedInputStream(new FileInputStream(args[0]));
+        OutputStream os = new FileOutputStream(args[1])) {
+      write(is, os);
+    }
+  }
+
+  private static void writeType(final Type type, final DataOutputStream dos, final ToIntFunction<String> strings)
+      throws IOException {
+    dos.writeInt(type.getMatchers().length);
+    for (Matcher m : type.getMatchers()) {
+      MatcherSnapshot.write(m, dos, strings);
+    }
+
+    dos.writeInt(type.getActions().length);
+    for (Action a : type.getActions()) {
+      if (a instanceof MimeTypeAction) {
+        dos.writeByte(ACTION_MIME_TYPE);
+        dos.writeInt(strings.applyAsInt(((MimeTypeAction) a).getType()));
+      } else if (a instanceof ExtensionAction) {
+        dos.writeByte(ACTION_EXTENSION);
+        dos.writeInt(strings.applyAsInt(((ExtensionAction) a).getType()));
+      } else if (a instanceof DescriptionAction) {
+        dos.writeByte(ACTION_DESCRIPTION);
+        dos.writeInt(strings.applyAsInt(((DescriptionAction) a).getLang()));
+        dos.writeInt(strings.applyAsInt(((DescriptionAction) a).getDescription()));
+      } else if (a instanceof SetPropertyAction) {
+        dos.writeByte(ACTION_PROPERTY);
+        dos.writeInt(strings.applyAsInt(((SetPropertyAction) a).getName()));
+        dos.writeInt(strings.applyAsInt(((SetPropertyAction) a).getValue()));
+      } else {
+        throw new IllegalArgumentException("Unsupported action " + a.getClass().getName());
+      }
+    }
+
+    dos.writeInt(type.getChildren().length);
+    for (Type child : type.getChildren()) {
+      writeType(child, dos, strings);
+    }
+  }
+
+  private static void readType(final Type type, final ByteBuffer b, final IntFunction<String> strings)
+      throws IOException, ReflectiveOperationException {
+    final List<Object> content = new ArrayList<Object>();
+    for (int i = checkCount(b.getInt(), b); i > 0; i--) {
+      content.add(MatcherSnapshot.read(b, strings));
+    }
+
+    for (int i = checkCount(b.getInt(), b); i > 0; i--) {
+      final byte kind = b.get();
+      switch (kind){
+        case ACTION_MIME_TYPE :
+          content.add(new MimeTypeAction(strings.apply(b.getInt())));
+          break;
+        case ACTION_EXTENSION :
+          content.add(new ExtensionAction(strings.apply(b.getInt())));
+          break;
+        case ACTION_DESCRIPTION :
+          content.add(new DescriptionAction(strings.apply(b.getInt()), strings.apply(b.getInt())));
+          break;
+        case ACTION_PROPERTY :
+          content.add(new SetPropertyAction(strings.apply(b.getInt()), strings.apply(b.getInt())));
+          break;
+        default :
+          throw new IOException("Invalid action kind " + kind);
+      }
+    }
+
+    for (int i = checkCount(b.getInt(), b); i > 0; i--) {
+      final Type child = new Type();
+      readType(child, b, strings);
+      content.add(child);
+    }
+
+    // freezes the type and its matchers
+    type.setContent(content);
+  }
+
+  /**
+   * Sanity check a count read from the snapshot: every counted item takes at least one byte.
+   */
+  private static int checkCount(final int count, final ByteBuffer b) throws IOException {
+    if (count < 0 || count > b.remaining()) {
+      throw new IOException("Invalid count " + count);
+    }
+    return count;
+  }
+}
@@ -90,8 +90,25 @@ public class DescriptionAction extends Action {
   @XmlAttribute
   private final boolean replace = false;
 
+  String getLang() {
+    return lang;
+  }
+
+  String getDescription() {
+    return description;
+  }
+
   private static final String DEFAULT_LANG = "default";
 
+  public DescriptionAction() {
+    // for JAXB
+  }
+
+  DescriptionAction(final String lang, final String description) {
+    this.lang = lang;
+    this.description = description;
+  }
+
   @Override
   public void perform(Context ctx) {
     Description desc = null;
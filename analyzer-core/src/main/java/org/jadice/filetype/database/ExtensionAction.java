@@ -16,6 +16,18 @@ public class ExtensionAction extends Action {
   @XmlValue
   private String type;
 
+  public ExtensionAction() {
+    // for JAXB
+  }
+
+  ExtensionAction(final String type) {
+    this.type = type;
+  }
+
+  String getType() {
+    return type;
+  }
+
   @Override
   public void perform(Context ctx) {
     ctx.setProperty(KEY, type);
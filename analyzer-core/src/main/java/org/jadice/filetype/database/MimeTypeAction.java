@@ -16,6 +16,18 @@ public class MimeTypeAction extends Action {
   @XmlValue
   private String type;
 
+  public MimeTypeAction() {
+    // for JAXB
+  }
+
+  MimeTypeAction(final String type) {
+    this.type = type;
+  }
+
+  String getType() {
+    return type;
+  }
+
   @Override
   public void perform(Context ctx) {
     ctx.setProperty(KEY, type);
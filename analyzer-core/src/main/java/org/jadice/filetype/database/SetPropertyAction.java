@@ -18,6 +18,23 @@ public class SetPropertyAction extends Action {
   @XmlValue
   private String value;
 
+  public SetPropertyAction() {
+    // for JAXB
+  }
+
+  SetPropertyAction(final String name, final String value) {
+    this.name = name;
+    this.value = value;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  String getValue() {
+    return value;
+  }
+
   @Override
   public void perform(Context ctx) {
     ctx.setProperty(name, value);
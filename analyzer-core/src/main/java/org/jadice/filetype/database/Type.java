@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import jakarta.xml.bind.Unmarshaller;
 import jakarta.xml.bind.annotation.XmlAnyElement;
 import jakarta.xml.bind.annotation.XmlRootElement;
 import jakarta.xml.bind.annotation.XmlTransient;
@@ -13,26 +14,28 @@ import org.jadice.filetype.matchers.Matcher;
 
 /**
  * A {@link Type} represents a stream type consisting of a set of matchers, actions to perform when
- * the type is matched and sub-types to refine the match.
+ * the type is matched and sub-types to refine the match. Types are immutable once unmarshalled.
  * 
  */
 @XmlRootElement(name = "type")
 public class Type {
+  private static final Matcher[] NO_MATCHERS = new Matcher[0];
+  private static final Action[] NO_ACTIONS = new Action[0];
+  private static final Type[] NO_TYPES = new Type[0];
+
   @XmlAnyElement(lax = true)
   private List<Object> any = new ArrayList<Object>();
 
   @XmlTransient
-  private final List<Matcher> matchers = new ArrayList<Matcher>();
+  private Matcher[] matchers = NO_MATCHERS;
 
   @XmlTransient
-  private final List<Action> actions = new ArrayList<Action>();
+  private Action[] actions = NO_ACTIONS;
 
   @XmlTransient
-  private final List<Type> children = new ArrayList<Type>();
+  private Type[] children = NO_TYPES;
 
   public boolean analyze(Context ctx) throws IOException {
-    initialize();
-
     // try matchers, return if one of them fails
     for (Matcher matcher : matchers) {
       if (!matcher.matches(ctx)) {
@@ -57,22 +60,57 @@ public class Type {
     return true;
   }
 
-  private void initialize() {
+  Matcher[] getMatchers() {
+    return matchers;
+  }
+
+  Action[] getActions() {
+    return actions;
+  }
+
+  Type[] getChildren() {
+    return children;
+  }
+
+  /**
+   * JAXB callback invoked once the type and all of its content have been unmarshalled. Freezes the
+   * type: the content is sorted into matchers, actions and children and the matchers are
+   * {@link Matcher#freeze() frozen}. Afterwards the type is never modified again and may be shared
+   * between any number of threads.
+   *
+   * @param unmarshaller the unmarshaller
+   * @param parent the parent object
+   */
+  void afterUnmarshal(final Unmarshaller unmarshaller, final Object parent) {
+    setContent(any);
+  }
+
+  /**
+   * Set the content of this type and freeze it.
+   *
+   * @param content the matchers, actions and child types in document order
+   */
+  void setContent(final List<Object> content) {
     // sort objects by type - needed due to JAXB constraint.
-    if (null != any) {
-      for (Object o : any) {
-        if (o instanceof Matcher) {
-          matchers.add((Matcher) o);
-        } else if (o instanceof Action) {
-          actions.add((Action) o);
-        } else if (o instanceof Type) {
-          children.add((Type) o);
-        } else {
-          throw new IllegalArgumentException("Don't know how to deal with a " + o.getClass() + ": " + o);
-        }
+    final List<Matcher> m = new ArrayList<Matcher>();
+    final List<Action> a = new ArrayList<Action>();
+    final List<Type> c = new ArrayList<Type>();
+    for (Object o : content) {
+      if (o instanceof Matcher) {
+        ((Matcher) o).freeze();
+        m.add((Matcher) o);
+      } else if (o instanceof Action) {
+        a.add((Action) o);
+      } else if (o instanceof Type) {
+        c.add((Type) o);
+      } else {
+        throw new IllegalArgumentException("Don't know how to deal with a " + o.getClass() + ": " + o);
       }
-
-      any = null;
     }
+
+    matchers = m.toArray(NO_MATCHERS);
+    actions = a.toArray(NO_ACTIONS);
+    children = c.toArray(NO_TYPES);
+    any = null;
   }
 }
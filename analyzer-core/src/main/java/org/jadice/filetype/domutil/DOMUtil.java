@@ -14,6 +14,15 @@ import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+/**
+ * Helpers for parsing XML into a DOM without resolving external entities.
+ * <p>
+ * The matchers no longer use this class; they stream package parts with the {@link PartReader}
+ * instead of building a DOM. It is kept for applications and custom matchers built on it.
+ *
+ * @deprecated use the {@link PartReader}, which reads parts without building a DOM
+ */
+@Deprecated
 public class DOMUtil {
 
   static final class NullResolver extends InputStream implements EntityResolver {
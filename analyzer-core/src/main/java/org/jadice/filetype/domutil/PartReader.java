@@ -0,0 +1,192 @@
+package org.jadice.filetype.domutil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A streaming reader for the XML parts of document packages like OOXML and ODF files, e.g. their
+ * relationships, content types, manifests or metadata. Unlike a DOM tree, it doesn't hold the
+ * document in memory, so that callers can pick the elements and attributes they need and stop
+ * reading as soon as they have found what they are looking for.
+ * <p>
+ * Names are the qualified names as they appear in the document, e.g. <code>office:meta</code>,
+ * just like the node names of a DOM parsed without namespace awareness. DTDs and external entities
+ * are not supported.
+ */
+public class PartReader implements Closeable {
+
+  private static final XMLInputFactory FACTORY = createFactory();
+
+  private final XMLStreamReader reader;
+
+  private int depth;
+
+  private PartReader(final XMLStreamReader reader) {
+    this.reader = reader;
+  }
+
+  private static XMLInputFactory createFactory() {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
+  }
+
+  /**
+   * Create a reader for the given part. Closing the reader doesn't close the stream.
+   *
+   * @param is the part data
+   * @return the reader
+   * @throws IOException if the part can't be read
+   */
+  public static PartReader open(final InputStream is) throws IOException {
+    try {
+      return new PartReader(FACTORY.createXMLStreamReader(is));
+    } catch (XMLStreamException e) {
+      throw new IOException("Can't read XML part", e);
+    }
+  }
+
+  /**
+   * Advance to the next element in document order, whether nested or not.
+   *
+   * @return <code>false</code> at the end of the document
+   * @throws IOException if the part is malformed
+   */
+  public boolean nextElement() throws IOException {
+    try {
+      while (reader.hasNext()) {
+        switch (reader.next()){
+          case XMLStreamConstants.START_ELEMENT :
+            depth++;
+            return true;
+          case XMLStreamConstants.END_ELEMENT :
+            depth--;
+            break;
+          default :
+            break;
+        }
+      }
+      return false;
+    } catch (XMLStreamException e) {
+      throw new IOException("Malformed XML part", e);
+    }
+  }
+
+  /**
+   * @return the nesting depth of the current element, 1 for the root element
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * @return the qualified name of the current element
+   */
+  public String getName() {
+    return qualifiedName(reader.getPrefix(), reader.getLocalName());
+  }
+
+  /**
+   * Get an attribute of the current element.
+   *
+   * @param name the qualified name of the attribute
+   * @return the value or <code>null</code> if the element has no such attribute
+   */
+  public String getAttribute(final String name) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (name.equals(getAttributeName(i)))
+        return reader.getAttributeValue(i);
+    }
+    return null;
+  }
+
+  /**
+   * @return the number of attributes of the current element, not counting namespace declarations
+   */
+  public int getAttributeCount() {
+    return reader.getAttributeCount();
+  }
+
+  /**
+   * @param index the index of the attribute
+   * @return the qualified name of the attribute
+   */
+  public String getAttributeName(final int index) {
+    final String localName = reader.getAttributeLocalName(index);
+    final String prefix = reader.getAttributePrefix(index);
+    // avoid the concatenation for the common unprefixed attributes
+    return null == prefix || prefix.isEmpty() ? localName : qualifiedName(prefix, localName);
+  }
+
+  /**
+   * @param index the index of the attribute
+   * @return the value of the attribute
+   */
+  public String getAttributeValue(final int index) {
+    return reader.getAttributeValue(index);
+  }
+
+  /**
+   * Read the text of the current element, i.e. the concatenation of its text children, and skip
+   * the rest of the element, including any nested elements. Afterwards, {@link #nextElement()}
+   * continues after the end of the element.
+   *
+   * @return the text or <code>null</code> if the element is empty
+   * @throws IOException if the part is malformed
+   */
+  public String getElementText() throws IOException {
+    try {
+      StringBuilder text = null;
+      boolean empty = true;
+      final int end = depth - 1;
+      while (depth > end) {
+        switch (reader.next()){
+          case XMLStreamConstants.START_ELEMENT :
+            depth++;
+            empty = false;
+            break;
+          case XMLStreamConstants.END_ELEMENT :
+            depth--;
+            break;
+          case XMLStreamConstants.CHARACTERS :
+          case XMLStreamConstants.CDATA :
+          case XMLStreamConstants.SPACE :
+            empty = false;
+            if (depth == end + 1) {
+              if (null == text)
+                text = new StringBuilder();
+              text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+            break;
+          default :
+            break;
+        }
+      }
+      return empty ? null : null != text ? text.toString() : "";
+    } catch (XMLStreamException e) {
+      throw new IOException("Malformed XML part", e);
+    }
+  }
+
+  private static String qualifiedName(final String prefix, final String localName) {
+    return null == prefix || prefix.isEmpty() ? localName : prefix + ':' + localName;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Can't close XML part", e);
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package org.jadice.filetype.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Supplies the blocks a {@link MemoryInputStream} buffers its data in. Implementations must be
+ * thread safe.
+ */
+public interface BlockAllocator {
+  /**
+   * Allocate a block of the given capacity.
+   *
+   * @param capacity the capacity in bytes
+   * @return a buffer with the given capacity, its position and limit are irrelevant
+   */
+  ByteBuffer allocate(int capacity);
+
+  /**
+   * Return a block which is no longer used. The block must not be accessed afterwards.
+   *
+   * @param block a block obtained from {@link #allocate(int)}
+   */
+  void release(ByteBuffer block);
+}
@@ -0,0 +1,80 @@
+package org.jadice.filetype.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link BlockAllocator} keeping released blocks for reuse, up to a bounded total capacity.
+ * Blocks are allocated either on the heap or, in order to keep large buffers out of the garbage
+ * collected heap, as direct buffers.
+ */
+public class BlockPool implements BlockAllocator {
+
+  private final boolean direct;
+
+  private final long maxPooledBytes;
+
+  private final AtomicLong pooledBytes = new AtomicLong();
+
+  /**
+   * Per capacity: the released blocks.
+   */
+  private final ConcurrentHashMap<Integer, Queue<ByteBuffer>> pool = new ConcurrentHashMap<>();
+
+  /**
+   * Create a pool.
+   *
+   * @param direct whether to allocate direct buffers instead of heap buffers
+   * @param maxPooledBytes the maximum total capacity of the blocks kept for reuse, 0 to disable
+   *          pooling
+   */
+  public BlockPool(final boolean direct, final long maxPooledBytes) {
+    this.direct = direct;
+    this.maxPooledBytes = maxPooledBytes;
+  }
+
+  @Override
+  public ByteBuffer allocate(final int capacity) {
+    final Queue<ByteBuffer> blocks = pool.get(capacity);
+    final ByteBuffer block = null != blocks ? blocks.poll() : null;
+    if (null != block) {
+      pooledBytes.addAndGet(-capacity);
+      return block.clear();
+    }
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  @Override
+  public void release(final ByteBuffer block) {
+    if (block.isDirect() != direct || block.isReadOnly()) {
+      return;
+    }
+
+    final int capacity = block.capacity();
+    long pooled;
+    do {
+      pooled = pooledBytes.get();
+      if (pooled + capacity > maxPooledBytes) {
+        return;
+      }
+    } while (!pooledBytes.compareAndSet(pooled, pooled + capacity));
+    pool.computeIfAbsent(capacity, c -> new ConcurrentLinkedQueue<>()).offer(block);
+  }
+
+  /**
+   * @return whether this pool allocates direct buffers
+   */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * @return the total capacity of the blocks currently kept for reuse
+   */
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+}
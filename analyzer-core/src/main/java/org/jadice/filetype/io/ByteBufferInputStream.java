@@ -0,0 +1,150 @@
+package org.jadice.filetype.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An implementation of the {@link SeekableInputStream} reading the remaining content of a
+ * {@link ByteBuffer}, i.e. the bytes between its position and its limit, without copying it. Heap
+ * as well as direct or memory mapped buffers are supported. The position and limit of the given
+ * buffer are not modified.
+ */
+public class ByteBufferInputStream extends SeekableInputStream {
+
+  private final ByteBuffer buffer;
+
+  private long position;
+
+  /**
+   * Creates a seekable stream over the remaining content of the given buffer.
+   *
+   * @param buffer the buffer
+   */
+  public ByteBufferInputStream(final ByteBuffer buffer) {
+    if (buffer == null) {
+      throw new IllegalArgumentException("buffer must not be null");
+    }
+    this.buffer = buffer.slice();
+  }
+
+  /**
+   * Creates a seekable stream over a range of the given array.
+   *
+   * @param data the array
+   * @param offset the offset of the first byte
+   * @param length the number of bytes
+   */
+  public ByteBufferInputStream(final byte[] data, final int offset, final int length) {
+    this(ByteBuffer.wrap(data, offset, length));
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#getStreamPosition()
+   */
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#length()
+   */
+  @Override
+  public long length() throws IOException {
+    checkClosed();
+    return buffer.limit();
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#seek(long)
+   */
+  @Override
+  public void seek(final long pos) throws IOException {
+    checkClosed();
+
+    if (pos < flushedPos)
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+
+    position = pos;
+    bitOffset = 0;
+  }
+
+  /**
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (position >= buffer.limit())
+      return -1;
+
+    return buffer.get((int) position++) & 0xff;
+  }
+
+  /**
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length!");
+    if (len == 0)
+      return 0;
+
+    final int read = (int) Math.min(len, buffer.limit() - position);
+    if (read <= 0)
+      return -1;
+
+    buffer.get((int) position, b, off, read);
+    position += read;
+    return read;
+  }
+
+  @Override
+  protected boolean readBuffered(final byte[] b, final int length) throws IOException {
+    checkClosed();
+
+    if (position + length > buffer.limit())
+      return false;
+
+    buffer.get((int) position, b, 0, length);
+    position += length;
+    bitOffset = 0;
+    return true;
+  }
+
+  @Override
+  public int available() throws IOException {
+    checkClosed();
+    return (int) Math.max(0, buffer.limit() - position);
+  }
+
+  /**
+   * Returns the buffer this stream reads from.
+   */
+  @Override
+  public ByteBuffer getBackingBuffer() {
+    return buffer.duplicate();
+  }
+
+  @Override
+  public boolean isCached() {
+    return true;
+  }
+
+  @Override
+  public boolean isCachedMemory() {
+    return true;
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return buffer.limit();
+  }
+}
@@ -0,0 +1,257 @@
+package org.jadice.filetype.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jadice.filetype.io.PhantomReferenceSweeper.CleanupCloseable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of the {@link SeekableInputStream} reading a locally accessible file using
+ * positional reads only. Unlike the {@link RandomAccessFileInputStream}, it doesn't rely on the file
+ * pointer of the underlying {@link FileChannel}.
+ * <p>
+ * This allows for any number of independent cursors over the same file, see {@link #fork()}. Like
+ * all streams, a single cursor must not be used by several threads at once, but different cursors
+ * may be read concurrently without any locking. The file is closed once all cursors are closed.
+ * <p>
+ * Caveat: as with any {@link FileChannel}, interrupting a thread while it reads closes the channel
+ * and thereby all cursors sharing it.
+ */
+public class FileChannelInputStream extends SeekableInputStream {
+
+  private static final Logger logger = LoggerFactory.getLogger(FileChannelInputStream.class);
+
+  private static final int DEFAULT_READ_AHEAD = 4096;
+
+  /**
+   * The channel and the number of cursors using it.
+   */
+  private static final class SharedChannel {
+    private final FileChannel channel;
+    private final AtomicInteger users = new AtomicInteger(1);
+    private PhantomReference<? extends Object> reference;
+
+    SharedChannel(final FileChannel channel) {
+      this.channel = channel;
+    }
+
+    void acquire() throws IOException {
+      int n;
+      do {
+        n = users.get();
+        if (n == 0) {
+          throw new IOException("Attempt to fork closed stream");
+        }
+      } while (!users.compareAndSet(n, n + 1));
+    }
+
+    void release() throws IOException {
+      if (users.decrementAndGet() == 0) {
+        try {
+          channel.close();
+        } finally {
+          PhantomReferenceSweeper.getInstance().unregister(reference);
+          reference = null;
+        }
+      }
+    }
+  }
+
+  private SharedChannel shared;
+
+  /**
+   * The read-ahead buffer of this cursor
+   */
+  private final ByteBuffer buffer;
+  private long bufferBase = Long.MIN_VALUE;
+  private long bufferTop = Long.MIN_VALUE;
+
+  /**
+   * The current position of this cursor
+   */
+  private long position = 0;
+
+  /**
+   * Creates a seekable stream over the given file.
+   *
+   * @param file the file
+   * @throws IOException if the file can't be opened
+   */
+  public FileChannelInputStream(final File file) throws IOException {
+    this(file.toPath());
+  }
+
+  /**
+   * Creates a seekable stream over the given file.
+   *
+   * @param file the file
+   * @throws IOException if the file can't be opened
+   */
+  public FileChannelInputStream(final Path file) throws IOException {
+    this.shared = new SharedChannel(FileChannel.open(file, StandardOpenOption.READ));
+    this.buffer = ByteBuffer.allocate(DEFAULT_READ_AHEAD);
+    // the sweeper closes the channel once the last cursor is unreachable
+    shared.reference = PhantomReferenceSweeper.getInstance().register(shared, new CleanupCloseable(shared.channel));
+  }
+
+  private FileChannelInputStream(final SharedChannel shared, final long position) {
+    this.shared = shared;
+    this.buffer = ByteBuffer.allocate(DEFAULT_READ_AHEAD);
+    this.position = position;
+  }
+
+  /**
+   * Create a new, independent cursor over the same file, positioned at the current position of
+   * this one. The new cursor must be closed separately.
+   *
+   * @return the new cursor
+   * @throws IOException if this stream has been closed
+   */
+  public FileChannelInputStream fork() throws IOException {
+    checkClosed();
+    shared.acquire();
+    final FileChannelInputStream fork = new FileChannelInputStream(shared, position);
+    fork.setByteOrder(getByteOrder());
+    return fork;
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#getStreamPosition()
+   */
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#length()
+   */
+  @Override
+  public long length() throws IOException {
+    checkClosed();
+    return shared.channel.size();
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#seek(long)
+   */
+  @Override
+  public void seek(final long pos) throws IOException {
+    checkClosed();
+
+    if (pos < flushedPos)
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+
+    position = pos;
+    bitOffset = 0;
+  }
+
+  /**
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if ((position < bufferBase || position >= bufferTop) && !fill())
+      return -1;
+
+    return buffer.get((int) (position++ - bufferBase)) & 0xff;
+  }
+
+  /**
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length!");
+    if (len == 0)
+      return 0;
+
+    // can we satisfy the request (or at least some of it) from the read-ahead buffer?
+    int read = 0;
+    if (position >= bufferBase && position < bufferTop) {
+      read = (int) Math.min(bufferTop - position, len);
+      buffer.get((int) (position - bufferBase), b, off, read);
+      position += read;
+      if (read == len)
+        return read;
+    }
+
+    // large requests go directly to the destination, small ones through the read-ahead buffer
+    if (len - read >= buffer.capacity()) {
+      final int r = shared.channel.read(ByteBuffer.wrap(b, off + read, len - read), position);
+      if (r > 0) {
+        position += r;
+        read += r;
+      }
+    } else if (fill()) {
+      final int r = (int) Math.min(bufferTop - position, len - read);
+      buffer.get(0, b, off + read, r);
+      position += r;
+      read += r;
+    }
+    return read > 0 ? read : -1;
+  }
+
+  /**
+   * Fill the read-ahead buffer starting at the current position.
+   *
+   * @return <code>false</code> at the end of the file
+   */
+  private boolean fill() throws IOException {
+    buffer.clear();
+    final int r = shared.channel.read(buffer, position);
+    if (r <= 0) {
+      bufferBase = bufferTop = Long.MIN_VALUE;
+      return false;
+    }
+    bufferBase = position;
+    bufferTop = position + r;
+    return true;
+  }
+
+  /*
+   * @see java.io.InputStream#close()
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      /* Process independent of result of close() in superclass */
+      if (null != shared) {
+        try {
+          shared.release();
+        } catch (IOException e) {
+          logger.error(e.getMessage(), e);
+        } finally {
+          shared = null;
+        }
+      }
+    }
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    try {
+      return null != shared ? shared.channel.size() : -1;
+    } catch (final IOException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package org.jadice.filetype.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.jadice.filetype.io.PhantomReferenceSweeper.CleanupCloseable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of the {@link SeekableInputStream} which maps a locally accessible file into
+ * memory. Once a region of the file has been mapped, seeking and reading are plain memory accesses
+ * which don't require any system calls.
+ * <p>
+ * Since a single mapping is limited to 2GB, the file is mapped in windows of
+ * {@link #WINDOW_SIZE} bytes, each of which is mapped upon first access.
+ * <p>
+ * Caveats: the file must not be truncated while it is being read. Accessing a mapped region beyond
+ * the end of the file makes the JVM raise an {@link InternalError}. The read methods report it as
+ * an {@link IOException}, but once they have been compiled, the JVM may raise it asynchronously,
+ * i.e. shortly after the read has returned; {@link org.jadice.filetype.Analyzer} converts those as
+ * well. The mapped regions are released
+ * by the garbage collector only, so on some systems the file remains locked for a while after
+ * {@link #close()}.
+ */
+public class MappedFileInputStream extends SeekableInputStream {
+
+  private static final Logger logger = LoggerFactory.getLogger(MappedFileInputStream.class);
+
+  /**
+   * The size of the regions which are mapped individually.
+   */
+  public static final int WINDOW_SIZE = 1 << 30;
+
+  private FileChannel channel;
+
+  private final long length;
+
+  private final int windowShift;
+
+  private final long windowMask;
+
+  /**
+   * The mapped windows, <code>null</code> until accessed.
+   */
+  private final MappedByteBuffer[] windows;
+
+  /**
+   * The current position in the file
+   */
+  private long position = 0;
+
+  private PhantomReference<? extends Object> reference;
+
+  /**
+   * Creates a seekable stream over a memory mapped file.
+   *
+   * @param file the file
+   * @throws IOException if the file can't be opened
+   */
+  public MappedFileInputStream(final File file) throws IOException {
+    this(file.toPath());
+  }
+
+  /**
+   * Creates a seekable stream over a memory mapped file.
+   *
+   * @param file the file
+   * @throws IOException if the file can't be opened
+   */
+  public MappedFileInputStream(final Path file) throws IOException {
+    this(file, WINDOW_SIZE);
+  }
+
+  /*
+   * Allows for small windows in order to test reads across window boundaries. The window size must
+   * be a power of two.
+   */
+  MappedFileInputStream(final Path file, final int windowSize) throws IOException {
+    if (Integer.bitCount(windowSize) != 1) {
+      throw new IllegalArgumentException("window size must be a power of two");
+    }
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      this.length = channel.size();
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    this.windowShift = Integer.numberOfTrailingZeros(windowSize);
+    this.windowMask = windowSize - 1;
+    this.windows = new MappedByteBuffer[(int) ((length + windowMask) >>> windowShift)];
+    reference = PhantomReferenceSweeper.getInstance().register(this, new CleanupCloseable(this.channel));
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#getStreamPosition()
+   */
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  /**
+   * Returns the length of the file as of the time it was opened.
+   *
+   * @see org.jadice.filetype.io.SeekableInputStream#length()
+   */
+  @Override
+  public long length() throws IOException {
+    checkClosed();
+    return length;
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#seek(long)
+   */
+  @Override
+  public void seek(final long pos) throws IOException {
+    checkClosed();
+
+    if (pos < flushedPos)
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+
+    position = pos;
+    bitOffset = 0;
+  }
+
+  /**
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (position >= length)
+      return -1;
+
+    final int b;
+    try {
+      b = window(position).get((int) (position & windowMask)) & 0xff;
+    } catch (InternalError e) {
+      throw truncated(e);
+    }
+    position++;
+    return b;
+  }
+
+  /**
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(final byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length!");
+    if (len == 0)
+      return 0;
+    if (position >= length)
+      return -1;
+
+    int read = 0;
+    len = (int) Math.min(len, length - position);
+    while (read < len) {
+      final int offset = (int) (position & windowMask);
+      final int n = (int) Math.min(len - read, windowMask + 1 - offset);
+      try {
+        window(position).get(offset, b, off + read, n);
+      } catch (InternalError e) {
+        throw truncated(e);
+      }
+      position += n;
+      read += n;
+    }
+    return read;
+  }
+
+  private IOException truncated(final InternalError e) {
+    return new IOException("Mapped file is shorter than " + length + " bytes, it was probably truncated", e);
+  }
+
+  private MappedByteBuffer window(final long pos) throws IOException {
+    final int index = (int) (pos >>> windowShift);
+    MappedByteBuffer window = windows[index];
+    if (null == window) {
+      final long base = (long) index << windowShift;
+      window = channel.map(MapMode.READ_ONLY, base, Math.min(windowMask + 1, length - base));
+      windows[index] = window;
+    }
+    return window;
+  }
+
+  /*
+   * @see java.io.InputStream#close()
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      /* Process independent of result of close() in superclass */
+      if (null != channel) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          logger.error(e.getMessage(), e);
+        } finally {
+          PhantomReferenceSweeper.getInstance().unregister(reference);
+          reference = null;
+          channel = null;
+        }
+      }
+    }
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return length;
+  }
+}
@@ -2,36 +2,76 @@ package org.jadice.filetype.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 
 
 /**
  * A SeekableInputStream which decorates a plain InputStream with seekability by using an in-memory
  * cache.
+ * <p>
+ * The cache consists of blocks obtained from a {@link BlockAllocator}. The first block has the
+ * configured block size, each further block twice the size of its predecessor, up to
+ * {@link #MAX_BLOCK_SIZE}, so that large inputs are buffered in a few large blocks. The blocks are
+ * returned to the allocator on {@link #close()}. By default, they are taken from a bounded
+ * {@link BlockPool} of heap buffers shared by all streams, see
+ * {@link #setDefaultAllocator(BlockAllocator)}.
  *
  * <b>Configurable:</b> jadice.io.memoryInputStream.blocksize integer 2048 The block size to use
  * when buffering input data in memory.
  */
 public class MemoryInputStream extends SeekableInputStream {
 
-  private static int defaultBlockSize;
+  /**
+   * The maximum size blocks grow to.
+   */
+  public static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
+  /**
+   * The maximum total capacity of the blocks kept for reuse by the default allocator.
+   */
+  public static final long DEFAULT_POOL_SIZE = 16 * 1024 * 1024;
+
+  private static int defaultBlockSize = Integer.getInteger("jadice.io.memoryInputStream.blocksize", 2048);
+
+  private static volatile BlockAllocator defaultAllocator = new BlockPool(false, DEFAULT_POOL_SIZE);
 
   private int blockSize = 2048;
   private InputStream sourceInputStream;
   private long sourceStreamPosition = 0;
   private int currentBlockPosition = 0; // position within the last block
-  private final List<byte[]> cachedBlocks;
+  private final List<ByteBuffer> cachedBlocks;
   private long targetStreamPosition = 0;
   private long streamLength = -1L;
 
+  /**
+   * The allocator the blocks are obtained from, <code>null</code> if they are owned by the caller
+   */
+  private final BlockAllocator allocator;
+
+  /**
+   * The stream position of the first byte of each block
+   */
+  private long[] blockStarts = new long[8];
+
+  /**
+   * The index of the block accessed last
+   */
+  private int lastBlock = 0;
+
+  /**
+   * Transfer buffer for filling direct blocks
+   */
+  private byte[] transfer;
+
   /**
    * Constructs a new MemoryInputStream which wraps the given InputStream and uses the given block
    * size. The first block of data will be pre-fetched within this constructor call.
    *
    * @param is the input stream
-   * @param blockSize the used data block size in bytes. Caused by performance and memory reasons
+   * @param blockSize the size of the first data block in bytes. Caused by performance and memory reasons
    *          this value should be a multiple of 1024 greater than 1MB. If this value is smaller
    *          than 1024 bytes, a minimal block size of 1024 will be assumed.
    * @throws IOException in case of problems during pre fetching
@@ -45,17 +85,36 @@ public class MemoryInputStream extends SeekableInputStream {
    * size.
    *
    * @param is the input stream
-   * @param blockSize the used data block size in bytes. Caused by performance and memory reasons
+   * @param blockSize the size of the first data block in bytes. Caused by performance and memory reasons
    *          this value should be a multiple of 1024 greater than 1MB. If this value is smaller
    *          than 1024 bytes, a minimal block size of 1024 will be assumed.
    * @param forcePrefetch whether the first block of data should be pre-fetched or not.
    * @throws IOException in case of problems during pre-fetching
    */
   public MemoryInputStream(final InputStream is, final int blockSize, final boolean forcePrefetch) throws IOException {
+    this(is, blockSize, forcePrefetch, defaultAllocator);
+  }
+
+  /**
+   * Constructs a new MemoryInputStream which wraps the given InputStream and buffers it in blocks
+   * obtained from the given allocator.
+   *
+   * @param is the input stream
+   * @param blockSize the size of the first block in bytes, at least 1024
+   * @param forcePrefetch whether the first block of data should be pre-fetched or not.
+   * @param allocator the allocator supplying the blocks
+   * @throws IOException in case of problems during pre-fetching
+   */
+  public MemoryInputStream(final InputStream is, final int blockSize, final boolean forcePrefetch,
+      final BlockAllocator allocator) throws IOException {
     if (is == null) {
       throw new IllegalArgumentException("source input stream must not be null");
     }
+    if (allocator == null) {
+      throw new IllegalArgumentException("allocator must not be null");
+    }
     sourceInputStream = is;
+    this.allocator = allocator;
 
     this.blockSize = Math.max(1024, blockSize);
 
@@ -76,6 +135,7 @@ public class MemoryInputStream extends SeekableInputStream {
       throw new IllegalArgumentException("source input stream must not be null");
 
     sourceInputStream = is;
+    allocator = defaultAllocator;
 
     // in contrast to the constructor above we don't limit the block size to >= 1024 bytes.
     this.blockSize = blockSize;
@@ -101,8 +161,9 @@ public class MemoryInputStream extends SeekableInputStream {
    * @param data the data block to read from
    */
   public MemoryInputStream(final byte[] data) {
-    cachedBlocks = new LinkedList<>();
-    cachedBlocks.add(data);
+    allocator = null;
+    cachedBlocks = new ArrayList<>(1);
+    cachedBlocks.add(ByteBuffer.wrap(data));
     sourceStreamPosition = data.length;
     blockSize = data.length;
     currentBlockPosition = data.length;
@@ -137,30 +198,20 @@ public class MemoryInputStream extends SeekableInputStream {
       return -1;
 
     // find the first block to read from
-    final int readBlockIndex = (int) (targetStreamPosition / blockSize);
-
-    // assert that the block is there. should not happen.
-    if (readBlockIndex >= cachedBlocks.size())
-      throw new IOException("Internal error in MemoryInputStream");
-
-    final int positionWithinBlock = (int) (targetStreamPosition - readBlockIndex * blockSize);
+    final int readBlockIndex = findBlock(targetStreamPosition);
+    final ByteBuffer block = cachedBlocks.get(readBlockIndex);
+    final int positionWithinBlock = (int) (targetStreamPosition - blockStarts[readBlockIndex]);
 
     // decide whether we are reading from the last (current) block
-    if (readBlockIndex == cachedBlocks.size() - 1) {
-      // constrain lengthToRead
-      if (lengthToRead + positionWithinBlock > currentBlockPosition)
-        lengthToRead = currentBlockPosition - positionWithinBlock;
-    } else {
-      // constrain lengthToRead
-      if (lengthToRead + positionWithinBlock > blockSize)
-        lengthToRead = blockSize - positionWithinBlock;
-    }
+    final int blockEnd = readBlockIndex == cachedBlocks.size() - 1 ? currentBlockPosition : block.capacity();
+    if (lengthToRead + positionWithinBlock > blockEnd)
+      lengthToRead = blockEnd - positionWithinBlock;
 
     // should not happen
     if (lengthToRead < 0)
       throw new IOException("Internal error in MemoryInputStream");
 
-    System.arraycopy(cachedBlocks.get(readBlockIndex), positionWithinBlock, buffer, offset, lengthToRead);
+    block.get(positionWithinBlock, buffer, offset, lengthToRead);
 
     targetStreamPosition += lengthToRead;
 
@@ -180,15 +231,24 @@ public class MemoryInputStream extends SeekableInputStream {
       return false;
 
     // check if there is room left in the last block
-    if (cachedBlocks.size() == 0 || currentBlockPosition >= blockSize) {
+    if (cachedBlocks.size() == 0 || currentBlockPosition >= cachedBlocks.get(cachedBlocks.size() - 1).capacity()) {
       // make room by adding a block
-      cachedBlocks.add(new byte[blockSize]);
-      currentBlockPosition = 0;
+      addBlock();
     }
 
     // fill up into last block
-    final byte currentBlock[] = cachedBlocks.get(cachedBlocks.size() - 1);
-    final int read = sourceInputStream.read(currentBlock, currentBlockPosition, blockSize - currentBlockPosition);
+    final ByteBuffer currentBlock = cachedBlocks.get(cachedBlocks.size() - 1);
+    final int room = currentBlock.capacity() - currentBlockPosition;
+    final int read;
+    if (currentBlock.hasArray()) {
+      read = sourceInputStream.read(currentBlock.array(), currentBlock.arrayOffset() + currentBlockPosition, room);
+    } else {
+      if (null == transfer)
+        transfer = new byte[Math.min(8192, MAX_BLOCK_SIZE)];
+      read = sourceInputStream.read(transfer, 0, Math.min(room, transfer.length));
+      if (read > 0)
+        currentBlock.put(currentBlockPosition, transfer, 0, read);
+    }
     if (read < 0) {
       sourceInputStream.close();
       sourceInputStream = null;
@@ -201,6 +261,52 @@ public class MemoryInputStream extends SeekableInputStream {
     return true;
   }
 
+  /**
+   * Append a block, twice as large as the last one, up to {@link #MAX_BLOCK_SIZE}.
+   */
+  private void addBlock() {
+    final int n = cachedBlocks.size();
+    final int capacity = n == 0 ? blockSize
+        : Math.max(blockSize, Math.min(2 * cachedBlocks.get(n - 1).capacity(), MAX_BLOCK_SIZE));
+    if (n == blockStarts.length)
+      blockStarts = Arrays.copyOf(blockStarts, 2 * n);
+    blockStarts[n] = sourceStreamPosition;
+    cachedBlocks.add(allocator.allocate(capacity));
+    currentBlockPosition = 0;
+  }
+
+  /**
+   * @return the number of bytes read from the source so far
+   */
+  long getBufferedBytes() {
+    return sourceStreamPosition;
+  }
+
+  /*
+   * For unit tests only.
+   */
+  ByteBuffer blockOf(final int index) {
+    return cachedBlocks.get(index);
+  }
+
+  /**
+   * Find the block containing the given position, which must have been buffered already.
+   */
+  private int findBlock(final long position) throws IOException {
+    final int n = cachedBlocks.size();
+    int i = lastBlock;
+    if (i >= n || position < blockStarts[i] || i + 1 < n && position >= blockStarts[i + 1]) {
+      i = Arrays.binarySearch(blockStarts, 0, n, position);
+      if (i < 0)
+        i = -i - 2;
+      // assert that the block is there. should not happen.
+      if (i < 0 || i >= n)
+        throw new IOException("Internal error in MemoryInputStream");
+      lastBlock = i;
+    }
+    return i;
+  }
+
   @Override
   public int read() throws IOException {
     checkClosed();
@@ -212,22 +318,37 @@ public class MemoryInputStream extends SeekableInputStream {
         return -1; // not enough data in the input stream
 
     // find the block to read from
-    final int readBlockIndex = (int) (targetStreamPosition / blockSize);
-
-    // assert that the block is there. should not happen.
-    if (readBlockIndex >= cachedBlocks.size())
-      throw new IOException("Internal error in MemoryInputStream");
-
-    final int positionWithinBlock = (int) (targetStreamPosition - readBlockIndex * blockSize);
+    final int readBlockIndex = findBlock(targetStreamPosition);
+    final ByteBuffer block = cachedBlocks.get(readBlockIndex);
+    final int positionWithinBlock = (int) (targetStreamPosition - blockStarts[readBlockIndex]);
 
     // decide whether we have enough data
     if (readBlockIndex == cachedBlocks.size() - 1 && positionWithinBlock >= currentBlockPosition
-        || positionWithinBlock >= blockSize)
+        || positionWithinBlock >= block.capacity())
       return -1;
 
     targetStreamPosition++;
 
-    return cachedBlocks.get(readBlockIndex)[positionWithinBlock] & 0xff;
+    return block.get(positionWithinBlock) & 0xff;
+  }
+
+  @Override
+  protected boolean readBuffered(final byte[] b, final int length) throws IOException {
+    checkClosed();
+
+    // only the block of the last access is considered
+    final int i = lastBlock;
+    if (i >= cachedBlocks.size())
+      return false;
+    final ByteBuffer block = cachedBlocks.get(i);
+    final long offset = targetStreamPosition - blockStarts[i];
+    if (offset < 0 || offset + length > block.capacity() || targetStreamPosition + length > sourceStreamPosition)
+      return false;
+
+    block.get((int) offset, b, 0, length);
+    targetStreamPosition += length;
+    bitOffset = 0;
+    return true;
   }
 
   @Override
@@ -251,6 +372,11 @@ public class MemoryInputStream extends SeekableInputStream {
       sourceInputStream.close();
       sourceInputStream = null;
     }
+    if (null != allocator) {
+      for (ByteBuffer block : cachedBlocks) {
+        allocator.release(block);
+      }
+    }
     cachedBlocks.clear();
   }
 
@@ -258,11 +384,10 @@ public class MemoryInputStream extends SeekableInputStream {
   public int available() throws IOException {
     checkClosed();
 
-    if (null == sourceInputStream)
-      return 0;
-
-    final int available = sourceInputStream.available();
-    return (int) Math.max(available, sourceStreamPosition);
+    // the buffered bytes beyond the current position plus what the source can deliver
+    final long buffered = Math.max(0, sourceStreamPosition - targetStreamPosition);
+    final long available = null != sourceInputStream ? sourceInputStream.available() : 0;
+    return (int) Math.min(Integer.MAX_VALUE, buffered + available);
   }
 
   @Override
@@ -319,7 +444,15 @@ public class MemoryInputStream extends SeekableInputStream {
 
   @Override
   public long getSizeEstimate() {
-    return streamLength > 0 ? (int) streamLength : (int) targetStreamPosition;
+    return streamLength > 0 ? streamLength : targetStreamPosition;
+  }
+
+  /**
+   * Returns the wrapped data block if this stream was constructed from a single one.
+   */
+  @Override
+  public ByteBuffer getBackingBuffer() {
+    return null == allocator && cachedBlocks.size() == 1 ? cachedBlocks.get(0).duplicate() : null;
   }
 
   public static void setDefaultBlockSize(final int defaultBlockSize) {
@@ -329,4 +462,24 @@ public class MemoryInputStream extends SeekableInputStream {
   public static int getDefaultBlockSize() {
     return defaultBlockSize;
   }
+
+  /**
+   * Set the allocator used by streams created without an explicit one, e.g. a {@link BlockPool}
+   * of direct buffers to keep large inputs out of the heap.
+   *
+   * @param allocator the allocator
+   */
+  public static void setDefaultAllocator(final BlockAllocator allocator) {
+    if (allocator == null) {
+      throw new IllegalArgumentException("allocator must not be null");
+    }
+    MemoryInputStream.defaultAllocator = allocator;
+  }
+
+  /**
+   * @return the allocator used by streams created without an explicit one
+   */
+  public static BlockAllocator getDefaultAllocator() {
+    return defaultAllocator;
+  }
 }
\ No newline at end of file
@@ -14,11 +14,27 @@ import org.slf4j.LoggerFactory;
 /**
  * An Implementation of the {@link org.jadice.filetype.io.SeekableInputStream} which is based
  * on a locally accessible file.
+ * <p>
+ * Reads are served from a read-ahead buffer whose size adapts to the access pattern: it starts at
+ * {@link #MIN_READ_AHEAD} bytes, is doubled whenever a consumer reads past its end sequentially and
+ * halved whenever a read misses it entirely, within {@link #MIN_READ_AHEAD} and
+ * {@link #MAX_READ_AHEAD}. Scattered probes thus read little more than they need, while sequential
+ * scans quickly end up with few, large reads. Use {@link #setReadAhead(int)} for a fixed size.
  */
 public class RandomAccessFileInputStream extends SeekableInputStream {
 
   private static Logger logger = LoggerFactory.getLogger(RandomAccessFileInputStream.class);
 
+  /**
+   * The initial and minimum size of the adaptive read-ahead buffer.
+   */
+  public static final int MIN_READ_AHEAD = 64;
+
+  /**
+   * The maximum size of the adaptive read-ahead buffer.
+   */
+  public static final int MAX_READ_AHEAD = 256 * 1024;
+
   private RandomAccessFile file;
 
   /**
@@ -28,6 +44,27 @@ public class RandomAccessFileInputStream extends SeekableInputStream {
   private long bufferBase = Long.MIN_VALUE;
   private long bufferTop = Long.MIN_VALUE;
 
+  /**
+   * The end of the part of the read-ahead buffer which has actually been consumed
+   */
+  private long bufferUsed = Long.MIN_VALUE;
+
+  /**
+   * The end of the last large read which bypassed the read-ahead buffer
+   */
+  private long directTop = Long.MIN_VALUE;
+
+  private boolean adaptive = true;
+
+  /**
+   * The size of the read-ahead buffer to be used for the next fill
+   */
+  private int readAhead;
+
+  private long hits;
+  private long misses;
+  private long bytesOverRead;
+
   /**
    * The current position in partial stream
    */
@@ -43,7 +80,7 @@ public class RandomAccessFileInputStream extends SeekableInputStream {
    */
   public RandomAccessFileInputStream(final File file) throws IOException {
     this.file = new RandomAccessFile(file, "r");
-    setReadAhead(32);
+    this.readAhead = MIN_READ_AHEAD;
     reference = PhantomReferenceSweeper.getInstance().register(this, new CleanupCloseable(this.file));
   }
 
@@ -98,19 +135,19 @@ public class RandomAccessFileInputStream extends SeekableInputStream {
     checkClosed();
 
     // can we satisfy the request from the read-ahead buffer?
-    if (position >= bufferBase && position < bufferTop)
+    if (position >= bufferBase && position < bufferTop) {
+      hits++;
+      bufferUsed = Math.max(bufferUsed, position + 1);
       return buffer[(int) (position++ - bufferBase)] & 0xff;
+    }
 
     bitOffset = 0;
-    if (position != file.getFilePointer())
-      file.seek(position);
+    misses++;
 
     // fill the read-ahead buffer, unless there is nothing left or even the original
     // request could not be satisfied at this time.
-    final int r = file.read(buffer, 0, buffer.length);
-    if (r > 0) {
-      bufferBase = position;
-      bufferTop = position + r;
+    if (fill() > 0) {
+      bufferUsed = position + 1;
       position++;
       return buffer[0] & 0xff;
     }
@@ -118,6 +155,21 @@ public class RandomAccessFileInputStream extends SeekableInputStream {
     return -1;
   }
 
+  @Override
+  protected boolean readBuffered(final byte[] b, final int length) throws IOException {
+    checkClosed();
+
+    if (position < bufferBase || position + length > bufferTop)
+      return false;
+
+    System.arraycopy(buffer, (int) (position - bufferBase), b, 0, length);
+    position += length;
+    bufferUsed = Math.max(bufferUsed, position);
+    hits++;
+    bitOffset = 0;
+    return true;
+  }
+
   /**
    * @see java.io.InputStream#read(byte[], int, int)
    */
@@ -126,43 +178,52 @@ public class RandomAccessFileInputStream extends SeekableInputStream {
     checkClosed();
     bitOffset = 0;
 
+    if (len == 0)
+      return 0;
+
     // can we satisfy the request (or at least some of it) from the read-ahead buffer?
     int read = 0;
     if (position >= bufferBase && position < bufferTop) {
       read = (int) min(bufferTop - position, len);
       System.arraycopy(buffer, (int) (position - bufferBase), b, off, read);
       position += read;
+      bufferUsed = Math.max(bufferUsed, position);
 
       // all of it?
-      if (read == len)
+      if (read == len) {
+        hits++;
         return read;
+      }
 
       len -= read;
       off += read;
     }
+    misses++;
 
-    if (position != file.getFilePointer())
-      file.seek(position);
-
-    // first satisfy the destination buffer
-    int r = file.read(b, off, len);
-    if (r > 0) {
-      position += r;
-      read += r;
-
-      // then fill the read-ahead buffer, unless there is nothing left or even the original
-      // request could not be satisfied at this time.
+    if (len < readAhead) {
+      // small requests are served through the read-ahead buffer
+      final int r = fill();
       if (r > 0) {
-        r = file.read(buffer, 0, buffer.length);
-        if (r > 0) {
-          bufferBase = position;
-          bufferTop = bufferBase + r;
-        }
+        final int n = min(r, len);
+        System.arraycopy(buffer, 0, b, off, n);
+        position += n;
+        bufferUsed = position;
+        read += n;
+      }
+    } else {
+      // large requests go to the destination directly. The read-ahead buffer is left empty: the
+      // next small read fills it, if there is one.
+      adapt();
+      if (position != file.getFilePointer())
+        file.seek(position);
+      final int r = file.read(b, off, len);
+      if (r > 0) {
+        position += r;
+        read += r;
+        directTop = position;
       }
-    } else if (read == 0) {
-      return -1;
     }
-    return read;
+    return read > 0 ? read : -1;
   }
 
   /*
@@ -188,27 +249,104 @@ public class RandomAccessFileInputStream extends SeekableInputStream {
     }
   }
 
+  /**
+   * Fill the read-ahead buffer starting at the current position, after adapting its size to the
+   * access pattern.
+   *
+   * @return the number of bytes read or -1 at the end of the file
+   */
+  private int fill() throws IOException {
+    adapt();
+    if (null == buffer || buffer.length != readAhead)
+      buffer = new byte[readAhead];
+
+    if (position != file.getFilePointer())
+      file.seek(position);
+
+    final int r = file.read(buffer, 0, buffer.length);
+    if (r > 0) {
+      bufferBase = position;
+      bufferTop = position + r;
+      bufferUsed = position;
+    } else {
+      bufferBase = bufferTop = bufferUsed = Long.MIN_VALUE;
+    }
+    return r;
+  }
+
+  /**
+   * Account for the unused part of the current read-ahead buffer and adapt the size of the next
+   * one: a miss right at the end of the buffer, or of the last large read, indicates a sequential
+   * scan, any other miss a random probe.
+   */
+  private void adapt() {
+    if (directTop != Long.MIN_VALUE) {
+      if (adaptive) {
+        if (position == directTop)
+          readAhead = Math.min(readAhead * 2, MAX_READ_AHEAD);
+        else
+          readAhead = Math.max(readAhead / 2, MIN_READ_AHEAD);
+      }
+      directTop = Long.MIN_VALUE;
+    }
+    if (bufferTop > bufferBase) {
+      bytesOverRead += bufferTop - Math.max(bufferUsed, bufferBase);
+      if (adaptive) {
+        if (position == bufferTop && bufferUsed == bufferTop)
+          readAhead = Math.min(readAhead * 2, MAX_READ_AHEAD);
+        else if (position < bufferBase || position > bufferTop)
+          readAhead = Math.max(readAhead / 2, MIN_READ_AHEAD);
+      }
+      bufferBase = bufferTop = bufferUsed = Long.MIN_VALUE;
+    }
+  }
+
   @Override
   public long getSizeEstimate() {
     try {
-      return (int) file.length();
+      return file.length();
     } catch (final IOException e) {
       return -1;
     }
   }
 
   /**
-   * @return the readAhead
+   * @return the size of the next read-ahead
    */
   public int getReadAhead() {
-    return buffer.length;
+    return readAhead;
   }
 
   /**
+   * Use a read-ahead buffer of a fixed size instead of adapting it to the access pattern.
+   *
    * @param readAhead the readAhead to set
    */
   public void setReadAhead(final int readAhead) {
-    buffer = new byte[readAhead];
+    this.readAhead = Math.max(1, readAhead);
+    this.adaptive = false;
+  }
+
+  /**
+   * @return the number of read requests served from the read-ahead buffer
+   */
+  public long getReadAheadHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of read requests which required reading from the file
+   */
+  public long getReadAheadMisses() {
+    return misses;
+  }
+
+  /**
+   * @return the number of bytes read ahead from the file but never consumed, not counting the
+   *         current read-ahead buffer
+   */
+  public long getBytesOverRead() {
+    return bytesOverRead;
   }
 
 }
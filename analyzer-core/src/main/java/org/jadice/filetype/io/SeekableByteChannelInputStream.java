@@ -0,0 +1,176 @@
+package org.jadice.filetype.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * An implementation of the {@link SeekableInputStream} reading from a {@link SeekableByteChannel},
+ * e.g. one opened on a file of a non-default file system like a ZIP file system. The position of
+ * the channel is moved as required; closing this stream closes the channel.
+ */
+public class SeekableByteChannelInputStream extends SeekableInputStream {
+
+  private static final int DEFAULT_READ_AHEAD = 4096;
+
+  private final SeekableByteChannel channel;
+
+  /**
+   * The read-ahead buffer
+   */
+  private final ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_READ_AHEAD);
+  private long bufferBase = Long.MIN_VALUE;
+  private long bufferTop = Long.MIN_VALUE;
+
+  private long position;
+
+  /**
+   * Creates a seekable stream over the given channel, starting at position 0 of the channel.
+   *
+   * @param channel the channel
+   */
+  public SeekableByteChannelInputStream(final SeekableByteChannel channel) {
+    if (channel == null) {
+      throw new IllegalArgumentException("channel must not be null");
+    }
+    this.channel = channel;
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#getStreamPosition()
+   */
+  @Override
+  public long getStreamPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#length()
+   */
+  @Override
+  public long length() throws IOException {
+    checkClosed();
+    return channel.size();
+  }
+
+  /**
+   * @see org.jadice.filetype.io.SeekableInputStream#seek(long)
+   */
+  @Override
+  public void seek(final long pos) throws IOException {
+    checkClosed();
+
+    if (pos < flushedPos)
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+
+    position = pos;
+    bitOffset = 0;
+  }
+
+  /**
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if ((position < bufferBase || position >= bufferTop) && !fill())
+      return -1;
+
+    return buffer.get((int) (position++ - bufferBase)) & 0xff;
+  }
+
+  /**
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length!");
+    if (len == 0)
+      return 0;
+
+    // can we satisfy the request (or at least some of it) from the read-ahead buffer?
+    int read = 0;
+    if (position >= bufferBase && position < bufferTop) {
+      read = (int) Math.min(bufferTop - position, len);
+      buffer.get((int) (position - bufferBase), b, off, read);
+      position += read;
+      if (read == len)
+        return read;
+    }
+
+    // large requests go directly to the destination, small ones through the read-ahead buffer
+    if (len - read >= buffer.capacity()) {
+      channel.position(position);
+      final int r = channel.read(ByteBuffer.wrap(b, off + read, len - read));
+      if (r > 0) {
+        position += r;
+        read += r;
+      }
+    } else if (fill()) {
+      final int r = (int) Math.min(bufferTop - position, len - read);
+      buffer.get(0, b, off + read, r);
+      position += r;
+      read += r;
+    }
+    return read > 0 ? read : -1;
+  }
+
+  @Override
+  protected boolean readBuffered(final byte[] b, final int length) throws IOException {
+    checkClosed();
+
+    if (position < bufferBase || position + length > bufferTop)
+      return false;
+
+    buffer.get((int) (position - bufferBase), b, 0, length);
+    position += length;
+    bitOffset = 0;
+    return true;
+  }
+
+  /**
+   * Fill the read-ahead buffer starting at the current position.
+   *
+   * @return <code>false</code> at the end of the channel
+   */
+  private boolean fill() throws IOException {
+    buffer.clear();
+    channel.position(position);
+    final int r = channel.read(buffer);
+    if (r <= 0) {
+      bufferBase = bufferTop = Long.MIN_VALUE;
+      return false;
+    }
+    bufferBase = position;
+    bufferTop = position + r;
+    return true;
+  }
+
+  /*
+   * @see java.io.InputStream#close()
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      channel.close();
+    }
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    try {
+      return channel.isOpen() ? channel.size() : -1;
+    } catch (final IOException e) {
+      return -1;
+    }
+  }
+}
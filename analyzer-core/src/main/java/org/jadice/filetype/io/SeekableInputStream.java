@@ -4,6 +4,9 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Stack;
 
@@ -26,6 +29,20 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
   // Byte buffer used for readFully(type[], int, int)
   private byte[] byteBuf;
 
+  // Byte buffer used for reading single primitives
+  private byte[] primitiveBuf;
+
+  // Views for assembling primitives from the byte buffers
+  private static final VarHandle CHAR_BE = MethodHandles.byteArrayViewVarHandle(char[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle CHAR_LE = MethodHandles.byteArrayViewVarHandle(char[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class,
+      ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
   /**
    * The byte order of the stream as an instance of the enumeration class
    * <code>java.nio.ByteOrder</code>, where <code>ByteOrder.BIG_ENDIAN</code> indicates network byte
@@ -51,6 +68,35 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
       byteBuf = new byte[BYTE_BUF_LENGTH];
   }
 
+  /**
+   * Read the bytes of a single primitive using one bulk read instead of one {@link #read()} per
+   * byte.
+   * 
+   * @param length the number of bytes, at most 8
+   * @return the buffer holding the bytes at offset 0
+   */
+  private byte[] readPrimitive(final int length) throws IOException {
+    if (null == primitiveBuf)
+      primitiveBuf = new byte[8];
+    if (!readBuffered(primitiveBuf, length))
+      readFully(primitiveBuf, 0, length);
+    return primitiveBuf;
+  }
+
+  /**
+   * Fast path for the primitive reads: copy the next <code>length</code> bytes to the start of the
+   * given array and advance the stream position past them, provided that they are available from
+   * an internal buffer. Subclasses maintaining such a buffer should override this method.
+   * 
+   * @param b the destination
+   * @param length the number of bytes, at most 8
+   * @return <code>false</code> if the bytes aren't buffered, leaving the stream position unchanged
+   * @throws IOException if the stream has been closed
+   */
+  protected boolean readBuffered(final byte[] b, final int length) throws IOException {
+    return false;
+  }
+
   /**
    * Throws an <code>IOException</code> if the stream has been closed. Subclasses may call this
    * method from any of their methods that require the stream not to be closed.
@@ -129,6 +175,17 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
    */
   public abstract long getSizeEstimate();
 
+  /**
+   * Get the complete data of this stream if it is held in a single buffer, so that it can be
+   * inspected in place without copying. The buffer must not be modified.
+   * 
+   * @return a buffer over the data from position 0 to the end of the stream, or <code>null</code>
+   *         if the data isn't held in a single buffer
+   */
+  public ByteBuffer getBackingBuffer() {
+    return null;
+  }
+
   /**
    * Default implementation returns false. Subclasses should override this if they cache data.
    * 
@@ -551,19 +608,8 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
    */
   @Override
   public int readInt() throws IOException {
-    final int ch1 = this.read();
-    final int ch2 = this.read();
-    final int ch3 = this.read();
-    final int ch4 = this.read();
-    if ((ch1 | ch2 | ch3 | ch4) < 0) {
-      throw new EOFException();
-    }
-
-    if (getByteOrder() == ByteOrder.BIG_ENDIAN) {
-      return (ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0);
-    } else {
-      return (ch4 << 24) + (ch3 << 16) + (ch2 << 8) + (ch1 << 0);
-    }
+    final byte[] b = readPrimitive(4);
+    return getByteOrder() == ByteOrder.BIG_ENDIAN ? (int) INT_BE.get(b, 0) : (int) INT_LE.get(b, 0);
   }
 
   /**
@@ -587,36 +633,25 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
     if (appliedBytes < 1 || appliedBytes > 4)
       throw new IllegalArgumentException("Applied bytes should be greater than 0 and smaller or eqals than 4.");
 
-    int[] readBuffer = new int[appliedBytes];
-    for (int i = 0; i < appliedBytes; i++) {
-      readBuffer[i] = this.read();
-      if (readBuffer[i] < 0) {
-        throw new EOFException();
-      }
-    }
-
-    if (getByteOrder() == ByteOrder.LITTLE_ENDIAN) {
-      int[] swapped = new int[appliedBytes];
-      for (int i = 0; i < appliedBytes; i++) {
-        swapped[appliedBytes - 1 - i] = readBuffer[i];
-      }
-      readBuffer = swapped;
-    }
+    // the bytes in order of significance, sign-extended from the most significant one
+    final int shift = 32 - 8 * appliedBytes;
+    return concatenate(readPrimitive(appliedBytes), appliedBytes) << shift >> shift;
+  }
 
+  /**
+   * Concatenate the given number of bytes according to the current byte order.
+   */
+  private int concatenate(final byte[] b, final int length) {
     int result = 0;
-    for (int i = 0; i < appliedBytes; i++) {
-      result += (readBuffer[i] & 0xFF) << (8 * (appliedBytes - i - 1));
-    }
-
-    if ((readBuffer[0] & 0x80) == 0x80) {
-      int mask = 0;
-      for (int i = 0; i < appliedBytes; i++) {
-        mask += 0xFF << (8 * i);
+    if (getByteOrder() == ByteOrder.BIG_ENDIAN) {
+      for (int i = 0; i < length; i++) {
+        result = result << 8 | b[i] & 0xff;
+      }
+    } else {
+      for (int i = length - 1; i >= 0; i--) {
+        result = result << 8 | b[i] & 0xff;
       }
-      // negative
-      result = -((~result & mask) + 1);
     }
-
     return result;
   }
 
@@ -659,14 +694,8 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
    */
   @Override
   public long readLong() throws IOException {
-    final int i1 = readInt();
-    final int i2 = readInt();
-
-    if (getByteOrder() == ByteOrder.BIG_ENDIAN) {
-      return ((long) i1 << 32) + (i2 & 0xFFFFFFFFL);
-    } else {
-      return ((long) i2 << 32) + (i1 & 0xFFFFFFFFL);
-    }
+    final byte[] b = readPrimitive(8);
+    return getByteOrder() == ByteOrder.BIG_ENDIAN ? (long) LONG_BE.get(b, 0) : (long) LONG_LE.get(b, 0);
   }
 
   /**
@@ -674,6 +703,7 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
    */
   @Override
   public short readShort() throws IOException {
+    // two single byte reads are cheaper than a bulk read
     final int ch1 = this.read();
     final int ch2 = this.read();
     if ((ch1 | ch2) < 0) {
@@ -730,27 +760,7 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
     if (appliedBytes < 1 || appliedBytes > 4)
       throw new IllegalArgumentException("Applied bytes should be greater than 0 and smaller or eqals than 4.");
 
-    final int[] readBuffer = new int[appliedBytes];
-    for (int i = 0; i < readBuffer.length; i++) {
-      readBuffer[i] = this.read();
-      if (readBuffer[i] < 0) {
-        throw new EOFException();
-      }
-    }
-    int result = 0;
-    if (getByteOrder() == ByteOrder.BIG_ENDIAN) {
-      for (int i = 0; i < readBuffer.length; i++) {
-        result += readBuffer[i] << (readBuffer.length - 1 - i) * 8;
-      }
-      return 0xFFFFFFFFL & result;
-      // ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0));
-    } else {
-      for (int i = readBuffer.length - 1; i >= 0; i--) {
-        result += readBuffer[i] << i * 8;
-      }
-      return 0xFFFFFFFFL & result;
-      // ((ch4 << 24) + (ch3 << 16) + (ch2 << 8) + (ch1 << 0));
-    }
+    return concatenate(readPrimitive(appliedBytes), appliedBytes) & 0xFFFFFFFFL;
   }
 
   /**
@@ -914,169 +924,44 @@ public abstract class SeekableInputStream extends InputStream implements ImageIn
   }
 
   private void toChars(final byte[] b, final char[] c, final int off, final int len) {
-    int boff = 0;
-    if (byteOrder == ByteOrder.BIG_ENDIAN) {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff];
-        final int b1 = b[boff + 1] & 0xff;
-        c[off + j] = (char) (b0 << 8 | b1);
-        boff += 2;
-      }
-    } else {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff + 1];
-        final int b1 = b[boff] & 0xff;
-        c[off + j] = (char) (b0 << 8 | b1);
-        boff += 2;
-      }
+    final VarHandle view = byteOrder == ByteOrder.BIG_ENDIAN ? CHAR_BE : CHAR_LE;
+    for (int j = 0; j < len; j++) {
+      c[off + j] = (char) view.get(b, j * 2);
     }
   }
 
   private void toDoubles(final byte[] b, final double[] d, final int off, final int len) {
-    int boff = 0;
-    if (byteOrder == ByteOrder.BIG_ENDIAN) {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff];
-        final int b1 = b[boff + 1] & 0xff;
-        final int b2 = b[boff + 2] & 0xff;
-        final int b3 = b[boff + 3] & 0xff;
-        final int b4 = b[boff + 4];
-        final int b5 = b[boff + 5] & 0xff;
-        final int b6 = b[boff + 6] & 0xff;
-        final int b7 = b[boff + 7] & 0xff;
-
-        final int i0 = b0 << 24 | b1 << 16 | b2 << 8 | b3;
-        final int i1 = b4 << 24 | b5 << 16 | b6 << 8 | b7;
-        final long l = (long) i0 << 32 | i1 & 0xffffffffL;
-
-        d[off + j] = Double.longBitsToDouble(l);
-        boff += 8;
-      }
-    } else {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff + 7];
-        final int b1 = b[boff + 6] & 0xff;
-        final int b2 = b[boff + 5] & 0xff;
-        final int b3 = b[boff + 4] & 0xff;
-        final int b4 = b[boff + 3];
-        final int b5 = b[boff + 2] & 0xff;
-        final int b6 = b[boff + 1] & 0xff;
-        final int b7 = b[boff] & 0xff;
-
-        final int i0 = b0 << 24 | b1 << 16 | b2 << 8 | b3;
-        final int i1 = b4 << 24 | b5 << 16 | b6 << 8 | b7;
-        final long l = (long) i0 << 32 | i1 & 0xffffffffL;
-
-        d[off + j] = Double.longBitsToDouble(l);
-        boff += 8;
-      }
+    final VarHandle view = byteOrder == ByteOrder.BIG_ENDIAN ? LONG_BE : LONG_LE;
+    for (int j = 0; j < len; j++) {
+      d[off + j] = Double.longBitsToDouble((long) view.get(b, j * 8));
     }
   }
 
   private void toFloats(final byte[] b, final float[] f, final int off, final int len) {
-    int boff = 0;
-    if (byteOrder == ByteOrder.BIG_ENDIAN) {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff];
-        final int b1 = b[boff + 1] & 0xff;
-        final int b2 = b[boff + 2] & 0xff;
-        final int b3 = b[boff + 3] & 0xff;
-        final int i = b0 << 24 | b1 << 16 | b2 << 8 | b3;
-        f[off + j] = Float.intBitsToFloat(i);
-        boff += 4;
-      }
-    } else {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff + 3];
-        final int b1 = b[boff + 2] & 0xff;
-        final int b2 = b[boff + 1] & 0xff;
-        final int b3 = b[boff + 0] & 0xff;
-        final int i = b0 << 24 | b1 << 16 | b2 << 8 | b3;
-        f[off + j] = Float.intBitsToFloat(i);
-        boff += 4;
-      }
+    final VarHandle view = byteOrder == ByteOrder.BIG_ENDIAN ? INT_BE : INT_LE;
+    for (int j = 0; j < len; j++) {
+      f[off + j] = Float.intBitsToFloat((int) view.get(b, j * 4));
     }
   }
 
-
   private void toInts(final byte[] b, final int[] i, final int off, final int len) {
-    int boff = 0;
-    if (byteOrder == ByteOrder.BIG_ENDIAN) {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff];
-        final int b1 = b[boff + 1] & 0xff;
-        final int b2 = b[boff + 2] & 0xff;
-        final int b3 = b[boff + 3] & 0xff;
-        i[off + j] = b0 << 24 | b1 << 16 | b2 << 8 | b3;
-        boff += 4;
-      }
-    } else {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff + 3];
-        final int b1 = b[boff + 2] & 0xff;
-        final int b2 = b[boff + 1] & 0xff;
-        final int b3 = b[boff] & 0xff;
-        i[off + j] = b0 << 24 | b1 << 16 | b2 << 8 | b3;
-        boff += 4;
-      }
+    final VarHandle view = byteOrder == ByteOrder.BIG_ENDIAN ? INT_BE : INT_LE;
+    for (int j = 0; j < len; j++) {
+      i[off + j] = (int) view.get(b, j * 4);
     }
   }
 
   private void toLongs(final byte[] b, final long[] l, final int off, final int len) {
-    int boff = 0;
-    if (byteOrder == ByteOrder.BIG_ENDIAN) {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff];
-        final int b1 = b[boff + 1] & 0xff;
-        final int b2 = b[boff + 2] & 0xff;
-        final int b3 = b[boff + 3] & 0xff;
-        final int b4 = b[boff + 4];
-        final int b5 = b[boff + 5] & 0xff;
-        final int b6 = b[boff + 6] & 0xff;
-        final int b7 = b[boff + 7] & 0xff;
-
-        final int i0 = b0 << 24 | b1 << 16 | b2 << 8 | b3;
-        final int i1 = b4 << 24 | b5 << 16 | b6 << 8 | b7;
-
-        l[off + j] = (long) i0 << 32 | i1 & 0xffffffffL;
-        boff += 8;
-      }
-    } else {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff + 7];
-        final int b1 = b[boff + 6] & 0xff;
-        final int b2 = b[boff + 5] & 0xff;
-        final int b3 = b[boff + 4] & 0xff;
-        final int b4 = b[boff + 3];
-        final int b5 = b[boff + 2] & 0xff;
-        final int b6 = b[boff + 1] & 0xff;
-        final int b7 = b[boff] & 0xff;
-
-        final int i0 = b0 << 24 | b1 << 16 | b2 << 8 | b3;
-        final int i1 = b4 << 24 | b5 << 16 | b6 << 8 | b7;
-
-        l[off + j] = (long) i0 << 32 | i1 & 0xffffffffL;
-        boff += 8;
-      }
+    final VarHandle view = byteOrder == ByteOrder.BIG_ENDIAN ? LONG_BE : LONG_LE;
+    for (int j = 0; j < len; j++) {
+      l[off + j] = (long) view.get(b, j * 8);
     }
   }
 
   private void toShorts(final byte[] b, final short[] s, final int off, final int len) {
-    int boff = 0;
-    if (byteOrder == ByteOrder.BIG_ENDIAN) {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff];
-        final int b1 = b[boff + 1] & 0xff;
-        s[off + j] = (short) (b0 << 8 | b1);
-        boff += 2;
-      }
-    } else {
-      for (int j = 0; j < len; j++) {
-        final int b0 = b[boff + 1];
-        final int b1 = b[boff] & 0xff;
-        s[off + j] = (short) (b0 << 8 | b1);
-        boff += 2;
-      }
+    final VarHandle view = byteOrder == ByteOrder.BIG_ENDIAN ? SHORT_BE : SHORT_LE;
+    for (int j = 0; j < len; j++) {
+      s[off + j] = (short) view.get(b, j * 2);
     }
   }
 }
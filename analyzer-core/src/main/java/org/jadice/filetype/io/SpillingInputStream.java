@@ -0,0 +1,421 @@
+package org.jadice.filetype.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.jadice.filetype.io.PhantomReferenceSweeper.CleanupCloseable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A SeekableInputStream which decorates a plain InputStream with seekability, like the
+ * {@link MemoryInputStream}, but keeps only the first bytes up to a threshold in memory. Everything
+ * beyond the threshold is spilled to a temporary file, which is read using positional reads and
+ * deleted on {@link #close()}.
+ * <p>
+ * Just like the {@link MemoryInputStream}, data is read from the source stream only as far as it
+ * is requested.
+ */
+public class SpillingInputStream extends SeekableInputStream {
+
+  private static final Logger logger = LoggerFactory.getLogger(SpillingInputStream.class);
+
+  private static final int TRANSFER_SIZE = 64 * 1024;
+
+  private static final int READ_AHEAD_SIZE = 8 * 1024;
+
+  private InputStream source;
+
+  private final long threshold;
+
+  /**
+   * Buffers the first {@link #threshold} bytes
+   */
+  private final MemoryInputStream memory;
+
+  private final Path directory;
+
+  private FileChannel spill;
+
+  /**
+   * Transfers data from the source to the spill file, allocated upon first use
+   */
+  private byte[] transfer;
+
+  /**
+   * Buffers spilled data for small reads, starting at {@link #readAheadStart} bytes into the spill
+   * file. The spill file is only ever appended to, so the buffered data never becomes stale.
+   */
+  private ByteBuffer readAhead;
+
+  private long readAheadStart;
+
+  private PhantomReference<? extends Object> reference;
+
+  /**
+   * The number of bytes written to the spill file
+   */
+  private long spilled;
+
+  private long position;
+
+  private long streamLength = -1L;
+
+  /**
+   * Constructs a stream which keeps up to the given number of bytes in memory and spills the rest
+   * to a temporary file in the default temporary-file directory.
+   *
+   * @param is the source stream
+   * @param threshold the maximum number of bytes kept in memory
+   * @throws IOException in case of problems during pre-fetching
+   */
+  public SpillingInputStream(final InputStream is, final long threshold) throws IOException {
+    this(is, threshold, null);
+  }
+
+  /**
+   * Constructs a stream which keeps up to the given number of bytes in memory and spills the rest
+   * to a temporary file.
+   *
+   * @param is the source stream
+   * @param threshold the maximum number of bytes kept in memory
+   * @param directory the directory for the temporary file or <code>null</code> for the default
+   *          temporary-file directory
+   * @throws IOException in case of problems during pre-fetching
+   */
+  public SpillingInputStream(final InputStream is, final long threshold, final Path directory) throws IOException {
+    if (is == null) {
+      throw new IllegalArgumentException("source input stream must not be null");
+    }
+    if (threshold < 0) {
+      throw new IllegalArgumentException("threshold must not be negative");
+    }
+    this.source = is;
+    this.threshold = threshold;
+    this.directory = directory;
+    this.memory = new MemoryInputStream(new Head(is, threshold), MemoryInputStream.getDefaultBlockSize(), false);
+  }
+
+  /**
+   * Reads at most a given number of bytes from the source without closing it.
+   */
+  private static final class Head extends InputStream {
+    private final InputStream source;
+    private long remaining;
+
+    Head(final InputStream source, final long limit) {
+      this.source = source;
+      this.remaining = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0)
+        return -1;
+      final int b = source.read();
+      if (b >= 0)
+        remaining--;
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (remaining <= 0)
+        return -1;
+      final int read = source.read(b, off, (int) Math.min(len, remaining));
+      if (read > 0)
+        remaining -= read;
+      return read;
+    }
+
+    @Override
+    public void close() {
+      // the source is closed by the SpillingInputStream
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (position < threshold) {
+      memory.seek(position);
+      final int b = memory.read();
+      if (b >= 0)
+        position++;
+      else
+        streamLength = memory.length();
+      return b;
+    }
+
+    if (!spillTo(position + 1))
+      return -1;
+
+    final long offset = position - threshold;
+    if (!isReadAhead(offset) && !fillReadAhead(offset))
+      return -1;
+    position++;
+    return readAhead.get((int) (offset - readAheadStart)) & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+      throw new IndexOutOfBoundsException();
+    if (len == 0)
+      return 0;
+
+    // serve the in-memory part first and continue with the spilled part, so that reads don't end
+    // prematurely at the threshold
+    int read = 0;
+    if (position < threshold) {
+      memory.seek(position);
+      read = memory.read(b, off, (int) Math.min(len, threshold - position));
+      if (read <= 0) {
+        streamLength = memory.length();
+        return -1;
+      }
+      position += read;
+      if (read == len || position < threshold)
+        return read;
+    }
+
+    spillTo(position + len - read);
+    int remaining = (int) Math.max(0, Math.min(len - read, spilled - (position - threshold)));
+    while (remaining > 0) {
+      final long offset = position - threshold;
+      final int r;
+      if (isReadAhead(offset) || remaining < READ_AHEAD_SIZE && fillReadAhead(offset)) {
+        r = (int) Math.min(remaining, readAheadStart + readAhead.limit() - offset);
+        readAhead.get((int) (offset - readAheadStart), b, off + read, r);
+      } else {
+        r = spill.read(ByteBuffer.wrap(b, off + read, remaining), offset);
+        if (r <= 0)
+          break;
+      }
+      position += r;
+      read += r;
+      remaining -= r;
+    }
+    return read > 0 ? read : -1;
+  }
+
+  private boolean isReadAhead(final long offset) {
+    return null != readAhead && offset >= readAheadStart && offset < readAheadStart + readAhead.limit();
+  }
+
+  /**
+   * Fill the read-ahead buffer with the spilled data from the given offset on.
+   *
+   * @return <code>false</code> if there is no spilled data at the offset
+   */
+  private boolean fillReadAhead(final long offset) throws IOException {
+    if (null == readAhead)
+      readAhead = ByteBuffer.allocate(READ_AHEAD_SIZE);
+    readAhead.clear().limit((int) Math.max(0, Math.min(READ_AHEAD_SIZE, spilled - offset)));
+    while (readAhead.hasRemaining()) {
+      if (spill.read(readAhead, offset + readAhead.position()) <= 0)
+        break;
+    }
+    readAhead.flip();
+    readAheadStart = offset;
+    return readAhead.hasRemaining();
+  }
+
+  /**
+   * Make sure that the stream has been read up to the given position, spilling the data beyond the
+   * threshold.
+   *
+   * @return <code>false</code> if the source ended before
+   */
+  private boolean spillTo(final long end) throws IOException {
+    if (end - threshold <= spilled)
+      return true;
+
+    // the memory part must be complete
+    memory.seek(threshold);
+    if (memory.length() < threshold) {
+      streamLength = memory.length();
+      return false;
+    }
+    if (null == source)
+      return false;
+
+    if (null == spill) {
+      final Path file = null != directory
+          ? Files.createTempFile(directory, "jadice-filetype-", ".spill")
+          : Files.createTempFile("jadice-filetype-", ".spill");
+      spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.DELETE_ON_CLOSE);
+      reference = PhantomReferenceSweeper.getInstance().register(this, new CleanupCloseable(spill));
+    }
+
+    if (null == transfer)
+      transfer = new byte[TRANSFER_SIZE];
+    while (end - threshold > spilled) {
+      final int read = source.read(transfer, 0, (int) Math.min(transfer.length, end - threshold - spilled));
+      if (read < 0) {
+        source.close();
+        source = null;
+        streamLength = threshold + spilled;
+        return false;
+      }
+      final ByteBuffer buffer = ByteBuffer.wrap(transfer, 0, read);
+      while (buffer.hasRemaining())
+        spilled += spill.write(buffer, spilled);
+    }
+    return true;
+  }
+
+  /**
+   * Create a stream replaying the data from the beginning: first the data buffered so far, then the
+   * remainder of the source which has not been read yet. The remainder is passed through without
+   * being buffered. This stream must not be used any longer, but it is closed by closing the
+   * returned one.
+   *
+   * @return the replaying stream
+   * @throws IOException if this stream has been closed
+   */
+  public InputStream replay() throws IOException {
+    checkClosed();
+    final long buffered = memory.getBufferedBytes() + spilled;
+    return new InputStream() {
+      private long replayed;
+
+      @Override
+      public int read() throws IOException {
+        if (replayed < buffered) {
+          seek(replayed);
+          final int b = SpillingInputStream.this.read();
+          if (b >= 0)
+            replayed++;
+          return b;
+        }
+        checkClosed();
+        return null != source ? source.read() : -1;
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0)
+          return 0;
+        if (replayed < buffered) {
+          seek(replayed);
+          final int read = SpillingInputStream.this.read(b, off, (int) Math.min(len, buffered - replayed));
+          if (read > 0)
+            replayed += read;
+          return read;
+        }
+        checkClosed();
+        return null != source ? source.read(b, off, len) : -1;
+      }
+
+      @Override
+      public int available() throws IOException {
+        checkClosed();
+        if (replayed < buffered)
+          return (int) Math.min(Integer.MAX_VALUE, buffered - replayed);
+        return null != source ? source.available() : 0;
+      }
+
+      @Override
+      public void close() throws IOException {
+        SpillingInputStream.this.close();
+      }
+    };
+  }
+
+  @Override
+  public void seek(final long pos) throws IOException {
+    checkClosed();
+
+    if (pos < flushedPos)
+      throw new IndexOutOfBoundsException("pos < flushedPos!");
+
+    position = pos;
+    bitOffset = 0;
+  }
+
+  @Override
+  public long getStreamPosition() throws IOException {
+    return position;
+  }
+
+  /**
+   * Returns the length of the stream if the source has been read completely, otherwise -1L.
+   */
+  @Override
+  public long length() throws IOException {
+    if (streamLength < 0 && memory.length() >= 0 && memory.length() < threshold)
+      streamLength = memory.length();
+    return streamLength;
+  }
+
+  /**
+   * @return the number of bytes currently held in memory
+   */
+  public long getMemoryBytes() {
+    return memory.getBufferedBytes();
+  }
+
+  /**
+   * @return the number of bytes spilled to disk
+   */
+  public long getDiskBytes() {
+    return spilled;
+  }
+
+  @Override
+  public boolean isCached() {
+    return true;
+  }
+
+  @Override
+  public boolean isCachedFile() {
+    return null != spill;
+  }
+
+  @Override
+  public boolean isCachedMemory() {
+    return true;
+  }
+
+  @Override
+  public long getSizeEstimate() {
+    return streamLength >= 0 ? streamLength : position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+      memory.close();
+      if (null != source) {
+        source.close();
+        source = null;
+      }
+    } finally {
+      if (null != spill) {
+        try {
+          spill.close();
+        } catch (IOException e) {
+          logger.error(e.getMessage(), e);
+        } finally {
+          PhantomReferenceSweeper.getInstance().unregister(reference);
+          reference = null;
+          spill = null;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package org.jadice.filetype.matchers;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton over a set of byte patterns. A single pass over the data reports all
+ * occurrences of all patterns. Patterns are identified by their index in the array passed to the
+ * constructor.
+ * <p>
+ * Instances are immutable once constructed and may be shared between threads.
+ *
+ */
+public final class AhoCorasick {
+
+  /**
+   * Receives the occurrences found by the automaton.
+   */
+  public interface MatchHandler {
+    /**
+     * Called for each occurrence of a pattern.
+     *
+     * @param pattern the index of the pattern
+     * @param start the offset of the first byte of the occurrence
+     * @return <code>true</code> to continue, <code>false</code> to stop the search
+     */
+    boolean found(int pattern, int start);
+  }
+
+  private static final int[] NONE = new int[0];
+
+  private static final class State {
+    private byte[] labels = new byte[0];
+    private State[] next = new State[0];
+    private State fail;
+
+    /**
+     * The patterns ending in this state.
+     */
+    private int[] terminal = NONE;
+
+    /**
+     * The patterns ending in this state or in any state reachable via failure links.
+     */
+    private int[] output = NONE;
+
+    /**
+     * The patterns ending in any descendant of this state.
+     */
+    private int[] below = NONE;
+
+    State get(final byte b) {
+      for (int i = 0; i < labels.length; i++) {
+        if (labels[i] == b) {
+          return next[i];
+        }
+      }
+      return null;
+    }
+
+    State add(final byte b) {
+      State s = get(b);
+      if (null == s) {
+        s = new State();
+        labels = Arrays.copyOf(labels, labels.length + 1);
+        labels[labels.length - 1] = b;
+        next = Arrays.copyOf(next, next.length + 1);
+        next[next.length - 1] = s;
+      }
+      return s;
+    }
+  }
+
+  private final State root = new State();
+
+  private final int[] lengths;
+
+  /**
+   * Build the automaton for the given patterns.
+   *
+   * @param patterns the patterns, none of which may be empty
+   * @throws IllegalArgumentException if a pattern is empty
+   */
+  public AhoCorasick(final byte[]... patterns) {
+    lengths = new int[patterns.length];
+    for (int p = 0; p < patterns.length; p++) {
+      if (patterns[p].length == 0) {
+        throw new IllegalArgumentException("Empty pattern at index " + p);
+      }
+      lengths[p] = patterns[p].length;
+
+      State s = root;
+      for (byte b : patterns[p]) {
+        s.below = append(s.below, p);
+        s = s.add(b);
+      }
+      s.terminal = append(s.terminal, p);
+    }
+
+    // compute the failure links breadth first
+    final Queue<State> queue = new ArrayDeque<>();
+    for (State child : root.next) {
+      child.fail = root;
+      child.output = child.terminal;
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      final State s = queue.remove();
+      for (int i = 0; i < s.labels.length; i++) {
+        final byte b = s.labels[i];
+        final State child = s.next[i];
+
+        State f = s.fail;
+        while (f != root && null == f.get(b)) {
+          f = f.fail;
+        }
+        final State target = f.get(b);
+        child.fail = null != target ? target : root;
+        child.output = concat(child.terminal, child.fail.output);
+        queue.add(child);
+      }
+    }
+  }
+
+  /**
+   * Get the number of patterns.
+   *
+   * @return the number of patterns
+   */
+  public int getPatternCount() {
+    return lengths.length;
+  }
+
+  /**
+   * Get the length of a pattern.
+   *
+   * @param pattern the index of the pattern
+   * @return the length in bytes
+   */
+  public int getPatternLength(final int pattern) {
+    return lengths[pattern];
+  }
+
+  /**
+   * Report all patterns occurring at exactly the given offset. Patterns which extend beyond
+   * <code>limit</code> cannot be decided and are reported as well.
+   *
+   * @param data the data
+   * @param offset the offset at which the patterns must start
+   * @param limit the end of the valid data (exclusive)
+   * @param handler the handler receiving the patterns
+   */
+  public void matchAt(final byte[] data, final int offset, final int limit, final MatchHandler handler) {
+    State s = root;
+    int pos = offset;
+    while (true) {
+      for (int p : s.terminal) {
+        if (!handler.found(p, offset)) {
+          return;
+        }
+      }
+      if (pos >= limit) {
+        for (int p : s.below) {
+          if (!handler.found(p, offset)) {
+            return;
+          }
+        }
+        return;
+      }
+      s = s.get(data[pos++]);
+      if (null == s) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Report all occurrences of all patterns lying entirely within the given range of the data.
+   *
+   * @param data the data
+   * @param from the start of the range (inclusive)
+   * @param limit the end of the range (exclusive)
+   * @param handler the handler receiving the occurrences
+   */
+  public void search(final byte[] data, final int from, final int limit, final MatchHandler handler) {
+    State s = root;
+    for (int pos = from; pos < limit; pos++) {
+      final byte b = data[pos];
+      State n = s.get(b);
+      while (null == n && s != root) {
+        s = s.fail;
+        n = s.get(b);
+      }
+      s = null != n ? n : root;
+
+      for (int p : s.output) {
+        if (!handler.found(p, pos + 1 - lengths[p])) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Find the first occurrence of any pattern lying entirely within the given range of the data.
+   *
+   * @param data the data
+   * @param from the start of the range (inclusive)
+   * @param limit the end of the range (exclusive)
+   * @return the offset of the first byte of the earliest ending occurrence or -1 if there is none
+   */
+  public int indexOf(final byte[] data, final int from, final int limit) {
+    final int[] result = {
+        -1
+    };
+    search(data, from, limit, (p, start) -> {
+      result[0] = start;
+      return false;
+    });
+    return result[0];
+  }
+
+  private static int[] append(final int[] a, final int p) {
+    final int[] r = Arrays.copyOf(a, a.length + 1);
+    r[a.length] = p;
+    return r;
+  }
+
+  private static int[] concat(final int[] a, final int[] b) {
+    if (b.length == 0) {
+      return a;
+    }
+    final int[] r = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, r, a.length, b.length);
+    return r;
+  }
+}
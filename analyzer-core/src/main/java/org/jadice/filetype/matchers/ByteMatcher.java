@@ -16,22 +16,48 @@ import org.jadice.filetype.io.SeekableInputStream;
  * 
  */
 @XmlRootElement(name = "match-byte")
-public class ByteMatcher extends NumericMatcher {
-  private int value;
+public class ByteMatcher extends NumericMatcher implements FixedOffsetMatcher {
+  int value;
+
+  @Override
+  public boolean matches(final Context context) {
+    if (extractOnly) {
+      return false;
+    }
+    final int offset = getOffset();
+    if (!context.isInHeader(offset, 1)) {
+      return super.matches(context);
+    }
+    return matches(context.getHeader()[offset] & 0xff) && skipHeaderBytes(context, 1);
+  }
 
   @Override
   protected boolean matches(Context context, SeekableInputStream positionedStream) throws IOException {
-    int s = positionedStream.read();
+    return matches(positionedStream.read());
+  }
+
+  private boolean matches(int s) {
     s &= mask;
 
     return unsigned ? comparison.matches(value & 0xff, s & 0xff) : comparison.matches(value, s);
   }
 
+  @Override
+  public int getLength() {
+    return 1;
+  }
+
+  @Override
+  public boolean acceptsLeadingByte(int b) {
+    return acceptsLeadingByte(b, value, getLength());
+  }
+
   @XmlValue
   protected void setValue(String s) {
-    if (s.isEmpty()) {
+    this.extractOnly = s.isEmpty();
+    if (extractOnly) {
       // special case: don't match, just extract
-      // ignored for now.
+      // extraction is not supported yet, see NumericMatcher.extractOnly
       this.value = 0;
     } else if (s.startsWith("0x")) {
       this.value = Integer.parseInt(s.substring(2), 16);
@@ -37,6 +37,27 @@ public class CustomMatcher extends Matcher {
     return false;
   }
 
+  @Override
+  public Cost getCost() {
+    return null != delegate ? delegate.getCost() : Cost.HEADER_COMPARE;
+  }
+
+  /**
+   * Get the matcher this matcher delegates to.
+   *
+   * @return the delegate or <code>null</code>
+   */
+  public Matcher getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void freeze() {
+    if (null != delegate) {
+      delegate.freeze();
+    }
+  }
+
   @XmlValue
   protected void setClassName(final String name) throws ReflectiveOperationException {
     final Class<?> c = Class.forName(name);
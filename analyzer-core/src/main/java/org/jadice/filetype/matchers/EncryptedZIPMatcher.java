@@ -1,61 +1,55 @@
 package org.jadice.filetype.matchers;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.jadice.filetype.Context;
-import org.jadice.filetype.io.SeekableInputStream;
+import org.jadice.filetype.ziputil.ZipArchive;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.lingala.zip4j.exception.ZipException;
-import net.lingala.zip4j.io.inputstream.ZipInputStream;
-
+/**
+ * A {@link Matcher} for ZIP archives containing encrypted entries. The encryption is detected from
+ * the general purpose flags and the AES extra field of the entries, without reading their data.
+ * The first encrypted entry and its encryption method are provided as details.
+ * <p>
+ * Caveat: for performance reasons, this should only be called from a context where the stream has
+ * already been identified as a ZIP file/stream.
+ */
 public class EncryptedZIPMatcher extends Matcher {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(EncryptedZIPMatcher.class);
 
-  private static final String NEEDLE = "Wrong password".toLowerCase();
+  public static final String DETAILS_KEY = "ZIP_DETAILS";
+
+  public static final String ENCRYPTED_ENTRY_KEY = "ZIP_ENCRYPTED_ENTRY";
+
+  public static final String ENCRYPTION_METHOD_KEY = "ZIP_ENCRYPTION_METHOD";
 
   @Override
   public boolean matches(final Context context) throws IOException {
-    SeekableInputStream sis = context.getStream();
     try {
-      sis.seek(0);
-      try (ZipInputStream zis = new ZipInputStream(sis)) {
-        return detect(zis);
-      }
+      return detect(context, context.getZipArchive());
     } catch (Exception e) {
       context.error(this, "Exception analyzing ZIP Container", e);
     }
     return false;
   }
 
-  private boolean detect(final ZipInputStream zis) throws IOException {
-    try {
-      while (zis.getNextEntry() != null) {
-        // No exception thrown -> just continue with the next entries
-      }
-      LOGGER.debug("Went through all ZIP entries without an exception. So it's not encrypted");
+  private boolean detect(final Context context, final ZipArchive archive) throws IOException {
+    final ZipArchive.Entry entry = archive.findEntry(ZipArchive.Entry::isEncrypted);
+    if (null == entry) {
+      LOGGER.debug("Went through all ZIP entries without an encrypted one. So it's not encrypted");
       return false;
-    } catch (ZipException e) {
-      LOGGER.debug("ZIP analysis hit an exception", e);
-      if (isEncryptedException(e)) {
-        return true;
-      } else {
-        throw e;
-      }
     }
-  }
 
-  private boolean isEncryptedException(final ZipException ze) {
-    String[] haystack = {
-        ze.getMessage(), ze.getLocalizedMessage(), ze.toString()
-    };
-    for (String s : haystack) {
-      if (s.toLowerCase().contains(NEEDLE)) {
-        return true;
-      }
-    }
-    return false;
+    final ZipArchive.EncryptionMethod method = entry.getEncryptionMethod();
+    LOGGER.debug("ZIP entry {} is encrypted using {}", entry, method);
+    final Map<String, Object> details = new HashMap<>();
+    details.put(ENCRYPTED_ENTRY_KEY, entry.getName());
+    details.put(ENCRYPTION_METHOD_KEY, method.name());
+    context.setProperty(DETAILS_KEY, details);
+    return true;
   }
 }
@@ -0,0 +1,34 @@
+package org.jadice.filetype.matchers;
+
+/**
+ * Implemented by matchers which inspect a fixed number of bytes at a fixed, absolute offset of the
+ * stream and which have no side effects besides positioning the stream. This allows the database
+ * compiler to index types by the bytes they expect and to skip types which cannot possibly match.
+ *
+ */
+public interface FixedOffsetMatcher {
+  /**
+   * Get the absolute offset of the first byte inspected by this matcher.
+   *
+   * @return the offset relative to the start of the stream
+   */
+  int getOffset();
+
+  /**
+   * Get the number of bytes inspected by this matcher, starting at {@link #getOffset()}.
+   *
+   * @return the number of bytes, may be zero
+   */
+  int getLength();
+
+  /**
+   * Determine whether this matcher could possibly succeed if the stream contains the given byte at
+   * {@link #getOffset()}. Implementations may be conservative, i.e. return <code>true</code> for
+   * bytes which will not lead to a match, but must never return <code>false</code> for a byte which
+   * could.
+   *
+   * @param b the unsigned byte value found at the matcher's offset
+   * @return <code>false</code> if a match is impossible
+   */
+  boolean acceptsLeadingByte(int b);
+}
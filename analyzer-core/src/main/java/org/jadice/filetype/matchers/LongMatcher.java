@@ -16,23 +16,51 @@ import org.jadice.filetype.io.SeekableInputStream;
  * 
  */
 @XmlRootElement(name = "match-long")
-public class LongMatcher extends NumericMatcher {
-  private long value;
+public class LongMatcher extends NumericMatcher implements FixedOffsetMatcher {
+  long value;
+
+  @Override
+  public boolean matches(final Context context) {
+    if (extractOnly) {
+      return false;
+    }
+    final int offset = getOffset();
+    if (!context.isInHeader(offset, 4)) {
+      return super.matches(context);
+    }
+    return matches(readInt(context.getHeader(), offset)) && skipHeaderBytes(context, 4);
+  }
 
   @Override
   protected boolean matches(Context context, SeekableInputStream positionedStream) throws IOException {
     positionedStream.setByteOrder(order);
-    int s = positionedStream.readShort();
-    s &= mask;
+    return matches(positionedStream.readInt());
+  }
+
+  private boolean matches(int s) {
+    s &= (int) mask;
 
-    return unsigned ? comparison.matches(value & 0xffffffff, s & 0xffffffff) : comparison.matches(value, s);
+    return unsigned
+        ? comparison.matches(value & 0xffffffffL, s & 0xffffffffL)
+        : comparison.matches((int) value, s);
+  }
+
+  @Override
+  public int getLength() {
+    return 4;
+  }
+
+  @Override
+  public boolean acceptsLeadingByte(int b) {
+    return acceptsLeadingByte(b, value, getLength());
   }
 
   @XmlValue
   protected void setReference(String s) {
-    if (s.isEmpty()) {
+    this.extractOnly = s.isEmpty();
+    if (extractOnly) {
       // special case: don't match, just extract
-      // ignored for now.
+      // extraction is not supported yet, see NumericMatcher.extractOnly
       this.value = 0;
     } else if (s.startsWith("0x")) {
       this.value = Long.parseLong(s.substring(2), 16);
@@ -19,35 +19,59 @@ public abstract class Matcher {
       public boolean matches(final Object o1, final Object o2) {
         return o1 == o2 || o1 != null && o1.equals(o2);
       }
+
+      public boolean matches(final long o1, final long o2) {
+        return o1 == o2;
+      }
     },
     NOT_EQUALS("!") {
       public boolean matches(final Object o1, final Object o2) {
         return o1 != o2 && !(o1 != null && o1.equals(o2));
       }
+
+      public boolean matches(final long o1, final long o2) {
+        return o1 != o2;
+      }
     },
     GREATER(">") {
       @SuppressWarnings("unchecked")
       public boolean matches(final Object o1, final Object o2) {
         return o1 != null && o2 != null && o1 instanceof Comparable && ((Comparable<Object>) o1).compareTo(o2) > 0;
       }
+
+      public boolean matches(final long o1, final long o2) {
+        return o1 > o2;
+      }
     },
     GREATER_OR_EQUAL(">=") {
       @SuppressWarnings("unchecked")
       public boolean matches(final Object o1, final Object o2) {
         return o1 != null && o2 != null && o1 instanceof Comparable && ((Comparable<Object>) o1).compareTo(o2) >= 0;
       }
+
+      public boolean matches(final long o1, final long o2) {
+        return o1 >= o2;
+      }
     },
     LESS("<") {
       @SuppressWarnings("unchecked")
       public boolean matches(final Object o1, final Object o2) {
         return o1 != null && o2 != null && o1 instanceof Comparable && ((Comparable<Object>) o1).compareTo(o2) < 0;
       }
+
+      public boolean matches(final long o1, final long o2) {
+        return o1 < o2;
+      }
     },
     LESS_OR_EQUAL("<=") {
       @SuppressWarnings("unchecked")
       public boolean matches(final Object o1, final Object o2) {
         return o1 != null && o2 != null && o1 instanceof Comparable && ((Comparable<Object>) o1).compareTo(o2) <= 0;
       }
+
+      public boolean matches(final long o1, final long o2) {
+        return o1 <= o2;
+      }
     };
 
     private final String shortcut;
@@ -58,6 +82,16 @@ public abstract class Matcher {
 
     public abstract boolean matches(Object o1, Object o2);
 
+    /**
+     * Compare two primitive values. Equivalent to {@link #matches(Object, Object)} on the boxed
+     * values, but without allocating.
+     *
+     * @param o1 the first value, usually the reference value
+     * @param o2 the second value
+     * @return whether the comparison holds
+     */
+    public abstract boolean matches(long o1, long o2);
+
     public static Comparison get(final String s) {
       for (Comparison c : values()) {
         if (s.equals(c.shortcut)) {
@@ -68,5 +102,45 @@ public abstract class Matcher {
     }
   }
 
+  /**
+   * The classes of the expected effort of evaluating a matcher, from cheap to expensive.
+   */
+  public enum Cost {
+    /**
+     * A constant amount of work, like comparing a few bytes of the header window or a property of
+     * the context.
+     */
+    HEADER_COMPARE,
+
+    /**
+     * Reading or scanning a bounded number of bytes, like a range search or a regular expression.
+     */
+    BOUNDED_SCAN,
+
+    /**
+     * Parsing the stream, potentially in its entirety, like opening a container.
+     */
+    FULL_PARSE
+  }
+
   public abstract boolean matches(Context context) throws IOException;
+
+  /**
+   * Get the expected effort of evaluating this matcher. The database compiler uses it to evaluate
+   * cheap matchers first where this doesn't change the result.
+   *
+   * @return the cost class, {@link Cost#FULL_PARSE} unless overridden
+   */
+  public Cost getCost() {
+    return Cost.FULL_PARSE;
+  }
+
+  /**
+   * Eagerly compute all state which would otherwise be initialized lazily during the first match.
+   * Called once after the matcher has been unmarshalled. Afterwards the matcher is never modified
+   * and must support concurrent use by any number of threads.
+   */
+  public void freeze() {
+    // nothing to do by default
+  }
 }
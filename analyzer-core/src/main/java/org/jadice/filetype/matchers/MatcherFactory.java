@@ -0,0 +1,258 @@
+package org.jadice.filetype.matchers;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+/**
+ * Creates the matchers of a magic XML database from their element name, attributes and text
+ * content, without going through JAXB. The attributes are interpreted exactly like the JAXB
+ * mapping of the matcher classes does; unknown attributes are ignored.
+ *
+ */
+public final class MatcherFactory {
+
+  private MatcherFactory() {
+    // static only
+  }
+
+  /**
+   * Create the matcher for the given element.
+   *
+   * @param element the local name of the element
+   * @param attributes the attributes of the element
+   * @param text the text content of the element
+   * @return the matcher
+   * @throws IllegalArgumentException if the element is unknown or an attribute value is invalid
+   * @throws ReflectiveOperationException if a custom matcher can't be instantiated
+   * @throws UnsupportedEncodingException if a matcher specifies an unsupported encoding
+   */
+  public static Matcher create(final String element, final Map<String, String> attributes, final String text)
+      throws ReflectiveOperationException, UnsupportedEncodingException {
+    switch (element){
+      case "match-byte" : {
+        final ByteMatcher m = new ByteMatcher();
+        forEach(attributes, (name, value) -> {
+          switch (name){
+            case "order" :
+              m.setOrder(value);
+              break;
+            case "unsigned" :
+              m.setUnsigned(parseBoolean(value));
+              break;
+            case "mask" :
+              m.setMask(value);
+              break;
+            case "comparison" :
+              m.setComparison(value);
+              break;
+            case "offset" :
+              m.setOffset(parseInt(value));
+              break;
+            default :
+              break;
+          }
+        });
+        m.setValue(text);
+        return m;
+      }
+
+      case "match-short" : {
+        final ShortMatcher m = new ShortMatcher();
+        forEach(attributes, (name, value) -> {
+          switch (name){
+            case "order" :
+              m.setOrder(value);
+              break;
+            case "unsigned" :
+              m.setUnsigned(parseBoolean(value));
+              break;
+            case "mask" :
+              m.setMask(value);
+              break;
+            case "comparison" :
+              m.setComparison(value);
+              break;
+            case "offset" :
+              m.setOffset(parseInt(value));
+              break;
+            default :
+              break;
+          }
+        });
+        m.setValue(text);
+        return m;
+      }
+
+      case "match-long" : {
+        final LongMatcher m = new LongMatcher();
+        forEach(attributes, (name, value) -> {
+          switch (name){
+            case "order" :
+              m.setOrder(value);
+              break;
+            case "unsigned" :
+              m.setUnsigned(parseBoolean(value));
+              break;
+            case "mask" :
+              m.setMask(value);
+              break;
+            case "comparison" :
+              m.setComparison(value);
+              break;
+            case "offset" :
+              m.setOffset(parseInt(value));
+              break;
+            default :
+              break;
+          }
+        });
+        m.setReference(text);
+        return m;
+      }
+
+      case "match-date" : {
+        // note: the mask is not mapped for dates
+        final DateMatcher m = new DateMatcher();
+        forEach(attributes, (name, value) -> {
+          switch (name){
+            case "order" :
+              m.setOrder(value);
+              break;
+            case "unsigned" :
+              m.setUnsigned(parseBoolean(value));
+              break;
+            case "comparison" :
+              m.setComparison(value);
+              break;
+            case "offset" :
+              m.setOffset(parseInt(value));
+              break;
+            default :
+              break;
+          }
+        });
+        m.setReference(text);
+        return m;
+      }
+
+      case "match-string" : {
+        final StringMatcher m = new StringMatcher();
+        final String encoding = attributes.get("encoding");
+        if (null != encoding) {
+          m.setEncoding(encoding);
+        }
+        forEach(attributes, (name, value) -> {
+          switch (name){
+            case "comparison" :
+              m.setComparison(value);
+              break;
+            case "offset" :
+              m.setOffset(parseInt(value));
+              break;
+            case "range" :
+              m.setRange(parseInt(value));
+              break;
+            default :
+              break;
+          }
+        });
+        m.setPatternString(text);
+        return m;
+      }
+
+      case "match-regexp" : {
+        final RegexpMatcher m = new RegexpMatcher();
+        final String encoding = attributes.get("encoding");
+        if (null != encoding) {
+          m.setEncoding(encoding);
+        }
+        forEach(attributes, (name, value) -> {
+          switch (name){
+            case "comparison" :
+              m.setComparison(value);
+              break;
+            case "offset" :
+              m.setOffset(parseInt(value));
+              break;
+            case "range" :
+              m.setRange(parseInt(value));
+              break;
+            case "caseInsensitive" :
+              m.setCaseInsensitive(parseBoolean(value));
+              break;
+            case "multiline" :
+              m.setMultiline(parseBoolean(value));
+              break;
+            case "dotall" :
+              m.setDotall(parseBoolean(value));
+              break;
+            case "unicodeCase" :
+              m.setUnicodeCase(parseBoolean(value));
+              break;
+            case "canonEq" :
+              m.setCanonEq(parseBoolean(value));
+              break;
+            default :
+              break;
+          }
+        });
+        m.setPattern(text);
+        return m;
+      }
+
+      case "match-custom" : {
+        final CustomMatcher m = new CustomMatcher();
+        m.setClassName(text);
+        return m;
+      }
+
+      case "match-xml-metadata" : {
+        final XMLMetadataMatcher m = new XMLMetadataMatcher();
+        forEach(attributes, (name, value) -> {
+          switch (name){
+            case "namespaceUri" :
+              m.setNamespaceUri(value);
+              break;
+            case "rootElementName" :
+              m.setRootElementName(value);
+              break;
+            default :
+              break;
+          }
+        });
+        m.setValue(text);
+        return m;
+      }
+
+      default :
+        throw new IllegalArgumentException("Unknown matcher element: " + element);
+    }
+  }
+
+  private interface AttributeHandler {
+    void handle(String name, String value);
+  }
+
+  private static void forEach(final Map<String, String> attributes, final AttributeHandler handler) {
+    for (Map.Entry<String, String> e : attributes.entrySet()) {
+      handler.handle(e.getKey(), e.getValue());
+    }
+  }
+
+  private static int parseInt(final String value) {
+    return Integer.parseInt(value.trim());
+  }
+
+  private static boolean parseBoolean(final String value) {
+    switch (value.trim()){
+      case "true" :
+      case "1" :
+        return true;
+      case "false" :
+      case "0" :
+        return false;
+      default :
+        throw new IllegalArgumentException("Not a boolean: " + value);
+    }
+  }
+}
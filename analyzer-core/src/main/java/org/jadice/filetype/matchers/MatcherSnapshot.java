@@ -0,0 +1,226 @@
+package org.jadice.filetype.matchers;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import org.jadice.filetype.database.AbsoluteLocation;
+import org.jadice.filetype.matchers.Matcher.Comparison;
+
+/**
+ * Writes and reads the state of parsed matchers for a
+ * {@link org.jadice.filetype.database.DatabaseSnapshot}. Matchers are stored in the form they have
+ * after unmarshalling, e.g. numeric reference values and masks as numbers and string patterns as
+ * the bytes to be matched, so that loading them involves no parsing of attribute values, escape
+ * sequences or encodings.
+ * <p>
+ * Layout (big endian), strings are indices into the string table of the snapshot:
+ *
+ * <pre>
+ * matcher := byte kind followed by
+ *   byte, short, long, date: location, byte comparison, byte order (0: big, 1: little endian),
+ *                            byte unsigned, byte extract only, long mask, long value
+ *   string:                  location, byte comparison, int range, int length, bytes
+ *   regexp:                  location, byte comparison, int range, int encoding, int pattern,
+ *                            int flags
+ *   custom:                  int class name of the delegate
+ *   xml metadata:            int namespace URI, int root element name, int value
+ *
+ * location := byte present (0 or 1), int offset
+ * </pre>
+ */
+public final class MatcherSnapshot {
+
+  private static final byte KIND_BYTE = 0;
+  private static final byte KIND_SHORT = 1;
+  private static final byte KIND_LONG = 2;
+  private static final byte KIND_DATE = 3;
+  private static final byte KIND_STRING = 4;
+  private static final byte KIND_REGEXP = 5;
+  private static final byte KIND_CUSTOM = 6;
+  private static final byte KIND_XML_METADATA = 7;
+
+  private static final Comparison[] COMPARISONS = Comparison.values();
+
+  private MatcherSnapshot() {
+    // static only
+  }
+
+  /**
+   * Write the state of the given matcher.
+   *
+   * @param m the matcher
+   * @param out the output
+   * @param strings maps a string to its index in the string table, <code>null</code> to
+   *          <code>-1</code>
+   * @throws IOException if writing failed
+   * @throws IllegalArgumentException if the matcher can't be stored in a snapshot
+   */
+  public static void write(final Matcher m, final DataOutput out, final ToIntFunction<String> strings)
+      throws IOException {
+    if (m instanceof ByteMatcher) {
+      writeNumeric(KIND_BYTE, (NumericMatcher) m, ((ByteMatcher) m).value, out);
+    } else if (m instanceof ShortMatcher) {
+      writeNumeric(KIND_SHORT, (NumericMatcher) m, ((ShortMatcher) m).value, out);
+    } else if (m instanceof LongMatcher) {
+      writeNumeric(KIND_LONG, (NumericMatcher) m, ((LongMatcher) m).value, out);
+    } else if (m instanceof DateMatcher) {
+      writeNumeric(KIND_DATE, (NumericMatcher) m, ((DateMatcher) m).value, out);
+    } else if (m instanceof StringMatcher) {
+      final StringMatcher s = (StringMatcher) m;
+      writeStreamMatcher(KIND_STRING, s, out);
+      out.writeInt(s.range);
+      final byte[] pattern = s.getPattern();
+      out.writeInt(pattern.length);
+      out.write(pattern);
+    } else if (m instanceof RegexpMatcher) {
+      final RegexpMatcher r = (RegexpMatcher) m;
+      writeStreamMatcher(KIND_REGEXP, r, out);
+      out.writeInt(r.range);
+      out.writeInt(strings.applyAsInt(r.encoding));
+      out.writeInt(strings.applyAsInt(r.patternString));
+      out.writeInt(r.getFlags());
+    } else if (m instanceof CustomMatcher) {
+      final Matcher delegate = ((CustomMatcher) m).getDelegate();
+      out.writeByte(KIND_CUSTOM);
+      out.writeInt(strings.applyAsInt(null != delegate ? delegate.getClass().getName() : null));
+    } else if (m instanceof XMLMetadataMatcher) {
+      final XMLMetadataMatcher x = (XMLMetadataMatcher) m;
+      out.writeByte(KIND_XML_METADATA);
+      out.writeInt(strings.applyAsInt(x.namespaceUri));
+      out.writeInt(strings.applyAsInt(x.rootElementName));
+      out.writeInt(strings.applyAsInt(x.value));
+    } else {
+      throw new IllegalArgumentException("Unsupported matcher " + m.getClass().getName());
+    }
+  }
+
+  /**
+   * Read a matcher written by {@link #write(Matcher, DataOutput, ToIntFunction)}. The matcher is not
+   * yet frozen.
+   *
+   * @param b the buffer, positioned at the matcher
+   * @param strings maps an index in the string table to the string, <code>-1</code> to
+   *          <code>null</code>
+   * @return the matcher
+   * @throws IOException if the matcher kind is unknown
+   * @throws ReflectiveOperationException if the delegate of a custom matcher can't be instantiated
+   */
+  public static Matcher read(final ByteBuffer b, final IntFunction<String> strings)
+      throws IOException, ReflectiveOperationException {
+    final byte kind = b.get();
+    switch (kind){
+      case KIND_BYTE : {
+        final ByteMatcher m = readNumeric(new ByteMatcher(), b);
+        m.value = (int) b.getLong();
+        return m;
+      }
+
+      case KIND_SHORT : {
+        final ShortMatcher m = readNumeric(new ShortMatcher(), b);
+        m.value = (int) b.getLong();
+        return m;
+      }
+
+      case KIND_LONG : {
+        final LongMatcher m = readNumeric(new LongMatcher(), b);
+        m.value = b.getLong();
+        return m;
+      }
+
+      case KIND_DATE : {
+        final DateMatcher m = readNumeric(new DateMatcher(), b);
+        m.value = b.getLong();
+        return m;
+      }
+
+      case KIND_STRING : {
+        final StringMatcher m = readStreamMatcher(new StringMatcher(), b);
+        m.range = b.getInt();
+        final int length = b.getInt();
+        if (length < 0 || length > b.remaining()) {
+          throw new IOException("Invalid pattern length " + length);
+        }
+        m.pattern = new byte[length];
+        b.get(m.pattern);
+        return m;
+      }
+
+      case KIND_REGEXP : {
+        final RegexpMatcher m = readStreamMatcher(new RegexpMatcher(), b);
+        m.range = b.getInt();
+        m.encoding = strings.apply(b.getInt());
+        m.patternString = strings.apply(b.getInt());
+        m.setFlags(b.getInt());
+        return m;
+      }
+
+      case KIND_CUSTOM : {
+        final CustomMatcher m = new CustomMatcher();
+        final String className = strings.apply(b.getInt());
+        if (null != className) {
+          m.setClassName(className);
+        }
+        return m;
+      }
+
+      case KIND_XML_METADATA : {
+        final XMLMetadataMatcher m = new XMLMetadataMatcher();
+        m.namespaceUri = strings.apply(b.getInt());
+        m.rootElementName = strings.apply(b.getInt());
+        m.value = strings.apply(b.getInt());
+        return m;
+      }
+
+      default :
+        throw new IOException("Invalid matcher kind " + kind);
+    }
+  }
+
+  private static void writeNumeric(final byte kind, final NumericMatcher m, final long value, final DataOutput out)
+      throws IOException {
+    writeStreamMatcher(kind, m, out);
+    out.writeByte(m.order == ByteOrder.BIG_ENDIAN ? 0 : 1);
+    out.writeBoolean(m.unsigned);
+    out.writeBoolean(m.extractOnly);
+    out.writeLong(m.mask);
+    out.writeLong(value);
+  }
+
+  private static <M extends NumericMatcher> M readNumeric(final M m, final ByteBuffer b) throws IOException {
+    readStreamMatcher(m, b);
+    m.order = b.get() == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    m.unsigned = b.get() != 0;
+    m.extractOnly = b.get() != 0;
+    m.mask = b.getLong();
+    return m;
+  }
+
+  private static void writeStreamMatcher(final byte kind, final StreamMatcher m, final DataOutput out)
+      throws IOException {
+    if (null != m.location && !(m.location instanceof AbsoluteLocation)) {
+      throw new IllegalArgumentException("Unsupported location " + m.location.getClass().getName());
+    }
+    out.writeByte(kind);
+    out.writeBoolean(null != m.location);
+    out.writeInt(m.getOffset());
+    out.writeByte(m.comparison.ordinal());
+  }
+
+  private static <M extends StreamMatcher> M readStreamMatcher(final M m, final ByteBuffer b) throws IOException {
+    final boolean hasLocation = b.get() != 0;
+    final int offset = b.getInt();
+    if (hasLocation) {
+      m.location = new AbsoluteLocation(offset);
+    }
+    final int comparison = b.get();
+    if (comparison < 0 || comparison >= COMPARISONS.length) {
+      throw new IOException("Invalid comparison " + comparison);
+    }
+    m.comparison = COMPARISONS[comparison];
+    return m;
+  }
+}
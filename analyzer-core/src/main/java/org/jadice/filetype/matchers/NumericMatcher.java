@@ -4,6 +4,8 @@ import java.nio.ByteOrder;
 
 import jakarta.xml.bind.annotation.XmlTransient;
 
+import org.jadice.filetype.io.SeekableInputStream;
+
 /**
  * Abstract base class for matchers based on simple numeric data matching.
  * 
@@ -17,10 +19,21 @@ public abstract class NumericMatcher extends StreamMatcher {
 
   protected long mask = 0xffffffffffffffffL;
 
+  /**
+   * Whether the matcher was declared without a reference value. Such a matcher is meant to extract
+   * the value for the description only, which is not supported yet, so it never matches.
+   */
+  protected boolean extractOnly;
+
   public NumericMatcher() {
     super();
   }
 
+  @Override
+  public Cost getCost() {
+    return Cost.HEADER_COMPARE;
+  }
+
   protected void setMask(String s) {
     if (s.startsWith("0x")) {
       this.mask = Long.parseLong(s.substring(2), 16);
@@ -28,4 +41,66 @@ public abstract class NumericMatcher extends StreamMatcher {
       this.mask = Long.parseLong(s);
     }
   }
+
+  /**
+   * Read a short value from the header window, just like {@link SeekableInputStream#readShort()}
+   * would with this matcher's byte order.
+   *
+   * @param header the header window
+   * @param offset the offset of the value
+   * @return the value
+   */
+  protected short readShort(final byte[] header, final int offset) {
+    final int ch1 = header[offset] & 0xff;
+    final int ch2 = header[offset + 1] & 0xff;
+    if (order == ByteOrder.BIG_ENDIAN) {
+      return (short) ((ch1 << 8) + ch2);
+    } else {
+      return (short) ((ch2 << 8) + ch1);
+    }
+  }
+
+  /**
+   * Read an int value from the header window, just like {@link SeekableInputStream#readInt()} would
+   * with this matcher's byte order.
+   *
+   * @param header the header window
+   * @param offset the offset of the value
+   * @return the value
+   */
+  protected int readInt(final byte[] header, final int offset) {
+    final int ch1 = header[offset] & 0xff;
+    final int ch2 = header[offset + 1] & 0xff;
+    final int ch3 = header[offset + 2] & 0xff;
+    final int ch4 = header[offset + 3] & 0xff;
+    if (order == ByteOrder.BIG_ENDIAN) {
+      return (ch1 << 24) + (ch2 << 16) + (ch3 << 8) + ch4;
+    } else {
+      return (ch4 << 24) + (ch3 << 16) + (ch2 << 8) + ch1;
+    }
+  }
+
+  /**
+   * Check whether the byte at the matcher's offset is compatible with the given reference value
+   * under the current mask and byte order. Only equality comparisons can be decided this way, all
+   * other comparisons accept any byte.
+   *
+   * @param b the unsigned byte value at the matcher's offset
+   * @param value the reference value
+   * @param width the width of the compared value in bytes
+   * @return <code>false</code> if the comparison cannot succeed
+   */
+  protected boolean acceptsLeadingByte(int b, long value, int width) {
+    if (extractOnly) {
+      return false;
+    }
+    if (comparison != Comparison.EQUALS) {
+      return true;
+    }
+
+    final int shift = order == ByteOrder.BIG_ENDIAN ? 8 * (width - 1) : 0;
+    final long m = (mask >>> shift) & 0xff;
+    final long v = (value >>> shift) & 0xff;
+    return (b & m) == v;
+  }
 }
@@ -1,10 +1,8 @@
 package org.jadice.filetype.matchers;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
-import java.nio.file.Files;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -13,26 +11,14 @@ import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.ParserConfigurationException;
-
 import org.jadice.filetype.Context;
 import org.jadice.filetype.database.DescriptionAction;
 import org.jadice.filetype.database.ExtensionAction;
 import org.jadice.filetype.database.MimeTypeAction;
-import org.jadice.filetype.domutil.DOMUtil;
-import org.jadice.filetype.io.SeekableInputStream;
-import org.jadice.filetype.ziputil.ZipUtil;
+import org.jadice.filetype.domutil.PartReader;
+import org.jadice.filetype.ziputil.ZipArchive;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import net.lingala.zip4j.ZipFile;
-import net.lingala.zip4j.model.FileHeader;
 
 /**
  * A {@link Matcher} for Office Open XML (i.e. MS Office 2007) documents.
@@ -40,6 +26,10 @@ import net.lingala.zip4j.model.FileHeader;
  * Caveat: for performance reasons, the {@link OpenDocumentMatcher} should only be called from a
  * context where the stream has already been identified as a ZIP file/stream.
  * </p>
+ * <p>
+ * The package parts are read using a streaming {@link PartReader}. In particular, the content types
+ * are only read up to the override for the main document.
+ * </p>
  * @see <a href=
  *      "http://www.ecma-international.org/news/TC45_current_work/Office%20Open%20XML%20Part%202%20-%20Open%20Packaging%20Conventions_final.docx"
  *      >Office Open XML Specification (Ecma TC45) / Part 2: Open Packaging Conventions</a>
@@ -69,9 +59,9 @@ public class OfficeOpenXMLMatcher extends Matcher {
     public final String target;
 
     public Relationship(final String id, final String type, final String target) {
-      this.id = id;
-      this.type = type;
-      this.target = target.startsWith("/") ? target.substring(1) : target;
+      this.id = null != id ? id : "";
+      this.type = null != type ? type : "";
+      this.target = null == target ? "" : target.startsWith("/") ? target.substring(1) : target;
     }
 
     @Override
@@ -97,8 +87,6 @@ public class OfficeOpenXMLMatcher extends Matcher {
   }
 
   interface ContentType {
-    boolean matches(String partName);
-
     String getMimeType();
   }
 
@@ -116,11 +104,6 @@ public class OfficeOpenXMLMatcher extends Matcher {
       return mimeType;
     }
 
-    @Override
-    public boolean matches(final String partName) {
-      return partName.endsWith("." + extension);
-    }
-
     @Override
     public String toString() {
       return extension + " -> " + mimeType;
@@ -141,11 +124,6 @@ public class OfficeOpenXMLMatcher extends Matcher {
       return mimeType;
     }
 
-    @Override
-    public boolean matches(final String partName) {
-      return this.partName.equals(partName);
-    }
-
     @Override
     public String toString() {
       return partName + " -> " + mimeType;
@@ -236,16 +214,8 @@ public class OfficeOpenXMLMatcher extends Matcher {
    */
   @Override
   public boolean matches(final Context context) {
-    SeekableInputStream sis = context.getStream();
     try {
-      sis.seek(0);
-      ZipFile archive = ZipUtil.createZipFile(sis);
-      try {
-        detect(context, archive);
-      } finally {
-        // Close releases file handles; any temp cleanup is handled by the ZipUtil ZipFile implementation.
-        archive.close();
-      }
+      detect(context, context.getZipArchive());
       return context.getProperty(MimeTypeAction.KEY) != null;
     } catch (IOException e) {
       context.error(this, "Exception analyzing Office Open XML Container", e);
@@ -253,10 +223,9 @@ public class OfficeOpenXMLMatcher extends Matcher {
     return false;
   }
 
-  private void detect(final Context ctx, final ZipFile archive) throws IOException {
+  private void detect(final Context ctx, final ZipArchive archive) throws IOException {
     final SortedSet<Relationship> rels = getRelationships(archive);
-    final List<ContentType> contentTypes = getContentTypes(archive);
-    if (rels.isEmpty() || contentTypes.isEmpty()) {
+    if (rels.isEmpty() || !hasPart(CONTENT_TYPES_FILENAME, archive)) {
       final OfficeOpenType type = findIWorkDocumentType(ctx, archive);
       if (type != null) {
         ctx.setProperty(MimeTypeAction.KEY, type.mimeType);
@@ -266,7 +235,9 @@ public class OfficeOpenXMLMatcher extends Matcher {
       return;
     }
 
-    final OfficeOpenType mimeType = findDocumentType(rels, contentTypes);
+    final Relationship mainDocRel = getMainDocument(rels);
+    final ContentType docType = null != mainDocRel ? findContentType(archive, mainDocRel.target) : null;
+    final OfficeOpenType mimeType = findDocumentType(docType);
     LOGGER.debug("Detected OfficeOpenType: {}", mimeType);
     if (mimeType == null) {
       return;
@@ -288,11 +259,11 @@ public class OfficeOpenXMLMatcher extends Matcher {
 
   }
 
-  private OfficeOpenType findIWorkDocumentType(final Context ctx, final ZipFile archive) throws IOException {
+  private OfficeOpenType findIWorkDocumentType(final Context ctx, final ZipArchive archive) throws IOException {
     final InputStream indexDocument = getSafeInputStream("Index/Document.iwa", archive);
     final InputStream metadataDocumentIdentifier = getSafeInputStream("Metadata/DocumentIdentifier", archive);
     OfficeOpenType mimeType = null;
-    if (indexDocument != null && metadataDocumentIdentifier != null) {
+    if (indexDocument != null && metadataDocumentIdentifier != null && ctx.getStatedExtension() != null) {
       switch (ctx.getStatedExtension()){
         case "pages" :
           mimeType = OfficeOpenType.APPLE_PAGES;
@@ -309,20 +280,7 @@ public class OfficeOpenXMLMatcher extends Matcher {
     return mimeType;
   }
 
-  private OfficeOpenType findDocumentType(final SortedSet<Relationship> rels, final List<ContentType> contentTypes) {
-
-    final Relationship mainDocRel = getMainDocument(rels);
-    if (mainDocRel == null) {
-      return null;
-    }
-
-    ContentType docType = null;
-    for (ContentType ct : contentTypes) {
-      if (ct.matches(mainDocRel.target)) {
-        docType = ct;
-        break;
-      }
-    }
+  private OfficeOpenType findDocumentType(final ContentType docType) {
     if (docType == null) {
       return null;
     }
@@ -345,7 +303,7 @@ public class OfficeOpenXMLMatcher extends Matcher {
     return null;
   }
 
-  private Map<String, Object> findMetaData(final SortedSet<Relationship> rels, final ZipFile archive) throws IOException {
+  private Map<String, Object> findMetaData(final SortedSet<Relationship> rels, final ZipArchive archive) throws IOException {
     for (Relationship r : rels) {
       // XXX What about extended-properties?
       if (CORE_PROPERTIES_SCHEMA.equalsIgnoreCase(r.type)) {
@@ -362,83 +320,65 @@ public class OfficeOpenXMLMatcher extends Matcher {
 
   private Map<String, Object> readXMLMetaData(final InputStream inputStream) throws IOException {
     Map<String, Object> result = new HashMap<>();
-    final Document doc;
-    try {
-      DocumentBuilder builder = DOMUtil.createSimpleDocumentBuilder();
-      doc = builder.parse(inputStream);
-    } catch (ParserConfigurationException | SAXException e) {
-      throw new IOException("Could not read XML meta data", e);
-    }
-
-    Node root = DOMUtil.findChildByName(doc, "cp:coreProperties");
-    if (null == root) {
-      throw new IOException("malformed core-properties: missing cp:coreProperties node");
-    }
+    try (PartReader reader = PartReader.open(inputStream)) {
+      if (!reader.nextElement() || !"cp:coreProperties".equals(reader.getName())) {
+        throw new IOException("malformed core-properties: missing cp:coreProperties node");
+      }
 
-    Node n = root.getFirstChild();
-    while (n != null) {
-      if (n instanceof Element) {
-        String key = n.getNodeName();
-        String val = DOMUtil.getNodeText(n);
-        if (val != null && !val.isEmpty()) {
-          // Ignore empty information
-          result.put(key, val);
+      while (reader.nextElement()) {
+        if (reader.getDepth() == 2) {
+          String key = reader.getName();
+          String val = reader.getElementText();
+          if (val != null && !val.isEmpty()) {
+            // Ignore empty information
+            result.put(key, val);
+          }
         }
       }
-      n = n.getNextSibling();
+    } finally {
+      inputStream.close();
     }
     return result;
   }
 
   /**
-   * Get the content types from an OfficeOpenXML archive
+   * Find the content type of a part in an OfficeOpenXML archive. The content types are read only up
+   * to the override for the part, if there is one.
    * @param archive an OfficeOpenXML archive
-   * @return a list of content types or an empty {@link List<ContentType>}
+   * @param partName the name of the part
+   * @return the override for the part, the default for its extension or <code>null</code>
    * @throws IOException if parsing of the content types fails
    */
-  private List<ContentType> getContentTypes(final ZipFile archive) throws IOException {
-    List<ContentType> result = new LinkedList<>();
+  private ContentType findContentType(final ZipArchive archive, final String partName) throws IOException {
     final InputStream typesIS = getSafeInputStream(CONTENT_TYPES_FILENAME, archive);
     if (typesIS == null) {
-      return result;
-    }
-
-    final Document doc;
-    try {
-      LOGGER.debug("Detecting ContentTypes. Parsing " + CONTENT_TYPES_FILENAME + " now");
-      DocumentBuilder dBuilder = DOMUtil.createSimpleDocumentBuilder();
-      doc = dBuilder.parse(typesIS);
-    } catch (ParserConfigurationException | SAXException e) {
-      throw new IOException("Could not parse " + CONTENT_TYPES_FILENAME, e);
-    }
-
-    // Important: First the specialized overrides, ...
-    NodeList overrideNodes = doc.getElementsByTagName("Override");
-    for (int i = 0; i < overrideNodes.getLength(); i++) {
-      Node nNode = overrideNodes.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element e = (Element) nNode;
-        final OverrideContentType ct = new OverrideContentType(e.getAttribute("ContentType"),
-            e.getAttribute("PartName"));
-        LOGGER.debug("Detected override content type: {}", ct);
-        result.add(ct);
-      }
+      return null;
     }
 
-    // .. then the "defaults"
-    NodeList defaultNodes = doc.getElementsByTagName("Default");
-    for (int i = 0; i < defaultNodes.getLength(); i++) {
-      Node nNode = defaultNodes.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element e = (Element) nNode;
-        final DefaultContentType ct = new DefaultContentType(e.getAttribute("ContentType"),
-            e.getAttribute("Extension"));
-        LOGGER.debug("Detected default content type: {}", ct);
-        result.add(ct);
+    LOGGER.debug("Detecting ContentTypes. Parsing " + CONTENT_TYPES_FILENAME + " now");
+    // Important: the specialized overrides take precedence over the "defaults"
+    ContentType defaultType = null;
+    try (PartReader reader = PartReader.open(typesIS)) {
+      while (reader.nextElement()) {
+        if ("Override".equals(reader.getName())) {
+          final String name = reader.getAttribute("PartName");
+          if (null != name && partName.equals(name.startsWith("/") ? name.substring(1) : name)) {
+            final OverrideContentType ct = new OverrideContentType(attribute(reader, "ContentType"), name);
+            LOGGER.debug("Detected override content type: {}", ct);
+            return ct;
+          }
+        } else if (defaultType == null && "Default".equals(reader.getName())) {
+          final String extension = reader.getAttribute("Extension");
+          if (null != extension && partName.endsWith("." + extension)) {
+            defaultType = new DefaultContentType(attribute(reader, "ContentType"), extension);
+            LOGGER.debug("Detected default content type: {}", defaultType);
+          }
+        }
       }
+    } finally {
+      typesIS.close();
     }
-
-    return result;
+    return defaultType;
   }
 
   /**
@@ -447,60 +387,53 @@ public class OfficeOpenXMLMatcher extends Matcher {
    * @return a set of relationships or an empty {@link SortedSet<Relationship>}
    * @throws IOException if parsing of the relationship part fails
    */
-  private SortedSet<Relationship> getRelationships(final ZipFile archive) throws IOException {
+  private SortedSet<Relationship> getRelationships(final ZipArchive archive) throws IOException {
     SortedSet<Relationship> result = new TreeSet<>();
     final InputStream relationsIS = getSafeInputStream(RELATIONSSHIP_FILENAME, archive);
     if (relationsIS == null) {
       return result;
     }
 
-    Document doc;
-    try {
-      LOGGER.debug("Detecting Relationships. Parsing " + RELATIONSSHIP_FILENAME + " now");
-      DocumentBuilder dBuilder = DOMUtil.createSimpleDocumentBuilder();
-      doc = dBuilder.parse(relationsIS);
-    } catch (ParserConfigurationException | SAXException e) {
-      throw new IOException("Could not parse " + RELATIONSSHIP_FILENAME, e);
-    }
-    NodeList nList = doc.getElementsByTagName("Relationship");
-
-    for (int i = 0; i < nList.getLength(); i++) {
-
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element e = (Element) nNode;
-        final Relationship rel = new Relationship(e.getAttribute("Id"), e.getAttribute("Type"),
-            e.getAttribute("Target"));
-        LOGGER.debug("Detected relationship: {}", rel);
-        result.add(rel);
+    LOGGER.debug("Detecting Relationships. Parsing " + RELATIONSSHIP_FILENAME + " now");
+    try (PartReader reader = PartReader.open(relationsIS)) {
+      while (reader.nextElement()) {
+        if ("Relationship".equals(reader.getName())) {
+          final Relationship rel = new Relationship(reader.getAttribute("Id"), reader.getAttribute("Type"),
+              reader.getAttribute("Target"));
+          LOGGER.debug("Detected relationship: {}", rel);
+          result.add(rel);
+        }
       }
+    } finally {
+      relationsIS.close();
     }
     return result;
   }
 
-  private InputStream getSafeInputStream(String fileName, final ZipFile archive) throws IOException {
+  private static String attribute(final PartReader reader, final String name) {
+    final String value = reader.getAttribute(name);
+    return null != value ? value : "";
+  }
+
+  private boolean hasPart(final String fileName, final ZipArchive archive) throws IOException {
+    try (InputStream is = getSafeInputStream(fileName, archive)) {
+      return is != null;
+    }
+  }
+
+  private InputStream getSafeInputStream(String fileName, final ZipArchive archive) throws IOException {
     if (fileName.startsWith("/")) {
       fileName = fileName.substring(1);
     }
-    // Support both entry layouts: root entries and entries prefixed with "<zipname>/".
-    final String prefixed = archive.getFile().getName() + File.separator + fileName;
     InputStream direct = tryGetSingleEntry(fileName, archive);
     if (direct != null) {
       return direct;
     }
-    InputStream prefixedDirect = tryGetSingleEntry(prefixed, archive);
-    if (prefixedDirect != null) {
-      return prefixedDirect;
-    }
-    InputStream pieces = tryGetPieceStream(fileName, archive);
-    if (pieces != null) {
-      return pieces;
-    }
-    return tryGetPieceStream(prefixed, archive);
+    return tryGetPieceStream(fileName, archive);
   }
 
-  private InputStream tryGetSingleEntry(final String name, final ZipFile archive) throws IOException {
-    final FileHeader entry = archive.getFileHeader(name);
+  private InputStream tryGetSingleEntry(final String name, final ZipArchive archive) throws IOException {
+    final ZipArchive.Entry entry = archive.getEntry(name);
     if (entry != null && !entry.isDirectory()) {
       LOGGER.debug("Get '{}' from 1 piece", name);
       return archive.getInputStream(entry);
@@ -508,13 +441,13 @@ public class OfficeOpenXMLMatcher extends Matcher {
     return null;
   }
 
-  private InputStream tryGetPieceStream(final String baseName, final ZipFile archive) throws IOException {
+  private InputStream tryGetPieceStream(final String baseName, final ZipArchive archive) throws IOException {
     // Assemble stream from "[0].piece"..."[$n].last.piece";
     // see Office Open XML, Part 2: Open Packaging Conventions, sec 9.1.3.1 Logical Item Names
     List<InputStream> streams = new LinkedList<>();
     int i = 0;
-    FileHeader piece;
-    while ((piece = archive.getFileHeader(baseName + "/[" + i + "].piece")) != null) {
+    ZipArchive.Entry piece;
+    while ((piece = archive.getEntry(baseName + "/[" + i + "].piece")) != null) {
       final InputStream is = archive.getInputStream(piece);
       if (is == null) {
         break;
@@ -524,7 +457,7 @@ public class OfficeOpenXMLMatcher extends Matcher {
       i++;
     }
 
-    final FileHeader last = archive.getFileHeader(baseName + "/[" + i + "].last.piece");
+    final ZipArchive.Entry last = archive.getEntry(baseName + "/[" + i + "].last.piece");
     if (last == null) {
       return null;
     }
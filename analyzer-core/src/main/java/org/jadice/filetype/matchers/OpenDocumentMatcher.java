@@ -1,30 +1,22 @@
 package org.jadice.filetype.matchers;
 
-import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.zip.CRC32;
 
 import org.jadice.filetype.Context;
 import org.jadice.filetype.database.DescriptionAction;
 import org.jadice.filetype.database.ExtensionAction;
 import org.jadice.filetype.database.MimeTypeAction;
-import org.jadice.filetype.domutil.DOMUtil;
-import org.jadice.filetype.io.SeekableInputStream;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
-
-import net.lingala.zip4j.io.inputstream.ZipInputStream;
-import net.lingala.zip4j.model.LocalFileHeader;
+import org.jadice.filetype.domutil.PartReader;
+import org.jadice.filetype.ziputil.ZipArchive;
 
 /**
  * A matcher for OpenDocument-based formats and their fore-runners. In particular, the following
@@ -34,10 +26,14 @@ import net.lingala.zip4j.model.LocalFileHeader;
  * <li>OpenOffice 1.x/StarOffice 6,7
  * <li>StarOffice 5.x
  * <li>KOffice
+ * <li>EPUB, which shares the package layout of ODF
  * </ul>
  * <p>
- * The {@link OpenDocumentMatcher} not only sets the MIME type and description appropriately, but
- * also tries to provide the stream metadata.
+ * ODF and EPUB packages start with a stored <code>mimetype</code> entry, so that the media type can
+ * be read from the header window at a fixed offset. The archive is only opened if there is no such
+ * entry or if the stream metadata has been requested via {@link Context#isOpenDocumentMetadata()}.
+ * In the latter case the {@link OpenDocumentMatcher} not only sets the MIME type and description
+ * appropriately, but also provides the stream metadata from <code>meta.xml</code>.
  * <p>
  * Caveat: for performance reasons, the {@link OpenDocumentMatcher} should only be called from a
  * context where the stream has already been identified as a ZIP file/stream.
@@ -45,17 +41,6 @@ import net.lingala.zip4j.model.LocalFileHeader;
  */
 public class OpenDocumentMatcher extends Matcher {
 
-  static final class DontCloseFilter extends FilterInputStream {
-    DontCloseFilter(InputStream in) {
-      super(in);
-    }
-
-    @Override
-    public void close() throws IOException {
-      // don't...
-    }
-  }
-
   /**
    * All document types this Matcher recognizes.<br/>
    * <b>Caveat:</b> default extension can be null!
@@ -116,7 +101,10 @@ public class OpenDocumentMatcher extends Matcher {
     KOFFICE_DRAWING("application/vnd.kde.kontour", "KOffice Drawing"), //
     KOFFICE_PRESENTATION("application/vnd.kde.kpresenter", "KOffice Presentation"), //
     KOFFICE_SPREADSHEET("application/vnd.kde.kspread", "KOffice Spreadsheet"), //
-    KOFFICE_KWORD("application/vnd.kde.kword", "KOffice Kword Document");//
+    KOFFICE_KWORD("application/vnd.kde.kword", "KOffice Kword Document"), //
+
+    // EPUB
+    EPUB("application/epub+zip", "EPUB Publication", "epub");//
 
     final String mimeType;
     final String description;
@@ -135,14 +123,29 @@ public class OpenDocumentMatcher extends Matcher {
     }
   }
 
+  private static final int LOCAL_FILE_HEADER_LENGTH = 30;
+
+  private static final byte[] MIMETYPE_ENTRY = "mimetype".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * The longest media type accepted from a leading mimetype entry
+   */
+  private static final int MAX_MIMETYPE_LENGTH = 256;
+
   @Override
   public boolean matches(Context context) {
-    SeekableInputStream sis = context.getStream();
     try {
-      sis.seek(0);
-      try (ZipInputStream zis = new ZipInputStream(sis)) {
-        detect(context, zis);
+      Map<String, Object> results = new HashMap<>();
+      String leadingMimeType = readLeadingMimeType(context);
+      if (null != leadingMimeType) {
+        detectFileFormat(context, results, leadingMimeType);
       }
+      if (results.containsKey(MimeTypeAction.KEY) && !context.isOpenDocumentMetadata()) {
+        publish(context, results);
+        return true;
+      }
+
+      detect(context, context.getZipArchive(), results, null != leadingMimeType);
       return context.getProperty(MimeTypeAction.KEY) != null;
     } catch (Exception e) {
       context.error(this, "Exception analyzing ODF", e);
@@ -151,57 +154,106 @@ public class OpenDocumentMatcher extends Matcher {
     return false;
   }
 
-  private void detect(Context ctx, ZipInputStream zipInputStream) throws IOException {
-    boolean gotMimeType = false;
-    boolean gotMetaData = false;
+  /**
+   * Read the media type from the header window, provided that the first entry of the package is a
+   * stored <code>mimetype</code> entry, as required by ODF and EPUB. Without an extra field in its
+   * local header, the media type starts at offset 38.
+   *
+   * @return the media type or <code>null</code> if there is no such entry
+   */
+  private String readLeadingMimeType(Context ctx) throws IOException {
+    int dataOffset = LOCAL_FILE_HEADER_LENGTH + MIMETYPE_ENTRY.length;
+    ctx.prefetchHeader(dataOffset + MAX_MIMETYPE_LENGTH);
+    if (!ctx.isInHeader(0, dataOffset)) {
+      return null;
+    }
+
+    ByteBuffer header = ByteBuffer.wrap(ctx.getHeader(), 0, ctx.getHeaderLength()).order(ByteOrder.LITTLE_ENDIAN);
+    if (header.getInt(0) != 0x04034b50 // local file header signature
+        || (header.getShort(6) & 0x09) != 0 // neither encrypted nor followed by a data descriptor
+        || header.getShort(8) != 0 // stored
+        || header.getShort(26) != MIMETYPE_ENTRY.length
+        || !Arrays.equals(ctx.getHeader(), LOCAL_FILE_HEADER_LENGTH, dataOffset, MIMETYPE_ENTRY, 0,
+            MIMETYPE_ENTRY.length)) {
+      return null;
+    }
+
+    int length = header.getInt(18);
+    dataOffset += header.getShort(28) & 0xffff;
+    if (length < 0 || length > MAX_MIMETYPE_LENGTH || length != header.getInt(22)) {
+      return null;
+    }
+    ctx.prefetchHeader(dataOffset + length);
+    if (!ctx.isInHeader(dataOffset, length)) {
+      return null;
+    }
 
+    CRC32 crc = new CRC32();
+    crc.update(ctx.getHeader(), dataOffset, length);
+    if ((int) crc.getValue() != header.getInt(14)) {
+      return null;
+    }
+    return new String(ctx.getHeader(), dataOffset, length, StandardCharsets.US_ASCII).trim();
+  }
+
+  /**
+   * Detect the document type from the archive, unless the leading mimetype entry already revealed it,
+   * and read the metadata if requested.
+   */
+  private void detect(Context ctx, ZipArchive archive, Map<String, Object> results, boolean gotLeadingMimeType) {
     try {
-      LocalFileHeader fileHeader;
-      Map<String, Object> results = new HashMap<>();
-      while ((fileHeader = zipInputStream.getNextEntry()) != null) {
-        String fileName = fileHeader.getFileName();
-        if ("mimetype".equals(fileName)) {
-          detectMimeType(ctx, results, zipInputStream);
-          gotMimeType = true;
-        } else if ("meta.xml".equals(fileName)) {
-          try {
-            readMetaXml(results, zipInputStream);
-            gotMetaData = true;
-          } catch (Exception e) {
-            ctx.error(this, "Exception parsing meta.xml", e);
-          }
-        } else if ("META-INF/manifest.xml".equals(fileName)) {
-          try {
-            readManifestXml(ctx, results, zipInputStream);
-            gotMimeType = true;
-          } catch (Exception e) {
-            ctx.error(this, "Exception parsing manifest.xml", e);
-          }
+      ZipArchive.Entry mimeType = gotLeadingMimeType ? null : archive.getEntry("mimetype");
+      if (null != mimeType) {
+        try (InputStream is = archive.getInputStream(mimeType)) {
+          detectMimeType(ctx, results, is);
         }
-        if (gotMetaData && gotMimeType) {
-          break;
+      }
+
+      // the manifest is only consulted if there is no usable mimetype entry
+      ZipArchive.Entry manifest = archive.getEntry("META-INF/manifest.xml");
+      if (!results.containsKey(MimeTypeAction.KEY) && null != manifest) {
+        try (InputStream is = archive.getInputStream(manifest)) {
+          readManifestXml(ctx, results, is);
+        } catch (Exception e) {
+          ctx.error(this, "Exception parsing manifest.xml", e);
         }
       }
 
-      // we add the results to the context only if the detection
-      // yielded at least a MIME type.
-      if (!results.isEmpty() && results.containsKey(MimeTypeAction.KEY)) {
-        for (Iterator<Map.Entry<String, Object>> i = results.entrySet().iterator(); i.hasNext();) {
-          Map.Entry<String, Object> e = i.next();
-          if (!e.getKey().startsWith("ODF_")) {
-            ctx.setProperty(e.getKey(), e.getValue());
-            i.remove();
-          }
+      ZipArchive.Entry meta = ctx.isOpenDocumentMetadata() && results.containsKey(MimeTypeAction.KEY)
+          ? archive.getEntry("meta.xml")
+          : null;
+      if (null != meta) {
+        try (InputStream is = archive.getInputStream(meta)) {
+          readMetaXml(results, is);
+        } catch (Exception e) {
+          ctx.error(this, "Exception parsing meta.xml", e);
         }
-        ctx.setProperty("ODF_DETAILS", results);
       }
+
+      publish(ctx, results);
     } catch (IOException e) {
       // DON'T propagate IOExceptions from here, since it is most likely the
-      // ZipInputStream causing it, not the source data.
+      // ZIP container causing it, not the source data.
       ctx.error(this, "Exception analyzing ODF container file", e);
     }
   }
 
+  /**
+   * Add the results to the context, but only if the detection yielded at least a MIME type.
+   */
+  private void publish(Context ctx, Map<String, Object> results) {
+    if (!results.isEmpty() && results.containsKey(MimeTypeAction.KEY)) {
+      for (Iterator<Map.Entry<String, Object>> i = results.entrySet().iterator(); i.hasNext();) {
+        Map.Entry<String, Object> e = i.next();
+        if (!e.getKey().startsWith("ODF_")) {
+          ctx.setProperty(e.getKey(), e.getValue());
+          i.remove();
+        }
+      }
+      ctx.setProperty("ODF_DETAILS", results);
+    }
+  }
+
   private void detectMimeType(Context ctx, Map<String, Object> results, InputStream is) throws IOException {
     StringBuilder sb = new StringBuilder();
     int read = 0;
@@ -214,72 +266,68 @@ public class OpenDocumentMatcher extends Matcher {
     detectFileFormat(ctx, results, sb.toString().trim());
   }
 
-  private void readMetaXml(Map<String, Object> results, InputStream is)
-      throws ParserConfigurationException, SAXException, IOException {
-    DocumentBuilder builder = DOMUtil.createSimpleDocumentBuilder();
-    Document document = builder.parse(new DontCloseFilter(is));
-
-    Node root = DOMUtil.findChildByName(document, "office:document-meta");
-    if (null == root) {
-      throw new IOException("malformed meta.xml: missing office:document-meta node");
-    }
-
-    Node meta = DOMUtil.findChildByName(root, "office:meta");
-    if (null == meta) {
-      throw new IOException("malformed meta.xml: missing office:meta node");
-    }
+  private void readMetaXml(Map<String, Object> results, InputStream is) throws IOException {
+    try (PartReader reader = PartReader.open(is)) {
+      if (!reader.nextElement() || !"office:document-meta".equals(reader.getName())) {
+        throw new IOException("malformed meta.xml: missing office:document-meta node");
+      }
 
-    Node n = meta.getFirstChild();
-    while (n != null) {
-      if (n instanceof Element) {
-        if (!"meta:document-statistic".equals(n.getNodeName()) && !"meta:user-defined".equals(n.getNodeName())) {
-          results.put("ODF_" + n.getNodeName(), DOMUtil.getNodeText(n));
-        } else if ("meta:document-statistic".equals(n.getNodeName())) {
-          NamedNodeMap m = n.getAttributes();
-          for (int j = 0; j < m.getLength(); j++) {
-            Node a = m.item(j);
-            results.put("ODF_DOCUMENT_STATISTIC_" + a.getNodeName(), DOMUtil.getNodeText(a));
+      boolean inMeta = false;
+      while (reader.nextElement()) {
+        if (reader.getDepth() == 2) {
+          if (inMeta) {
+            // the end of office:meta
+            return;
           }
-        } else if ("meta:user-defined".equals(n.getNodeName())) {
-          Node nameAttribute = n.getAttributes().getNamedItem("meta:name");
-          if (null == nameAttribute) {
-            throw new IOException("malformed meta.xml: user-defined/meta:name attribute is missing.");
+          inMeta = "office:meta".equals(reader.getName());
+        } else if (inMeta && reader.getDepth() == 3) {
+          String name = reader.getName();
+          if ("meta:document-statistic".equals(name)) {
+            for (int j = 0; j < reader.getAttributeCount(); j++) {
+              results.put("ODF_DOCUMENT_STATISTIC_" + reader.getAttributeName(j), reader.getAttributeValue(j));
+            }
+          } else if ("meta:user-defined".equals(name)) {
+            String nameAttribute = reader.getAttribute("meta:name");
+            if (null == nameAttribute) {
+              throw new IOException("malformed meta.xml: user-defined/meta:name attribute is missing.");
+            }
+            results.put("ODF_USER_DEFINED_" + nameAttribute, reader.getElementText());
+          } else {
+            results.put("ODF_" + name, reader.getElementText());
           }
-          results.put("ODF_USER_DEFINED_" + nameAttribute.getNodeValue(), DOMUtil.getNodeText(n));
         }
       }
 
-      n = n.getNextSibling();
+      if (!inMeta) {
+        throw new IOException("malformed meta.xml: missing office:meta node");
+      }
     }
   }
 
-  private void readManifestXml(Context ctx, Map<String, Object> results, InputStream is)
-      throws ParserConfigurationException, SAXException, IOException {
-    DocumentBuilder builder = DOMUtil.createSimpleDocumentBuilder();
-    Document document = builder.parse(new DontCloseFilter(is));
-
-    Node root = DOMUtil.findChildByName(document, "manifest:manifest");
-    if (null == root) {
-      throw new IOException("malformed manifest.xml");
-    }
+  private void readManifestXml(Context ctx, Map<String, Object> results, InputStream is) throws IOException {
+    try (PartReader reader = PartReader.open(is)) {
+      if (!reader.nextElement() || !"manifest:manifest".equals(reader.getName())) {
+        throw new IOException("malformed manifest.xml");
+      }
 
-    Node n = root.getFirstChild();
-    while (null != n) {
-      if ("manifest:file-entry".equals(n.getNodeName())) {
-        Node pathAttribute = n.getAttributes().getNamedItem("manifest:full-path");
-        if (null == pathAttribute) {
-          throw new IOException("malformed manifest.xml: manifest:full-path attribute is missing.");
-        }
-        if ("/".equals(pathAttribute.getNodeValue())) {
-          Node mediaType = n.getAttributes().getNamedItem("manifest:media-type");
-          if (null == mediaType) {
-            throw new IOException("malformed manifest.xml: manifest:media-type attribute is missing.");
+      while (reader.nextElement()) {
+        if (reader.getDepth() == 2 && "manifest:file-entry".equals(reader.getName())) {
+          String path = reader.getAttribute("manifest:full-path");
+          if (null == path) {
+            throw new IOException("malformed manifest.xml: manifest:full-path attribute is missing.");
+          }
+          if ("/".equals(path)) {
+            String mediaType = reader.getAttribute("manifest:media-type");
+            if (null == mediaType) {
+              throw new IOException("malformed manifest.xml: manifest:media-type attribute is missing.");
+            }
+
+            // only the package itself is of interest
+            detectFileFormat(ctx, results, mediaType);
+            return;
           }
-
-          detectFileFormat(ctx, results, mediaType.getNodeValue());
         }
       }
-      n = n.getNextSibling();
     }
   }
 
@@ -20,16 +20,16 @@ import org.jadice.filetype.io.SeekableInputStream;
 @XmlRootElement(name = "match-regexp")
 public class RegexpMatcher extends StreamMatcher {
   private Pattern pattern;
-  private String patternString;
+  String patternString;
 
   /**
    * The range (number of bytes) to be considered in the match. Default: 100 bytes.
    */
   @XmlAttribute
-  private int range = 100;
+  int range = 100;
 
   @XmlTransient
-  private String encoding = "ASCII";
+  String encoding = "ASCII";
 
   /**
    * By default, case-insensitive matching assumes that only characters in the US-ASCII charset are
@@ -84,26 +84,7 @@ public class RegexpMatcher extends StreamMatcher {
 
   @Override
   protected boolean matches(Context context, SeekableInputStream s) throws IOException {
-    if (null == pattern) {
-      int flags = 0;
-      if (caseInsensitive) {
-        flags |= Pattern.CASE_INSENSITIVE;
-      }
-      if (multiline) {
-        flags |= Pattern.MULTILINE;
-      }
-      if (dotall) {
-        flags |= Pattern.DOTALL;
-      }
-      if (unicodeCase) {
-        flags |= Pattern.UNICODE_CASE;
-      }
-      if (canonEq) {
-        flags |= Pattern.CANON_EQ;
-      }
-
-      pattern = Pattern.compile(".*" + patternString + ".*", flags);
-    }
+    final Pattern pattern = getCompiledPattern();
 
     byte[] buffer = new byte[range];
     int offset = 0;
@@ -119,6 +100,54 @@ public class RegexpMatcher extends StreamMatcher {
     return comparison == Comparison.EQUALS ? matches : !matches;
   }
 
+  @Override
+  public void freeze() {
+    getCompiledPattern();
+  }
+
+  private Pattern getCompiledPattern() {
+    if (null == pattern) {
+      pattern = Pattern.compile(".*" + patternString + ".*", getFlags());
+    }
+    return pattern;
+  }
+
+  /**
+   * @return the {@link Pattern} flags corresponding to the matching options
+   */
+  int getFlags() {
+    int flags = 0;
+    if (caseInsensitive) {
+      flags |= Pattern.CASE_INSENSITIVE;
+    }
+    if (multiline) {
+      flags |= Pattern.MULTILINE;
+    }
+    if (dotall) {
+      flags |= Pattern.DOTALL;
+    }
+    if (unicodeCase) {
+      flags |= Pattern.UNICODE_CASE;
+    }
+    if (canonEq) {
+      flags |= Pattern.CANON_EQ;
+    }
+    return flags;
+  }
+
+  /**
+   * Set the matching options from the given {@link Pattern} flags.
+   *
+   * @param flags the flags
+   */
+  void setFlags(final int flags) {
+    caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+    multiline = (flags & Pattern.MULTILINE) != 0;
+    dotall = (flags & Pattern.DOTALL) != 0;
+    unicodeCase = (flags & Pattern.UNICODE_CASE) != 0;
+    canonEq = (flags & Pattern.CANON_EQ) != 0;
+  }
+
   @XmlAttribute
   protected void setEncoding(String encoding) throws UnsupportedEncodingException {
     this.encoding = encoding;
@@ -150,4 +179,20 @@ public class RegexpMatcher extends StreamMatcher {
   protected void setDotall(boolean dotall) {
     this.dotall = dotall;
   }
+
+  protected void setCaseInsensitive(boolean caseInsensitive) {
+    this.caseInsensitive = caseInsensitive;
+  }
+
+  protected void setMultiline(boolean multiline) {
+    this.multiline = multiline;
+  }
+
+  protected void setUnicodeCase(boolean unicodeCase) {
+    this.unicodeCase = unicodeCase;
+  }
+
+  protected void setCanonEq(boolean canonEq) {
+    this.canonEq = canonEq;
+  }
 }
@@ -16,23 +16,49 @@ import org.jadice.filetype.io.SeekableInputStream;
  * 
  */
 @XmlRootElement(name = "match-short")
-public class ShortMatcher extends NumericMatcher {
-  private int value;
+public class ShortMatcher extends NumericMatcher implements FixedOffsetMatcher {
+  int value;
+
+  @Override
+  public boolean matches(final Context context) {
+    if (extractOnly) {
+      return false;
+    }
+    final int offset = getOffset();
+    if (!context.isInHeader(offset, 2)) {
+      return super.matches(context);
+    }
+    return matches(readShort(context.getHeader(), offset)) && skipHeaderBytes(context, 2);
+  }
 
   @Override
   protected boolean matches(Context context, SeekableInputStream positionedStream) throws IOException {
     positionedStream.setByteOrder(order);
-    int s = positionedStream.readShort();
+    return matches(positionedStream.readShort());
+  }
+
+  private boolean matches(int s) {
     s &= mask;
 
     return unsigned ? comparison.matches(value & 0xffff, s & 0xffff) : comparison.matches(value, s);
   }
 
+  @Override
+  public int getLength() {
+    return 2;
+  }
+
+  @Override
+  public boolean acceptsLeadingByte(int b) {
+    return acceptsLeadingByte(b, value, getLength());
+  }
+
   @XmlValue
   protected void setValue(String s) {
-    if (s.isEmpty()) {
+    this.extractOnly = s.isEmpty();
+    if (extractOnly) {
       // special case: don't match, just extract
-      // ignored for now.
+      // extraction is not supported yet, see NumericMatcher.extractOnly
       this.value = 0;
     } else if (s.startsWith("0x")) {
       this.value = Integer.parseInt(s.substring(2), 16);
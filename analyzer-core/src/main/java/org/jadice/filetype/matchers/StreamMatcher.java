@@ -5,6 +5,7 @@ import java.io.IOException;
 import jakarta.xml.bind.annotation.XmlTransient;
 
 import org.jadice.filetype.Context;
+import org.jadice.filetype.database.AbsoluteLocation;
 import org.jadice.filetype.database.Location;
 import org.jadice.filetype.io.SeekableInputStream;
 import org.slf4j.Logger;
@@ -35,6 +36,39 @@ public abstract class StreamMatcher extends Matcher {
 
   protected abstract boolean matches(Context context, SeekableInputStream positionedStream) throws IOException;
 
+  /**
+   * Position the stream behind the given number of bytes starting at this matcher's offset, just as
+   * if they had been read. Used by matchers which took their data from the header window of the
+   * {@link Context} instead of reading it from the stream.
+   *
+   * @param context the context
+   * @param length the number of bytes inspected
+   * @return <code>true</code> unless the stream could not be positioned
+   */
+  protected boolean skipHeaderBytes(final Context context, final int length) {
+    try {
+      context.getStream().seek(getOffset() + length);
+      return true;
+    } catch (IOException e) {
+      LOGGER.debug("Mismatch due to exception", e);
+      return false;
+    }
+  }
+
+  @Override
+  public Cost getCost() {
+    return Cost.BOUNDED_SCAN;
+  }
+
+  /**
+   * Get the absolute offset at which this matcher operates.
+   *
+   * @return the offset or -1 if the matcher's location is not an {@link AbsoluteLocation}
+   */
+  public int getOffset() {
+    return location instanceof AbsoluteLocation ? ((AbsoluteLocation) location).getOffset() : -1;
+  }
+
   protected void setComparison(final String comparison) {
     this.comparison = Comparison.get(comparison);
   }
@@ -42,13 +42,15 @@ import org.jadice.filetype.io.SeekableInputStream;
  * <dt>\\uXXXX
  * <dd>The unicode character specified by the two-byte hexadecimal sequence XXXX
  * </dl>
+ * If a <code>range</code> is given, the string may occur anywhere within the given number of bytes
+ * starting at the offset, instead of exactly at the offset.
  * 
  */
 @XmlRootElement(name = "match-string")
 @XmlAccessorType(XmlAccessType.PROPERTY)
-public class StringMatcher extends StreamMatcher {
+public class StringMatcher extends StreamMatcher implements FixedOffsetMatcher {
   @XmlTransient
-  private byte[] pattern;
+  byte[] pattern;
 
   @XmlValue
   private String patternString;
@@ -56,17 +58,120 @@ public class StringMatcher extends StreamMatcher {
   @XmlTransient
   private String encoding;
 
+  /**
+   * The number of bytes, starting at the offset, within which the string is searched. Zero if the
+   * string must occur exactly at the offset.
+   */
+  @XmlTransient
+  int range;
+
+  @XmlTransient
+  private AhoCorasick automaton;
+
+  @Override
+  public boolean matches(final Context context) {
+    final byte[] pattern = getPattern();
+    final int offset = getOffset();
+    if (isRangeSearch()) {
+      if (pattern.length == 0) {
+        return super.matches(context);
+      }
+      if (context.isInHeader(offset, range)) {
+        return search(context, offset, offset + range);
+      }
+      if (context.isHeaderComplete() && offset >= 0) {
+        return search(context, offset, Math.max(offset, context.getHeaderLength()));
+      }
+      return super.matches(context);
+    }
+
+    if (!context.isInHeader(offset, pattern.length)) {
+      return super.matches(context);
+    }
+    return Arrays.equals(context.getHeader(), offset, offset + pattern.length, pattern, 0, pattern.length)
+        && skipHeaderBytes(context, pattern.length);
+  }
+
+  private boolean search(final Context context, final int from, final int to) {
+    final int start = getAutomaton().indexOf(context.getHeader(), from, to);
+    return start >= 0 && skipHeaderBytes(context, start - from + getPattern().length);
+  }
+
   @Override
   protected boolean matches(Context context, SeekableInputStream s) throws IOException {
-    byte[] pattern = getPattern();
-    byte[] buffer = new byte[pattern.length];
+    if (isRangeSearch()) {
+      if (getPattern().length == 0) {
+        return true;
+      }
+
+      final long base = s.getStreamPosition();
+      final byte[] buffer = new byte[range];
+      int length = 0;
+      int read;
+      while (length < range && (read = s.read(buffer, length, range - length)) > 0) {
+        length += read;
+      }
+
+      final int start = getAutomaton().indexOf(buffer, 0, length);
+      if (start < 0) {
+        return false;
+      }
+      s.seek(base + start + getPattern().length);
+      return true;
+    }
+
+    for (byte b : getPattern()) {
+      if (s.read() != (b & 0xff)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  @XmlTransient
+  public int getLength() {
+    return isRangeSearch() ? range : getPattern().length;
+  }
 
-    s.readFully(buffer);
+  @Override
+  @XmlTransient
+  public Cost getCost() {
+    return isRangeSearch() ? Cost.BOUNDED_SCAN : Cost.HEADER_COMPARE;
+  }
 
-    return Arrays.equals(buffer, pattern);
+  @Override
+  public boolean acceptsLeadingByte(int b) {
+    final byte[] pattern = getPattern();
+    return isRangeSearch() || pattern.length == 0 || (pattern[0] & 0xff) == b;
   }
 
-  private byte[] getPattern() {
+  @Override
+  public void freeze() {
+    getPattern();
+    if (isRangeSearch() && getPattern().length > 0) {
+      getAutomaton();
+    }
+  }
+
+  /**
+   * Determine whether the string is searched within a range instead of being matched at a fixed
+   * offset.
+   *
+   * @return <code>true</code> for a range search
+   */
+  @XmlTransient
+  public boolean isRangeSearch() {
+    return range > 0;
+  }
+
+  /**
+   * Get the byte sequence to be matched.
+   *
+   * @return the pattern
+   */
+  @XmlTransient
+  public byte[] getPattern() {
     if (null == pattern) {
       pattern = toByteArray(patternString, encoding != null ? encoding : "ASCII");
     }
@@ -74,6 +179,13 @@ public class StringMatcher extends StreamMatcher {
     return pattern;
   }
 
+  private AhoCorasick getAutomaton() {
+    if (null == automaton) {
+      automaton = new AhoCorasick(getPattern());
+    }
+    return automaton;
+  }
+
   private static byte[] toByteArray(String s, String encoding) {
     StringBuilder src = new StringBuilder(s);
     ByteBuffer dst = ByteBuffer.allocate(s.length() * 4);
@@ -202,4 +314,9 @@ public class StringMatcher extends StreamMatcher {
   protected void setOffset(int offset) {
     this.location = new AbsoluteLocation(offset);
   }
+
+  @XmlAttribute(name = "range")
+  protected void setRange(int range) {
+    this.range = range;
+  }
 }
@@ -101,7 +101,7 @@ public class XMLMatcher extends Matcher {
 
   public static final int LOOK_AHEAD = 500;
 
-  private static SoftReference<SAXParserFactory> saxFactoryReference = new SoftReference<>(null);
+  private static volatile SoftReference<SAXParserFactory> saxFactoryReference = new SoftReference<>(null);
 
   public static Charset detectBomCharset(InputStream in) throws IOException {
     byte[] bom = new byte[4];
@@ -18,11 +18,11 @@ public class XMLMetadataMatcher extends Matcher {
 
   public static final String X_RECHNUNG_KEY = "x_rechnung";
 
-  private String namespaceUri;
+  String namespaceUri;
 
-  private String rootElementName;
+  String rootElementName;
 
-  private String value;
+  String value;
 
   @Override
   public boolean matches(Context context) throws IOException {
@@ -43,6 +43,12 @@ public class XMLMetadataMatcher extends Matcher {
     return false;
   }
 
+  @Override
+  public Cost getCost() {
+    // only inspects the details found by the XMLMatcher
+    return Cost.HEADER_COMPARE;
+  }
+
   @XmlAttribute
   public void setNamespaceUri(String namespaceUri) {
     this.namespaceUri = namespaceUri;
@@ -10,7 +10,7 @@ public class CpConvert {
   private static final Logger LOGGER = LoggerFactory.getLogger(CpConvert.class);
   byte[] cvTable = null;
   String encoder = null;
-  private byte[] revData = null;
+  private volatile byte[] revData = null;
 
   /**
    * Class declaration
@@ -0,0 +1,857 @@
+package org.jadice.filetype.ziputil;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.jadice.filetype.io.SeekableInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-only view of a ZIP archive working directly on a {@link SeekableInputStream}, without
+ * copying the archive anywhere.
+ * <p>
+ * If the length of the stream is known, the entries are taken from the central directory, which is
+ * located through the end of central directory record (and its ZIP64 counterpart) at the tail of
+ * the stream. Only the central directory and the data of the entries actually opened are read
+ * then. If the length is unknown, e.g. for a stream still being buffered from a plain
+ * {@link InputStream}, or if there is no central directory, e.g. because the archive is truncated,
+ * the local file headers are scanned from the start of the stream instead. This scan is lazy: it
+ * proceeds only as far as necessary to find a requested entry, so that a stream being buffered is
+ * not read any further. The end of entries whose sizes follow their data is found by searching for
+ * the data descriptor, so that they are only inflated if the descriptor has no signature.
+ * <p>
+ * The archive uses the stream's position freely; the streams returned by
+ * {@link #getInputStream(Entry)} seek to their own position before each read, so that several of
+ * them may be used alternately.
+ */
+public class ZipArchive {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ZipArchive.class);
+
+  static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+  static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+  static final int CENTRAL_FILE_HEADER_SIGNATURE = 0x02014b50;
+  static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+  static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+  static final int LOCAL_FILE_HEADER_LENGTH = 30;
+  static final int CENTRAL_FILE_HEADER_LENGTH = 46;
+  static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+  static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH = 56;
+  static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH = 20;
+
+  static final int ZIP64_EXTRA_FIELD = 0x0001;
+
+  static final int AES_EXTRA_FIELD = 0x9901;
+
+  /**
+   * General purpose flag: the entry is encrypted
+   */
+  public static final int FLAG_ENCRYPTED = 1;
+
+  /**
+   * General purpose flag: the sizes and CRC follow the data in a data descriptor
+   */
+  public static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+  /**
+   * General purpose flag: the entry uses PKWARE strong encryption
+   */
+  public static final int FLAG_STRONG_ENCRYPTION = 1 << 6;
+
+  /**
+   * Compression method: no compression
+   */
+  public static final int STORED = 0;
+
+  /**
+   * Compression method: deflate
+   */
+  public static final int DEFLATED = 8;
+
+  /**
+   * Compression method: WinZip AES encryption; the actual method is stored in the AES extra field
+   */
+  public static final int AES_ENCRYPTED = 99;
+
+  /**
+   * The encryption methods of ZIP entries.
+   */
+  public enum EncryptionMethod {
+    /**
+     * The entry is not encrypted.
+     */
+    NONE,
+    /**
+     * The traditional PKWARE encryption, aka ZipCrypto.
+     */
+    ZIP_CRYPTO,
+    /**
+     * WinZip AES encryption with a 128 bit key.
+     */
+    AES_128,
+    /**
+     * WinZip AES encryption with a 192 bit key.
+     */
+    AES_192,
+    /**
+     * WinZip AES encryption with a 256 bit key.
+     */
+    AES_256,
+    /**
+     * PKWARE strong encryption.
+     */
+    STRONG,
+    /**
+     * An encryption method not identifiable from the headers, e.g. AES without a valid extra field.
+     */
+    UNKNOWN
+  }
+
+  private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+  private static final long UNKNOWN_32 = 0xffffffffL;
+
+  private static final int TRANSFER_SIZE = 8192;
+
+  /**
+   * An entry of the archive.
+   */
+  public static final class Entry {
+    private final String name;
+    private final int flags;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+    private final byte[] extra;
+
+    /**
+     * The offset of the entry data, -1 until the local header has been read
+     */
+    private long dataOffset = -1;
+
+    Entry(final String name, final int flags, final int method, final long crc, final long compressedSize,
+        final long size, final long localHeaderOffset, final byte[] extra) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+      this.extra = extra;
+    }
+
+    /**
+     * @return the name of the entry, using '/' as separator
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the general purpose bit flags
+     */
+    public int getFlags() {
+      return flags;
+    }
+
+    /**
+     * @return the compression method, e.g. {@link ZipArchive#STORED} or {@link ZipArchive#DEFLATED}
+     */
+    public int getMethod() {
+      return method;
+    }
+
+    /**
+     * @return the CRC-32 of the uncompressed data
+     */
+    public long getCrc() {
+      return crc;
+    }
+
+    /**
+     * @return the size of the compressed data or -1 if it is unknown
+     */
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    /**
+     * @return the size of the uncompressed data or -1 if it is unknown
+     */
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return the offset of the local file header within the stream
+     */
+    public long getLocalHeaderOffset() {
+      return localHeaderOffset;
+    }
+
+    /**
+     * @return the extra field of the entry; the one of the central directory if there is one
+     */
+    public byte[] getExtra() {
+      return extra.clone();
+    }
+
+    /**
+     * @return whether the entry is encrypted according to its general purpose flags, see
+     *         {@link #getEncryptionMethod()} for the method
+     */
+    public boolean isEncrypted() {
+      return (flags & FLAG_ENCRYPTED) != 0;
+    }
+
+    /**
+     * Determine the encryption method from the general purpose flags, the compression method and the
+     * AES extra field. The data of the entry isn't read.
+     *
+     * @return the encryption method
+     */
+    public EncryptionMethod getEncryptionMethod() {
+      if (!isEncrypted())
+        return EncryptionMethod.NONE;
+      if (method == AES_ENCRYPTED) {
+        // vendor version (2), vendor ID "AE" (2), key strength (1), actual compression method (2)
+        final ByteBuffer aes = extraField(extra, AES_EXTRA_FIELD);
+        if (null == aes || aes.remaining() < 7)
+          return EncryptionMethod.UNKNOWN;
+        switch (aes.get(4)) {
+          case 1 :
+            return EncryptionMethod.AES_128;
+          case 2 :
+            return EncryptionMethod.AES_192;
+          case 3 :
+            return EncryptionMethod.AES_256;
+          default :
+            return EncryptionMethod.UNKNOWN;
+        }
+      }
+      if ((flags & FLAG_STRONG_ENCRYPTION) != 0)
+        return EncryptionMethod.STRONG;
+      return EncryptionMethod.ZIP_CRYPTO;
+    }
+
+    /**
+     * @return whether the entry is a directory, i.e. its name ends with '/'
+     */
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private final SeekableInputStream sis;
+
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+  private final boolean centralDirectory;
+
+  /**
+   * The offset of the next local file header to be scanned, -1 once all entries are known
+   */
+  private long scanOffset = -1;
+
+  /**
+   * The entry scanned last
+   */
+  private Entry scanned;
+
+  /**
+   * The offset from which on the stream contains no data descriptor signature, -1 if unknown. This
+   * keeps archives with many descriptors lacking a signature from being searched over and over.
+   */
+  private long noDescriptorFrom = -1;
+
+  private ZipArchive(final SeekableInputStream sis, final List<Entry> entries) {
+    this.sis = sis;
+    this.centralDirectory = true;
+    entries.forEach(this::add);
+  }
+
+  private ZipArchive(final SeekableInputStream sis) throws IOException {
+    this.sis = sis;
+    this.centralDirectory = false;
+    this.scanOffset = 0;
+    if (!scanNext())
+      throw new ZipException("Not a ZIP archive");
+  }
+
+  private void add(final Entry entry) {
+    // like the central directory, the first of several equally named entries wins
+    entries.putIfAbsent(entry.getName(), entry);
+  }
+
+  /**
+   * Open the archive contained in the given stream, starting at position 0.
+   *
+   * @param sis the stream
+   * @return the archive
+   * @throws IOException if the stream doesn't contain a readable ZIP archive
+   */
+  public static ZipArchive open(final SeekableInputStream sis) throws IOException {
+    final long length = sis.length();
+    if (length >= 0) {
+      final List<Entry> entries = readCentralDirectory(sis, length);
+      if (null != entries)
+        return new ZipArchive(sis, entries);
+      LOGGER.debug("No central directory found, scanning the local file headers");
+    }
+    return new ZipArchive(sis);
+  }
+
+  /**
+   * @return whether the entries have been taken from the central directory, as opposed to the local
+   *         file headers
+   */
+  public boolean hasCentralDirectory() {
+    return centralDirectory;
+  }
+
+  /**
+   * @return the entries of the archive, in the order of the archive
+   * @throws IOException if the local file headers can't be scanned
+   */
+  public List<Entry> getEntries() throws IOException {
+    while (scanNext()) {
+      // scan all entries
+    }
+    return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+  }
+
+  /**
+   * @param name the name of the entry
+   * @return the entry or <code>null</code> if there is none by that name
+   * @throws IOException if the local file headers can't be scanned
+   */
+  public Entry getEntry(final String name) throws IOException {
+    while (!entries.containsKey(name) && scanNext()) {
+      // scan up to the entry
+    }
+    return entries.get(name);
+  }
+
+  /**
+   * Find the first entry, in the order of the archive, satisfying the given predicate. The local
+   * file headers are scanned only up to that entry.
+   *
+   * @param predicate the predicate
+   * @return the entry or <code>null</code> if there is none
+   * @throws IOException if the local file headers can't be scanned
+   */
+  public Entry findEntry(final Predicate<Entry> predicate) throws IOException {
+    for (Entry e : entries.values()) {
+      if (predicate.test(e))
+        return e;
+    }
+    while (scanNext()) {
+      // duplicates of known entries are ignored
+      if (entries.get(scanned.getName()) == scanned && predicate.test(scanned))
+        return scanned;
+    }
+    return null;
+  }
+
+  /**
+   * Open a stream on the uncompressed data of the given entry. Stored and deflated entries are
+   * supported, but no encrypted ones. The CRC is verified once the stream has been read completely.
+   *
+   * @param entry the entry
+   * @return the stream
+   * @throws IOException if the entry can't be read
+   */
+  public InputStream getInputStream(final Entry entry) throws IOException {
+    if (entry.isEncrypted())
+      throw new ZipException("Entry is encrypted: " + entry.getName());
+    if (entry.getMethod() != STORED && entry.getMethod() != DEFLATED)
+      throw new ZipException("Unsupported compression method " + entry.getMethod() + ": " + entry.getName());
+    if (entry.getCompressedSize() < 0)
+      throw new ZipException("Unknown size of entry " + entry.getName());
+
+    final InputStream data = new EntryDataStream(sis, dataOffset(entry), entry.getCompressedSize());
+    final InputStream uncompressed = entry.getMethod() == STORED ? data : new InflatingStream(data);
+    return new CheckedEntryStream(uncompressed, entry);
+  }
+
+  private long dataOffset(final Entry entry) throws IOException {
+    if (entry.dataOffset < 0) {
+      final ByteBuffer header = read(sis, entry.getLocalHeaderOffset(), LOCAL_FILE_HEADER_LENGTH);
+      if (header.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE)
+        throw new ZipException("Invalid local file header: " + entry.getName());
+      entry.dataOffset = entry.getLocalHeaderOffset() + LOCAL_FILE_HEADER_LENGTH + u16(header, 26) + u16(header, 28);
+    }
+    return entry.dataOffset;
+  }
+
+  /**
+   * Read the entries from the central directory.
+   *
+   * @return the entries or <code>null</code> if no end of central directory record was found
+   */
+  private static List<Entry> readCentralDirectory(final SeekableInputStream sis, final long length)
+      throws IOException {
+    // the end of central directory record is followed by a comment of up to 64K
+    final long tailStart = Math.max(0, length - END_OF_CENTRAL_DIRECTORY_LENGTH - MAX_COMMENT_LENGTH);
+    final ByteBuffer tail = read(sis, tailStart, (int) (length - tailStart));
+    int eocd = -1;
+    for (int i = tail.limit() - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+      if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+          && i + END_OF_CENTRAL_DIRECTORY_LENGTH + u16(tail, i + 20) <= tail.limit()) {
+        eocd = i;
+        break;
+      }
+    }
+    if (eocd < 0)
+      return null;
+
+    final long eocdOffset = tailStart + eocd;
+    long cdSize = u32(tail, eocd + 12);
+    long cdOffset = u32(tail, eocd + 16);
+    long cdEnd = eocdOffset;
+
+    // ZIP64: the locator immediately precedes the end of central directory record
+    final long locatorOffset = eocdOffset - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH;
+    if (locatorOffset >= 0) {
+      final ByteBuffer locator = read(sis, locatorOffset, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH);
+      if (locator.getInt(0) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+        long zip64Offset = locator.getLong(8);
+        // the archive may be preceded by other data, e.g. a self-extractor stub
+        final long expected = locatorOffset - ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH;
+        if (zip64Offset < 0 || zip64Offset > expected || !isZip64Record(sis, zip64Offset))
+          zip64Offset = isZip64Record(sis, expected) ? expected : -1;
+        if (zip64Offset < 0)
+          throw new ZipException("Invalid ZIP64 end of central directory locator");
+        final ByteBuffer record = read(sis, zip64Offset, ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH);
+        cdSize = record.getLong(40);
+        cdOffset = record.getLong(48);
+        cdEnd = zip64Offset;
+      }
+    }
+
+    // compensate for data preceding the archive
+    final long shift = cdEnd - cdSize - cdOffset;
+    if (cdSize < 0 || cdOffset < 0 || shift < 0 || cdSize > Integer.MAX_VALUE - 8)
+      throw new ZipException("Invalid central directory");
+    if (shift > 0)
+      LOGGER.debug("ZIP archive is preceded by {} bytes", shift);
+
+    final ByteBuffer cd = read(sis, cdOffset + shift, (int) cdSize);
+    final List<Entry> entries = new ArrayList<>();
+    int p = 0;
+    while (p + CENTRAL_FILE_HEADER_LENGTH <= cd.limit() && cd.getInt(p) == CENTRAL_FILE_HEADER_SIGNATURE) {
+      final int nameLength = u16(cd, p + 28);
+      final int extraLength = u16(cd, p + 30);
+      final int commentLength = u16(cd, p + 32);
+      final int next = p + CENTRAL_FILE_HEADER_LENGTH + nameLength + extraLength + commentLength;
+      if (next > cd.limit())
+        throw new ZipException("Truncated central directory");
+
+      final String name = string(cd, p + CENTRAL_FILE_HEADER_LENGTH, nameLength);
+      final byte[] extra = new byte[extraLength];
+      cd.get(p + CENTRAL_FILE_HEADER_LENGTH + nameLength, extra);
+
+      long size = u32(cd, p + 24);
+      long compressedSize = u32(cd, p + 20);
+      long localHeaderOffset = u32(cd, p + 42);
+
+      // ZIP64: the extra field contains those values which don't fit in 32 bits, in this order
+      final ByteBuffer zip64 = extraField(extra, ZIP64_EXTRA_FIELD);
+      if (null != zip64) {
+        if (size == UNKNOWN_32 && zip64.remaining() >= 8)
+          size = zip64.getLong();
+        if (compressedSize == UNKNOWN_32 && zip64.remaining() >= 8)
+          compressedSize = zip64.getLong();
+        if (localHeaderOffset == UNKNOWN_32 && zip64.remaining() >= 8)
+          localHeaderOffset = zip64.getLong();
+      }
+
+      entries.add(new Entry(name, u16(cd, p + 8), u16(cd, p + 10), u32(cd, p + 16), compressedSize, size,
+          localHeaderOffset + shift, extra));
+      p = next;
+    }
+    return entries;
+  }
+
+  private static boolean isZip64Record(final SeekableInputStream sis, final long offset) throws IOException {
+    return offset >= 0 && read(sis, offset, 4).getInt(0) == ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE;
+  }
+
+  /**
+   * Scan the next local file header. The end of entries without sizes in the local header is found
+   * through their data descriptor; if it has no signature, they must be deflated and are inflated.
+   *
+   * @return <code>false</code> if there are no more entries
+   */
+  private boolean scanNext() throws IOException {
+    if (scanOffset < 0)
+      return false;
+
+    final long offset = scanOffset;
+    scanOffset = -1;
+    final ByteBuffer h = read(sis, offset, LOCAL_FILE_HEADER_LENGTH);
+    if (h.limit() < LOCAL_FILE_HEADER_LENGTH || h.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE)
+      return false; // central directory, trailing garbage or truncated archive
+
+    final int flags = u16(h, 6);
+    final int method = u16(h, 8);
+    final int nameLength = u16(h, 26);
+    final int extraLength = u16(h, 28);
+    final ByteBuffer variable = read(sis, offset + LOCAL_FILE_HEADER_LENGTH, nameLength + extraLength);
+    if (variable.limit() < nameLength + extraLength)
+      return false; // truncated archive
+    final String name = string(variable, 0, nameLength);
+    final byte[] extra = new byte[extraLength];
+    variable.get(nameLength, extra);
+
+    long crc = u32(h, 14);
+    long compressedSize = u32(h, 18);
+    long size = u32(h, 22);
+    final ByteBuffer zip64 = extraField(extra, ZIP64_EXTRA_FIELD);
+    if (null != zip64 && zip64.remaining() >= 16) {
+      size = zip64.getLong();
+      compressedSize = zip64.getLong();
+    }
+
+    final long dataOffset = offset + LOCAL_FILE_HEADER_LENGTH + nameLength + extraLength;
+    long next;
+    final long[] descriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0
+        ? findDataDescriptor(dataOffset, null != zip64)
+        : null;
+    if (null != descriptor) {
+      compressedSize = descriptor[0];
+      size = descriptor[1];
+      crc = descriptor[2];
+      next = dataOffset + compressedSize + descriptor[3];
+    } else if ((flags & FLAG_DATA_DESCRIPTOR) != 0) {
+      if (method != DEFLATED || (flags & FLAG_ENCRYPTED) != 0) {
+        // the end of the entry can't be determined, hence neither the following entries
+        LOGGER.debug("Can't determine the size of entry {} without a central directory", name);
+        scanned = new Entry(name, flags, method, crc, -1, -1, offset, extra);
+        add(scanned);
+        return true;
+      }
+      // the data descriptor has no signature, find the end of the data by inflating it
+      final long[] sizes = inflatedSizes(sis, dataOffset);
+      compressedSize = sizes[0];
+      size = sizes[1];
+      next = dataOffset + compressedSize;
+      final ByteBuffer crcBuffer = read(sis, next, 4);
+      if (crcBuffer.limit() == 4)
+        crc = u32(crcBuffer, 0);
+      next += 4 + (null != zip64 ? 16 : 8);
+    } else {
+      next = dataOffset + compressedSize;
+    }
+
+    final Entry entry = new Entry(name, flags, method, crc, compressedSize, size, offset, extra);
+    entry.dataOffset = dataOffset;
+    scanned = entry;
+    add(entry);
+    scanOffset = next;
+    return true;
+  }
+
+  /**
+   * Search the data descriptor following the data starting at the given offset, i.e. a data
+   * descriptor signature followed by a compressed size matching its distance from the start of the
+   * data. Unlike inflating the data, this works for any compression method and encryption.
+   *
+   * @param zip64 whether the sizes in the descriptor take 8 bytes each
+   * @return the compressed size, uncompressed size, CRC and length of the descriptor or
+   *         <code>null</code> if there is no descriptor with a signature
+   */
+  private long[] findDataDescriptor(final long offset, final boolean zip64) throws IOException {
+    if (noDescriptorFrom >= 0 && offset >= noDescriptorFrom)
+      return null;
+
+    final int descriptorLength = zip64 ? 24 : 16;
+    final byte[] chunk = new byte[TRANSFER_SIZE];
+    final ByteBuffer b = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+    long chunkOffset = offset;
+    long lastSignature = -1;
+    while (true) {
+      final int length = read(sis, chunkOffset, chunk, chunk.length);
+      for (int i = 0; i <= length - 4; i++) {
+        if (b.getInt(i) != DATA_DESCRIPTOR_SIGNATURE)
+          continue;
+        lastSignature = chunkOffset + i;
+        final ByteBuffer d = i + descriptorLength <= length
+            ? b.slice(i, descriptorLength).order(ByteOrder.LITTLE_ENDIAN)
+            : read(sis, chunkOffset + i, descriptorLength);
+        if (d.limit() < descriptorLength)
+          return null; // truncated archive
+        final long compressedSize = zip64 ? d.getLong(8) : u32(d, 8);
+        if (compressedSize == chunkOffset + i - offset)
+          return new long[]{
+              compressedSize, zip64 ? d.getLong(16) : u32(d, 12), u32(d, 4), descriptorLength
+          };
+      }
+      if (length < chunk.length) {
+        // later entries need not search beyond the last signature
+        noDescriptorFrom = lastSignature < 0 ? offset : lastSignature + 4;
+        return null;
+      }
+      // a signature may span the chunks
+      chunkOffset += length - 3;
+    }
+  }
+
+  /**
+   * Inflate the deflated data starting at the given offset.
+   *
+   * @return the compressed and uncompressed sizes
+   */
+  private static long[] inflatedSizes(final SeekableInputStream sis, final long offset) throws IOException {
+    final Inflater inflater = new Inflater(true);
+    try {
+      final byte[] in = new byte[TRANSFER_SIZE];
+      final byte[] out = new byte[TRANSFER_SIZE];
+      long consumed = 0;
+      sis.seek(offset);
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          final int read = sis.read(in, 0, in.length);
+          if (read < 0)
+            throw new EOFException("Unexpected end of deflated data");
+          consumed += read;
+          inflater.setInput(in, 0, read);
+        }
+        if (inflater.inflate(out) == 0 && inflater.needsDictionary())
+          throw new ZipException("Deflated data requires a dictionary");
+      }
+      return new long[]{
+          consumed - inflater.getRemaining(), inflater.getBytesWritten()
+      };
+    } catch (DataFormatException e) {
+      throw new ZipException("Invalid deflated data: " + e.getMessage());
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Find a field within an extra field block.
+   *
+   * @return the data of the field or <code>null</code> if there is no such field
+   */
+  static ByteBuffer extraField(final byte[] extra, final int id) {
+    final ByteBuffer b = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+    int p = 0;
+    while (p + 4 <= extra.length) {
+      final int length = u16(b, p + 2);
+      if (p + 4 + length > extra.length)
+        break;
+      if (u16(b, p) == id)
+        return b.slice(p + 4, length).order(ByteOrder.LITTLE_ENDIAN);
+      p += 4 + length;
+    }
+    return null;
+  }
+
+  /**
+   * Read up to the given number of bytes at the given offset.
+   *
+   * @return a little-endian buffer with the bytes, limited to those actually available
+   */
+  private static ByteBuffer read(final SeekableInputStream sis, final long offset, final int length)
+      throws IOException {
+    final byte[] b = new byte[length];
+    final int read = read(sis, offset, b, length);
+    return ByteBuffer.wrap(b, 0, read).slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Read up to the given number of bytes at the given offset into the given array.
+   *
+   * @return the number of bytes actually available
+   */
+  private static int read(final SeekableInputStream sis, final long offset, final byte[] b, final int length)
+      throws IOException {
+    sis.seek(offset);
+    int read = 0;
+    while (read < length) {
+      final int r = sis.read(b, read, length - read);
+      if (r < 0)
+        break;
+      read += r;
+    }
+    return read;
+  }
+
+  private static int u16(final ByteBuffer b, final int index) {
+    return b.getShort(index) & 0xffff;
+  }
+
+  private static long u32(final ByteBuffer b, final int index) {
+    return b.getInt(index) & 0xffffffffL;
+  }
+
+  private static String string(final ByteBuffer b, final int index, final int length) {
+    final byte[] bytes = new byte[length];
+    b.get(index, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads a range of the underlying stream, seeking before each read.
+   */
+  private static final class EntryDataStream extends InputStream {
+    private final SeekableInputStream sis;
+    private long position;
+    private final long end;
+
+    EntryDataStream(final SeekableInputStream sis, final long offset, final long length) {
+      this.sis = sis;
+      this.position = offset;
+      this.end = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (position >= end)
+        return -1;
+      sis.seek(position);
+      final int b = sis.read();
+      if (b >= 0)
+        position++;
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0)
+        return 0;
+      if (position >= end)
+        return -1;
+      sis.seek(position);
+      final int read = sis.read(b, off, (int) Math.min(len, end - position));
+      if (read > 0)
+        position += read;
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+  }
+
+  /**
+   * Inflates raw deflated data. Unlike the {@link java.util.zip.InflaterInputStream} it releases the
+   * inflater as soon as the data has been inflated completely.
+   */
+  private static final class InflatingStream extends InputStream {
+    private final InputStream in;
+    private final byte[] buffer = new byte[TRANSFER_SIZE];
+    private Inflater inflater = new Inflater(true);
+    private final byte[] single = new byte[1];
+
+    InflatingStream(final InputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return read(single, 0, 1) > 0 ? single[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0)
+        return 0;
+      if (null == inflater)
+        return -1;
+      try {
+        while (true) {
+          final int n = inflater.inflate(b, off, len);
+          if (n > 0)
+            return n;
+          if (inflater.finished()) {
+            close();
+            return -1;
+          }
+          if (inflater.needsDictionary())
+            throw new ZipException("Deflated data requires a dictionary");
+          final int read = in.read(buffer, 0, buffer.length);
+          if (read < 0)
+            throw new EOFException("Unexpected end of deflated data");
+          inflater.setInput(buffer, 0, read);
+        }
+      } catch (DataFormatException e) {
+        throw new ZipException("Invalid deflated data: " + e.getMessage());
+      }
+    }
+
+    @Override
+    public void close() {
+      if (null != inflater) {
+        inflater.end();
+        inflater = null;
+      }
+    }
+  }
+
+  /**
+   * Verifies the size and CRC of the uncompressed data at its end.
+   */
+  private static final class CheckedEntryStream extends InputStream {
+    private final InputStream in;
+    private final Entry entry;
+    private final CRC32 crc = new CRC32();
+    private final byte[] single = new byte[1];
+    private long size;
+
+    CheckedEntryStream(final InputStream in, final Entry entry) {
+      this.in = in;
+      this.entry = entry;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return read(single, 0, 1) > 0 ? single[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      final int read = in.read(b, off, len);
+      if (read > 0) {
+        crc.update(b, off, read);
+        size += read;
+      } else if (read < 0 && (size != entry.getSize() || crc.getValue() != entry.getCrc())) {
+        throw new ZipException("Invalid size or CRC of entry " + entry.getName());
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -19,7 +19,13 @@ public class ZipUtil {
     // utility class
   }
 
-  /** Caller must close the returned {@link ZipFile} so the temporary ZIP file can be deleted. */
+  /**
+   * Caller must close the returned {@link ZipFile} so the temporary ZIP file can be deleted.
+   *
+   * @deprecated copies the whole stream to a temporary file; use {@link ZipArchive#open(SeekableInputStream)},
+   *             which reads the archive in place
+   */
+  @Deprecated
   public static ZipFile createZipFile(SeekableInputStream sis) throws IOException {
     final long fp = sis.getStreamPosition();
     final Path baseDir = TEMP_DIRECTORY.toPath();
@@ -0,0 +1,193 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.database.CompiledDatabase;
+import org.jadice.filetype.database.CompiledDatabase.Statistics;
+import org.jadice.filetype.database.Database;
+import org.jadice.filetype.database.DatabaseLoader;
+import org.jadice.filetype.database.DescriptionAction;
+import org.jadice.filetype.database.MimeTypeAction;
+import org.jadice.filetype.io.MemoryInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies that adaptive sibling ordering moves frequently matched types ahead of mutually
+ * exclusive siblings only, so that the results never change.
+ */
+class TestAdaptiveOrdering {
+
+  /**
+   * <code>a</code> and <code>b</code> overlap: both match "ABZ". <code>c</code> excludes both.
+   */
+  private static final String DATABASE = "<magic>" //
+      + "<type><match-byte offset=\"1\">0x42</match-byte><match-byte offset=\"2\">0x5a</match-byte>"
+      + "<mime-type>x-test/a</mime-type></type>" //
+      + "<type><match-string offset=\"0\">AB</match-string><mime-type>x-test/b</mime-type></type>" //
+      + "<type><match-string offset=\"0\">CD</match-string><mime-type>x-test/c</mime-type></type>" //
+      + "</magic>";
+
+  @Test
+  void testExclusiveSiblingsAreReordered() throws Exception {
+    final Analyzer analyzer = new Analyzer(CompiledDatabase.compile(load(), Duration.ofDays(1)));
+    final CompiledDatabase db = analyzer.getCompiledDatabase();
+    assertTrue(db.isAdaptive());
+
+    for (int i = 0; i < 10; i++) {
+      analyze(analyzer, "CD");
+      analyze(analyzer, "CD");
+      analyze(analyzer, "AB_");
+    }
+    assertEquals("[x-test/a[0]: 0, x-test/b[1]: 10, x-test/c[2]: 20]", db.getStatistics().getChildren().toString());
+
+    db.reorder();
+
+    // b is more frequent than a, but must not overtake it
+    assertEquals("[x-test/c[2]: 20, x-test/a[0]: 0, x-test/b[1]: 10]", db.getStatistics().getChildren().toString());
+    assertEquals("x-test/a", analyze(analyzer, "ABZ"));
+    assertEquals("x-test/b", analyze(analyzer, "AB_"));
+    assertEquals("x-test/c", analyze(analyzer, "CDZ"));
+  }
+
+  @Test
+  void testPeriodicReorder() throws Exception {
+    final CompiledDatabase db = CompiledDatabase.compile(load(), Duration.ofNanos(1));
+    final Analyzer analyzer = new Analyzer(db);
+
+    analyze(analyzer, "CD");
+    analyze(analyzer, "CD");
+    assertEquals("x-test/c", db.getStatistics().getChildren().get(0).getLabel());
+  }
+
+  @Test
+  void testStaticDatabaseIsNotCounted() throws Exception {
+    final CompiledDatabase db = CompiledDatabase.compile(load(), null);
+    final Analyzer analyzer = new Analyzer(db);
+    assertFalse(db.isAdaptive());
+
+    analyze(analyzer, "CD");
+    db.reorder();
+    assertEquals("[x-test/a[0]: 0, x-test/b[1]: 0, x-test/c[2]: 0]", db.getStatistics().getChildren().toString());
+  }
+
+  @Test
+  void testConcurrentCounting() throws Exception {
+    final CompiledDatabase db = CompiledDatabase.compile(load(), Duration.ofNanos(1));
+    final Analyzer analyzer = new Analyzer(db);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 1000; i++) {
+            assertEquals("x-test/a", analyze(analyzer, "ABZ"));
+            assertEquals("x-test/c", analyze(analyzer, "CD"));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    long total = 0;
+    for (Statistics s : db.getStatistics().getChildren()) {
+      total += s.getHits();
+    }
+    assertEquals(16000, total);
+  }
+
+  @Test
+  void testAsyncAnalysisIsCountedOnce(@TempDir final Path tmp) throws Exception {
+    // the first type reads beyond the first page, so that the asynchronous analysis needs two
+    // rounds, both of which match c
+    final String database = DATABASE.replace("<magic>",
+        "<magic><type><match-string offset=\"200000\">XY</match-string><mime-type>x-test/far</mime-type></type>");
+    final CompiledDatabase db = CompiledDatabase.compile(
+        DatabaseLoader.load(new ByteArrayInputStream(database.getBytes(StandardCharsets.UTF_8))), Duration.ofDays(1));
+    final Analyzer analyzer = new Analyzer(db);
+
+    final byte[] data = new byte[300000];
+    data[0] = 'C';
+    data[1] = 'D';
+    final Path file = Files.write(tmp.resolve("cd.bin"), data);
+    assertEquals("x-test/c", analyzer.analyzeAsync(file).get().get(MimeTypeAction.KEY));
+    assertEquals("[x-test/far[0]: 0, x-test/a[1]: 0, x-test/b[2]: 0, x-test/c[3]: 1]",
+        db.getStatistics().getChildren().toString());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "/magic.xml", "/magic-all.xml"
+  })
+  void testSameResultsAfterTraining(final String database) throws Exception {
+    final Database db;
+    try (InputStream is = getClass().getResourceAsStream(database)) {
+      db = DatabaseLoader.load(is);
+    }
+    final Analyzer reference = new Analyzer(CompiledDatabase.compile(db, null));
+    final Analyzer adaptive = new Analyzer(CompiledDatabase.compile(db, Duration.ofDays(1)));
+
+    // train with the test files in reverse order, biased towards the last ones
+    final List<Path> files = testFiles();
+    for (int i = files.size() - 1; i >= 0; i--) {
+      for (int n = 0; n <= i * 3 / files.size(); n++) {
+        analyzeFile(adaptive, files.get(i));
+      }
+    }
+    adaptive.getCompiledDatabase().reorder();
+
+    for (Path file : files) {
+      assertEquals(analyzeFile(reference, file), analyzeFile(adaptive, file), file.toString());
+    }
+  }
+
+  private static Database load() throws Exception {
+    return DatabaseLoader.load(new ByteArrayInputStream(DATABASE.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String analyze(final Analyzer analyzer, final String data) throws IOException {
+    return (String) analyzer.analyze(new MemoryInputStream(data.getBytes(StandardCharsets.US_ASCII))).get(
+        MimeTypeAction.KEY);
+  }
+
+  private static Map<String, Object> analyzeFile(final Analyzer analyzer, final Path file) throws IOException {
+    final Map<String, Object> result = analyzer.analyze(file.toFile());
+    final Object desc = result.get(DescriptionAction.KEY);
+    if (desc instanceof DescriptionAction.Description) {
+      result.put(DescriptionAction.KEY, desc.toString());
+    }
+    return result;
+  }
+
+  private static List<Path> testFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(new File("src/test/resources").toPath())) {
+      return new ArrayList<>(files.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+    }
+  }
+}
@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.AnalyzerException;
+import org.jadice.filetype.database.DescriptionAction;
+import org.jadice.filetype.database.ExtensionAction;
+import org.jadice.filetype.database.MimeTypeAction;
+import org.jadice.filetype.matchers.AhoCorasick;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class TestAhoCorasick {
+
+  private static final String DATABASE = "<magic>" //
+      + "<type><match-string offset='0'>GIF87a</match-string><mime-type>image/gif</mime-type></type>" //
+      + "<type><match-string offset='0'>GIF89a</match-string><mime-type>image/gif</mime-type></type>" //
+      + "<type><match-string offset='2' range='10'>needle</match-string><mime-type>text/needle</mime-type></type>" //
+      + "<type><match-string offset='0' range='20'>hay</match-string><mime-type>text/hay</mime-type></type>" //
+      + "</magic>";
+
+  private static Analyzer analyzer;
+
+  private static Analyzer magic;
+
+  @BeforeAll
+  public static void createAnalyzer() throws AnalyzerException {
+    analyzer = Analyzer.getInstance(new ByteArrayInputStream(DATABASE.getBytes(StandardCharsets.UTF_8)));
+    magic = Analyzer.getInstance("/magic.xml");
+  }
+
+  @Test
+  void testSearchReportsAllOccurrences() {
+    final AhoCorasick ac = new AhoCorasick(bytes("he"), bytes("she"), bytes("his"), bytes("hers"));
+    final List<String> found = new ArrayList<>();
+    ac.search(bytes("ushers"), 0, 6, (p, start) -> found.add(p + "@" + start));
+
+    assertEquals(List.of("1@1", "0@2", "3@2"), found);
+    assertEquals(1, ac.indexOf(bytes("ahisb"), 0, 5));
+    assertEquals(-1, ac.indexOf(bytes("ahisb"), 0, 3));
+  }
+
+  @Test
+  void testMatchAtIsAnchored() {
+    final AhoCorasick ac = new AhoCorasick(bytes("GIF87a"), bytes("GIF89a"), bytes("GI"));
+    final List<Integer> found = new ArrayList<>();
+    ac.matchAt(bytes("xGIF89a"), 1, 7, (p, start) -> found.add(p));
+    assertEquals(List.of(2, 1), found);
+
+    found.clear();
+    ac.matchAt(bytes("xGIF89a"), 0, 7, (p, start) -> found.add(p));
+    assertEquals(List.of(), found);
+
+    // truncated data cannot rule out the longer patterns
+    found.clear();
+    ac.matchAt(bytes("GIF8"), 0, 4, (p, start) -> found.add(p));
+    assertEquals(List.of(2, 0, 1), found);
+  }
+
+  @Test
+  void testEmptyPatternIsRejected() {
+    assertThrows(IllegalArgumentException.class, () -> new AhoCorasick(bytes("a"), new byte[0]));
+  }
+
+  @Test
+  void testRangeSearch() throws IOException {
+    assertEquals("image/gif", analyze("GIF89a needle"));
+    assertEquals("text/needle", analyze("xx needle"));
+    assertEquals("text/needle", analyze("0123needle"));
+    // must lie within offset 2..12
+    assertEquals("text/hay", analyze("0123456needle hay"));
+    assertEquals("text/hay", analyze("needle hay"));
+    assertNull(analyze("0123456789012345678hay"));
+    assertNull(analyze("ha"));
+  }
+
+  /**
+   * The bundled databases search these markers within a range. As with the regular expressions
+   * they replaced, which were compiled with DOTALL, line terminators around a marker don't matter.
+   */
+  @Test
+  void testLineTerminatorsAroundMarkers() throws IOException {
+    Map<String, Object> result = magic.analyze(stream("\r\n%!PS-Adobe-3.0\r\n%%Title: test\r\n"));
+    assertEquals("application/postscript", result.get(MimeTypeAction.KEY));
+    assertEquals("Adobe PostScript data, Level 3", String.valueOf(result.get(DescriptionAction.KEY)));
+
+    result = magic.analyze(stream("\r\n%!PS-Adobe-2.0 EPSF-2.0\r\n%%BoundingBox: 0 0 1 1\r\n"));
+    assertEquals("eps", result.get(ExtensionAction.KEY));
+
+    result = magic.analyze(stream("<?xml version=\"1.0\"?>\r\n<VisioDocument xmlns=\"urn:test\">\r\n</VisioDocument>"));
+    assertEquals("application/msvisio", result.get(MimeTypeAction.KEY));
+  }
+
+  private static ByteArrayInputStream stream(final String data) {
+    return new ByteArrayInputStream(bytes(data));
+  }
+
+  private static Object analyze(final String data) throws IOException {
+    return analyzer.analyze(new ByteArrayInputStream(bytes(data))).get(MimeTypeAction.KEY);
+  }
+
+  private static byte[] bytes(final String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -1,15 +1,24 @@
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import org.jadice.filetype.Analyzer;
 import org.jadice.filetype.AnalyzerException;
+import org.jadice.filetype.Context;
 import org.jadice.filetype.database.MimeTypeAction;
+import org.jadice.filetype.io.RandomAccessFileInputStream;
+import org.jadice.filetype.io.SeekableInputStream;
+import org.jadice.filetype.matchers.EncryptedZIPMatcher;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -40,6 +49,39 @@ class TestArchives {
     }
   }
 
+  @Test
+  void testArchiveStreams() throws IOException {
+    // the length of plain streams is unknown, so the local file headers are scanned
+    for (File f : nullSafe(INPUT_FOLDER.listFiles())) {
+      try (InputStream is = new FileInputStream(f)) {
+        final Map<String, Object> result = analyzer.analyze(is);
+        assertNotNull(result, f + " could not be analyzed");
+        assertEquals(expectedMimeTypes.get(f.getName()), result.get(MimeTypeAction.KEY), f + " is not recognized as archive");
+      }
+    }
+  }
+
+  @Test
+  void testEncryptionDetails() throws IOException {
+    final Map<String, Object> result = analyzer.analyze(new File(INPUT_FOLDER, "encrypted.zip"));
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> details = (Map<String, Object>) result.get(EncryptedZIPMatcher.DETAILS_KEY);
+    assertNotNull(details);
+    assertEquals("test.txt", details.get(EncryptedZIPMatcher.ENCRYPTED_ENTRY_KEY));
+    assertEquals("ZIP_CRYPTO", details.get(EncryptedZIPMatcher.ENCRYPTION_METHOD_KEY));
+
+    assertNull(analyzer.analyze(new File(INPUT_FOLDER, "unencrypted.zip")).get(EncryptedZIPMatcher.DETAILS_KEY));
+  }
+
+  @Test
+  void testZipArchiveIsShared() throws IOException {
+    try (SeekableInputStream sis = new RandomAccessFileInputStream(new File(INPUT_FOLDER, "unencrypted.zip"))) {
+      final Context context = new Context(sis, new HashMap<>(), null, Locale.getDefault(), null);
+      assertSame(context.getZipArchive(), context.getZipArchive());
+      assertEquals(0, sis.getStreamPosition());
+    }
+  }
+
   @Test
   void testNonArchiveFiles() throws IOException {
     for (File f : nullSafe(INPUT_FOLDER_FALSE_POSITIVE.listFiles())) {
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.AnalyzerException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies that analyzing data held in memory yields the same results as analyzing a stream.
+ */
+class TestBufferAnalysis {
+
+  private static final File INPUT_FOLDER = new File("src/test/resources/various_types");
+
+  private static Analyzer analyzer;
+
+  @BeforeAll
+  public static void createAnalyzer() throws AnalyzerException {
+    analyzer = Analyzer.getInstance("/magic.xml");
+  }
+
+  @Test
+  void testInMemoryData() throws IOException {
+    for (File f : TestArchives.nullSafe(INPUT_FOLDER.listFiles())) {
+      final byte[] data = Files.readAllBytes(f.toPath());
+      final Map<String, Object> expected = analyzer.analyze(new ByteArrayInputStream(data));
+
+      assertEquals(expected, analyzer.analyze(data, 0, data.length), f.getName());
+
+      final byte[] padded = new byte[data.length + 20];
+      System.arraycopy(data, 0, padded, 7, data.length);
+      assertEquals(expected, analyzer.analyze(padded, 7, data.length), f.getName());
+
+      final ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+      direct.put(data).flip();
+      assertEquals(expected, analyzer.analyze(direct), f.getName());
+      assertEquals(0, direct.position());
+    }
+  }
+}
@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.Context;
+import org.jadice.filetype.UncloseableSeekableInputStreamWrapper;
+import org.jadice.filetype.database.CompiledDatabase;
+import org.jadice.filetype.database.DatabaseLoader;
+import org.jadice.filetype.database.DescriptionAction;
+import org.jadice.filetype.database.Type;
+import org.jadice.filetype.io.MemoryInputStream;
+import org.jadice.filetype.io.SeekableInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies that the {@link CompiledDatabase} yields exactly the same results as the plain tree walk
+ * of {@link Type#analyze(Context)}.
+ */
+class TestCompiledDatabase {
+
+  private static final int[] PREFIX_LENGTHS = {
+      0, 1, 2, 3, 4, 5, 6, 8, 13, 26, 29, 64, 300, 2081, 2113
+  };
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "/magic.xml", "/magic-all.xml"
+  })
+  void testCompiledMatchesTreeWalk(final String database) throws Exception {
+    final Type type = load(database);
+    final CompiledDatabase compiled = CompiledDatabase.compile(type);
+
+    for (Path file : testFiles()) {
+      final byte[] data = Files.readAllBytes(file);
+      final String extension = Analyzer.getExtension(file.getFileName().toString());
+      assertSameResults(type, compiled, data, extension, file.toString());
+
+      for (int length : PREFIX_LENGTHS) {
+        if (length < data.length) {
+          assertSameResults(type, compiled, Arrays.copyOf(data, length), extension, file + "[0.." + length + "]");
+        }
+      }
+    }
+  }
+
+  @Test
+  void testCheapMatchersFirst() throws Exception {
+    // the range search is evaluated last, the stream position left by the run is restored
+    final Type type = DatabaseLoader.load(new ByteArrayInputStream(("<magic><type>" //
+        + "<match-string offset=\"0\" range=\"64\">needle</match-string>" //
+        + "<match-byte offset=\"1\">0x42</match-byte>" //
+        + "<match-string offset=\"2\">CD</match-string>" //
+        + "<mime-type>x-test/cheap-first</mime-type>" //
+        + "<type><match-string offset=\"4\">EF</match-string><description>child</description></type>" //
+        + "</type></magic>").getBytes(StandardCharsets.UTF_8)));
+    final CompiledDatabase compiled = CompiledDatabase.compile(type);
+
+    for (String data : new String[]{
+        "ABCDEF needle", "ABCDEF", "ABCDXX needle", "AXCDEF needle", "needle"
+    }) {
+      assertSameResults(type, compiled, data.getBytes(StandardCharsets.US_ASCII), null, data);
+    }
+
+    final StringBuilder report = new StringBuilder();
+    compiled.writeCostReport(report);
+    assertTrue(report.toString().contains(
+        "BOUNDED_SCAN    BOUNDED_SCAN      x-test/cheap-first: ByteMatcher@1=HEADER_COMPARE, StringMatcher@2=HEADER_COMPARE, StringMatcher@0=BOUNDED_SCAN"),
+        report.toString());
+    assertTrue(report.toString().contains("HEADER_COMPARE  BOUNDED_SCAN        child: StringMatcher@4=HEADER_COMPARE"),
+        report.toString());
+  }
+
+  private static void assertSameResults(final Type type, final CompiledDatabase compiled, final byte[] data,
+      final String extension, final String name) throws IOException {
+    final Map<String, Object> expected = new HashMap<>();
+    type.analyze(new Context(uncloseable(data), expected, null, Locale.ENGLISH, extension));
+
+    final Map<String, Object> actual = new HashMap<>();
+    compiled.analyze(new Context(uncloseable(data), actual, null, Locale.ENGLISH, extension));
+
+    assertEquals(normalize(expected), normalize(actual), "different results for " + name);
+  }
+
+  private static SeekableInputStream uncloseable(final byte[] data) {
+    // some matchers close the stream, just like during a regular analysis
+    final UncloseableSeekableInputStreamWrapper sis = new UncloseableSeekableInputStreamWrapper(
+        new MemoryInputStream(data));
+    sis.lockClose();
+    return sis;
+  }
+
+  private static Map<String, Object> normalize(final Map<String, Object> result) {
+    final Object desc = result.get(DescriptionAction.KEY);
+    if (desc instanceof DescriptionAction.Description) {
+      result.put(DescriptionAction.KEY, desc.toString());
+    }
+    return result;
+  }
+
+  private static List<Path> testFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(new File("src/test/resources").toPath())) {
+      return new ArrayList<>(files.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+    }
+  }
+
+  private static Type load(final String database) throws JAXBException {
+    final JAXBContext jc = JAXBContext.newInstance("org.jadice.filetype.database:org.jadice.filetype.matchers");
+    return (Type) jc.createUnmarshaller().unmarshal(TestCompiledDatabase.class.getResource(database));
+  }
+}
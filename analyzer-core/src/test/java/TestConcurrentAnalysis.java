@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.database.DescriptionAction;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies that a single {@link Analyzer} yields identical results when shared between many
+ * threads, starting with the very first analysis.
+ */
+class TestConcurrentAnalysis {
+
+  private static final int THREADS = 64;
+
+  @Test
+  void testSharedAnalyzerUnderContention() throws Exception {
+    final List<Path> files = testFiles();
+
+    final Analyzer reference = Analyzer.getInstance("/magic.xml");
+    final Map<Path, Map<String, Object>> expected = new HashMap<>();
+    for (Path file : files) {
+      expected.put(file, analyze(reference, file));
+    }
+
+    // a fresh instance, so that the first analysis happens concurrently
+    final Analyzer shared = Analyzer.getInstance("/magic.xml");
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<Map<Path, Map<String, Object>>>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        final int first = t;
+        futures.add(executor.submit(() -> {
+          start.await();
+          final Map<Path, Map<String, Object>> actual = new HashMap<>();
+          for (int i = 0; i < files.size(); i++) {
+            final Path file = files.get((first + i) % files.size());
+            actual.put(file, analyze(shared, file));
+          }
+          return actual;
+        }));
+      }
+      start.countDown();
+
+      for (Future<Map<Path, Map<String, Object>>> future : futures) {
+        final Map<Path, Map<String, Object>> actual = future.get();
+        for (Path file : files) {
+          assertEquals(expected.get(file), actual.get(file), "different results for " + file);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Map<String, Object> analyze(final Analyzer analyzer, final Path file) throws IOException {
+    final Map<String, Object> result = analyzer.analyze(file.toFile());
+    final Object desc = result.get(DescriptionAction.KEY);
+    if (desc instanceof DescriptionAction.Description) {
+      result.put(DescriptionAction.KEY, desc.toString());
+    }
+    return result;
+  }
+
+  private static List<Path> testFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(new File("src/test/resources").toPath())) {
+      return new ArrayList<>(files.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+    }
+  }
+}
@@ -0,0 +1,100 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLStreamException;
+
+import jakarta.xml.bind.JAXBContext;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.database.Database;
+import org.jadice.filetype.database.DatabaseLoader;
+import org.jadice.filetype.database.MimeTypeAction;
+import org.jadice.filetype.matchers.AhoCorasick;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies that the {@link DatabaseLoader} builds exactly the same type tree as JAXB.
+ */
+class TestDatabaseLoader {
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "/magic.xml", "/magic-all.xml"
+  })
+  void testSameTreeAsJAXB(final String database) throws Exception {
+    final Object expected = JAXBContext.newInstance("org.jadice.filetype.database:org.jadice.filetype.matchers") //
+        .createUnmarshaller().unmarshal(getClass().getResource(database));
+
+    final Database actual;
+    try (InputStream is = getClass().getResourceAsStream(database)) {
+      actual = DatabaseLoader.load(is);
+    }
+
+    assertDeepEquals(expected, actual, "magic");
+  }
+
+  @Test
+  void testUnsupportedConstructsAreRejected() {
+    assertThrows(XMLStreamException.class, () -> load("<magic><type><match-unknown/></type></magic>"));
+    assertThrows(XMLStreamException.class, () -> load("<type><mime-type>a/b</mime-type></type>"));
+    assertThrows(XMLStreamException.class, () -> load("<magic><match-byte offset='x'>1</match-byte></magic>"));
+  }
+
+  @Test
+  void testFallbackToJAXB() throws Exception {
+    // DTDs are not supported by the loader
+    final String xml = "<!DOCTYPE magic [<!ENTITY gif 'GIF8'>]>" //
+        + "<magic><type><match-string offset='0'>&gif;</match-string><mime-type>image/gif</mime-type></type></magic>";
+    final Analyzer analyzer = Analyzer.getInstance(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals("image/gif", analyzer.analyze(new ByteArrayInputStream("GIF89a".getBytes(StandardCharsets.US_ASCII))) //
+        .get(MimeTypeAction.KEY));
+  }
+
+  private static Database load(final String xml) throws XMLStreamException {
+    return DatabaseLoader.load(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static void assertDeepEquals(final Object expected, final Object actual, final String path)
+      throws IllegalAccessException {
+    if (null == expected || null == actual) {
+      assertEquals(expected, actual, path);
+      return;
+    }
+    assertEquals(expected.getClass(), actual.getClass(), path);
+
+    final Class<?> c = expected.getClass();
+    if (c.isArray()) {
+      assertEquals(Array.getLength(expected), Array.getLength(actual), path + ".length");
+      for (int i = 0; i < Array.getLength(expected); i++) {
+        assertDeepEquals(Array.get(expected, i), Array.get(actual, i), path + "[" + i + "]");
+      }
+    } else if (expected instanceof Pattern) {
+      assertEquals(((Pattern) expected).pattern(), ((Pattern) actual).pattern(), path);
+      assertEquals(((Pattern) expected).flags(), ((Pattern) actual).flags(), path);
+    } else if (expected instanceof AhoCorasick) {
+      assertEquals(((AhoCorasick) expected).getPatternCount(), ((AhoCorasick) actual).getPatternCount(), path);
+    } else if (c.getName().startsWith("org.jadice.") && !(expected instanceof Enum)) {
+      for (Class<?> k = c; k != Object.class; k = k.getSuperclass()) {
+        for (Field f : k.getDeclaredFields()) {
+          if (!Modifier.isStatic(f.getModifiers())) {
+            f.setAccessible(true);
+            assertDeepEquals(f.get(expected), f.get(actual), path + "." + f.getName());
+          }
+        }
+      }
+    } else {
+      assertEquals(expected, actual, path);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.AnalyzerException;
+import org.jadice.filetype.database.Database;
+import org.jadice.filetype.database.DatabaseLoader;
+import org.jadice.filetype.database.DatabaseSnapshot;
+import org.jadice.filetype.database.DescriptionAction;
+import org.jadice.filetype.matchers.AhoCorasick;
+import org.jadice.filetype.matchers.StringMatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies that a {@link DatabaseSnapshot} round-trips its XML source: the loaded type tree and all
+ * analysis results must be identical.
+ */
+class TestDatabaseSnapshot {
+
+  @TempDir
+  Path tmp;
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "/magic.xml", "/magic-all.xml"
+  })
+  void testSameTreeAsXML(final String database) throws Exception {
+    final Database expected;
+    try (InputStream is = getClass().getResourceAsStream(database)) {
+      expected = DatabaseLoader.load(is);
+    }
+
+    final byte[] snapshot = snapshot(database);
+    assertTrue(DatabaseSnapshot.isSnapshot(ByteBuffer.wrap(snapshot)));
+
+    assertDeepEquals(expected, DatabaseSnapshot.load(ByteBuffer.wrap(snapshot)), "magic");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "/magic.xml", "/magic-all.xml"
+  })
+  void testSameResultsAsXML(final String database) throws Exception {
+    final Path file = tmp.resolve("magic.snapshot");
+    Files.write(file, snapshot(database));
+
+    final Analyzer xml = Analyzer.getInstance(database);
+    final Analyzer mapped = Analyzer.getInstance(file);
+    final Analyzer streamed = Analyzer.getInstance(new ByteArrayInputStream(Files.readAllBytes(file)));
+
+    for (Path f : testFiles()) {
+      final Map<String, Object> expected = analyze(xml, f);
+      assertEquals(expected, analyze(mapped, f), f.toString());
+      assertEquals(expected, analyze(streamed, f), f.toString());
+    }
+  }
+
+  @Test
+  void testXMLViaPath() throws Exception {
+    final Path file = tmp.resolve("magic.xml");
+    try (InputStream is = getClass().getResourceAsStream("/magic.xml")) {
+      Files.copy(is, file);
+    }
+
+    final Path gif = new File("src/test/resources/various_types/Clocks.gif").toPath();
+    assertEquals(analyze(Analyzer.getInstance("/magic.xml"), gif), analyze(Analyzer.getInstance(file), gif));
+  }
+
+  @Test
+  void testVersionMismatchIsRejected() throws Exception {
+    final byte[] snapshot = snapshot("/magic.xml");
+    ByteBuffer.wrap(snapshot).putInt(4, DatabaseSnapshot.VERSION + 1);
+
+    final IOException e = assertThrows(IOException.class, () -> DatabaseSnapshot.load(ByteBuffer.wrap(snapshot)));
+    assertTrue(e.getMessage().contains("version"), e.getMessage());
+
+    final Path file = tmp.resolve("old.snapshot");
+    Files.write(file, snapshot);
+    assertThrows(AnalyzerException.class, () -> Analyzer.getInstance(file));
+    assertThrows(AnalyzerException.class, () -> Analyzer.getInstance(file.toFile()));
+  }
+
+  @Test
+  void testCorruptSnapshotIsRejected() throws Exception {
+    final byte[] snapshot = snapshot("/magic.xml");
+
+    assertThrows(IOException.class,
+        () -> DatabaseSnapshot.load(ByteBuffer.wrap(snapshot, 0, snapshot.length / 2)));
+    assertThrows(IOException.class, () -> DatabaseSnapshot.load(ByteBuffer.wrap(new byte[]{
+        'J', 'F', 'T', 'D'
+    })));
+    assertFalse(DatabaseSnapshot.isSnapshot(ByteBuffer.wrap("<magic/>".getBytes())));
+  }
+
+  private static byte[] snapshot(final String database) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream is = TestDatabaseSnapshot.class.getResourceAsStream(database)) {
+      DatabaseSnapshot.write(is, out);
+    }
+    return out.toByteArray();
+  }
+
+  private static Map<String, Object> analyze(final Analyzer analyzer, final Path file) throws IOException {
+    final Map<String, Object> result = analyzer.analyze(file.toFile());
+    final Object desc = result.get(DescriptionAction.KEY);
+    if (desc instanceof DescriptionAction.Description) {
+      result.put(DescriptionAction.KEY, desc.toString());
+    }
+    return result;
+  }
+
+  private static List<Path> testFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(new File("src/test/resources").toPath())) {
+      return new ArrayList<>(files.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+    }
+  }
+
+  /**
+   * Snapshots store the bytes of string patterns, not the escaped pattern and encoding they are
+   * parsed from.
+   */
+  private static boolean isSourceForm(final Field f) {
+    return f.getDeclaringClass() == StringMatcher.class
+        && ("patternString".equals(f.getName()) || "encoding".equals(f.getName()));
+  }
+
+  private static void assertDeepEquals(final Object expected, final Object actual, final String path)
+      throws IllegalAccessException {
+    if (null == expected || null == actual) {
+      assertEquals(expected, actual, path);
+      return;
+    }
+    assertEquals(expected.getClass(), actual.getClass(), path);
+
+    final Class<?> c = expected.getClass();
+    if (c.isArray()) {
+      assertEquals(Array.getLength(expected), Array.getLength(actual), path + ".length");
+      for (int i = 0; i < Array.getLength(expected); i++) {
+        assertDeepEquals(Array.get(expected, i), Array.get(actual, i), path + "[" + i + "]");
+      }
+    } else if (expected instanceof Pattern) {
+      assertEquals(((Pattern) expected).pattern(), ((Pattern) actual).pattern(), path);
+      assertEquals(((Pattern) expected).flags(), ((Pattern) actual).flags(), path);
+    } else if (expected instanceof AhoCorasick) {
+      assertEquals(((AhoCorasick) expected).getPatternCount(), ((AhoCorasick) actual).getPatternCount(), path);
+    } else if (c.getName().startsWith("org.jadice.") && !(expected instanceof Enum)) {
+      for (Class<?> k = c; k != Object.class; k = k.getSuperclass()) {
+        for (Field f : k.getDeclaredFields()) {
+          if (!Modifier.isStatic(f.getModifiers()) && !isSourceForm(f)) {
+            f.setAccessible(true);
+            assertDeepEquals(f.get(expected), f.get(actual), path + "." + f.getName());
+          }
+        }
+      }
+    } else {
+      assertEquals(expected, actual, path);
+    }
+  }
+}
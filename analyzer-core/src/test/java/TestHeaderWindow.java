@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.AnalyzerException;
+import org.jadice.filetype.database.MimeTypeAction;
+import org.jadice.filetype.io.MemoryInputStream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * Verifies that fixed-offset matchers are evaluated against the prefetched header window instead of
+ * reading from the stream byte by byte.
+ */
+class TestHeaderWindow {
+
+  private static Analyzer analyzer;
+
+  @BeforeAll
+  public static void createAnalyzer() throws AnalyzerException {
+    analyzer = Analyzer.getInstance("/magic.xml");
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "Clocks.gif, image/gif", //
+      "test.png, image/png", //
+      "g3-2d-byteswapped.tif, image/tiff"
+  })
+  void testNoSingleByteReadsWithinHeader(final String name, final String mimeType) throws IOException {
+    final CountingInputStream sis = new CountingInputStream(
+        Files.readAllBytes(new File("src/test/resources/various_types", name).toPath()));
+
+    final Map<String, Object> result = analyzer.analyze(sis);
+
+    assertEquals(mimeType, result.get(MimeTypeAction.KEY));
+    assertTrue(sis.bulkReads > 0, "header has not been prefetched");
+    assertEquals(0, sis.singleByteReads, "single byte reads within the header window");
+  }
+
+  private static class CountingInputStream extends MemoryInputStream {
+    private int singleByteReads;
+    private int bulkReads;
+
+    CountingInputStream(final byte[] data) {
+      super(data);
+    }
+
+    /**
+     * Hide the wrapped array, so that the header window is read from the stream.
+     */
+    @Override
+    public ByteBuffer getBackingBuffer() {
+      return null;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (getStreamPosition() < 256) {
+        singleByteReads++;
+      }
+      return super.read();
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      bulkReads++;
+      return super.read(b, off, len);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.AnalyzerException;
+import org.jadice.filetype.Benchmark;
+import org.jadice.filetype.database.MimeTypeAction;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * Verifies that analyzing multi-GB files works and needs no more memory than analyzing small ones,
+ * using sparse files which don't occupy the space on disk. As file systems without support for
+ * sparse files would write 5 GB, this runs only with the {@link Benchmark benchmarks}.
+ */
+@Benchmark
+class TestLargeFileAnalysis {
+
+  private static final File INPUT_FOLDER = new File("src/test/resources/various_types");
+
+  private static Analyzer analyzer;
+
+  @TempDir
+  Path tmp;
+
+  @BeforeAll
+  public static void createAnalyzer() throws AnalyzerException {
+    analyzer = Analyzer.getInstance("/magic.xml");
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "test.png, image/png", //
+      "Clocks.gif, image/gif", //
+      "g3-2d-byteswapped.tif, image/tiff"
+  })
+  void testMemoryStaysFlat(final String name, final String mimeType) throws IOException {
+    final byte[] data = Files.readAllBytes(new File(INPUT_FOLDER, name).toPath());
+    final Path small = sparse(data, 16L << 20);
+    final Path large = sparse(data, 5L << 30);
+
+    // warm up
+    analyzer.analyze(small.toFile());
+
+    final long smallAllocation = allocation(small, mimeType);
+    final long largeAllocation = allocation(large, mimeType);
+    assertTrue(largeAllocation < 2 * smallAllocation + (1 << 20),
+        "allocated " + largeAllocation + " bytes for the large file vs. " + smallAllocation + " for the small one");
+
+    assertEquals(mimeType, analyzer.analyze(large).get(MimeTypeAction.KEY));
+    assertEquals(mimeType, analyzer.analyzeAsync(large).join().get(MimeTypeAction.KEY));
+  }
+
+  private static long allocation(final Path file, final String mimeType) throws IOException {
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long before = threads.getCurrentThreadAllocatedBytes();
+    final Map<String, Object> result = analyzer.analyze(file.toFile());
+    final long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+    assertEquals(mimeType, result.get(MimeTypeAction.KEY));
+    return allocated;
+  }
+
+  /**
+   * @return a sparse file of the given size starting with the given data
+   */
+  private Path sparse(final byte[] data, final long size) throws IOException {
+    final Path file = Files.createTempFile(tmp, "large-", ".bin");
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(size);
+      raf.write(data);
+    }
+    return file;
+  }
+}
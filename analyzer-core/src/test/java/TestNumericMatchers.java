@@ -0,0 +1,169 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.Benchmark;
+import org.jadice.filetype.Context;
+import org.jadice.filetype.database.DescriptionAction;
+import org.jadice.filetype.database.MimeTypeAction;
+import org.jadice.filetype.io.MemoryInputStream;
+import org.jadice.filetype.matchers.Matcher;
+import org.jadice.filetype.matchers.MatcherFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests the numeric matchers on the header window as well as on the stream, and verifies that
+ * numeric matching doesn't allocate.
+ */
+class TestNumericMatchers {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TestNumericMatchers.class);
+
+  private static final int ITERATIONS = 100000;
+
+  private static final byte[] DATA = {
+      0x00, 0x00, 0x01, (byte) 0xb3, (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe
+  };
+
+  @ParameterizedTest
+  @CsvSource(delimiter = '|', value = {
+      "match-byte  | offset=3                               | 0xb3       | true", //
+      "match-byte  | offset=3 comparison=>                  | 0          | false", //
+      "match-byte  | offset=3 unsigned=true comparison=<    | 0          | true", //
+      "match-short | offset=2 order=be                      | 0x1b3      | true", //
+      "match-short | offset=2 order=le                      | 0xb301     | false", //
+      "match-short | offset=2 order=le unsigned=true        | 0xb301     | true", //
+      "match-long  | offset=0 order=be                      | 0x1b3      | true", //
+      "match-long  | offset=0 order=le                      | 0xb3010000 | true", //
+      "match-long  | offset=0 order=be                      | 0x1        | false", //
+      "match-long  | offset=0 order=be mask=0xff            | 0xb3       | true", //
+      "match-long  | offset=4 order=be                      | 0xcafebabe | true", //
+      "match-long  | offset=4 order=be comparison=<         | 0          | false", //
+      "match-long  | offset=4 order=be unsigned=true comparison=< | 0     | true", //
+      "match-long  | offset=4 order=le unsigned=true comparison=> | 0xbebafeca | false", //
+      "match-date  | offset=0 order=be                      | 0x1b3      | true", //
+      "match-date  | offset=4 order=le                      | 0xbebafeca | true", //
+      // without a reference value the matchers only extract and never match, not even a zero
+      "match-byte  | offset=0                               | ''         | false", //
+      "match-short | offset=0 order=be                      | ''         | false", //
+      "match-long  | offset=0 order=be mask=0                | ''         | false", //
+      "match-date  | offset=0 order=be unsigned=true comparison=< | ''   | false"
+  })
+  void testMatches(final String element, final String attributes, final String value, final boolean expected)
+      throws Exception {
+    final Matcher matcher = MatcherFactory.create(element, parse(attributes), value);
+
+    final Context header = new Context(new MemoryInputStream(DATA), new HashMap<>(), null, Locale.ROOT, null);
+    header.prefetchHeader(DATA.length);
+    assertEquals(expected, matcher.matches(header), "header window");
+
+    final Context stream = new Context(new MemoryInputStream(DATA), new HashMap<>(), null, Locale.ROOT, null);
+    assertEquals(expected, matcher.matches(stream), "stream");
+  }
+
+  @ParameterizedTest
+  @CsvSource(delimiter = '|', value = {
+      "match-byte  | offset=3 comparison=>                  | 0x10", //
+      "match-short | offset=2 order=le unsigned=true        | 0xb301", //
+      "match-long  | offset=4 order=be unsigned=true comparison=< | 0", //
+      "match-date  | offset=4 order=le                      | 0xbebafeca"
+  })
+  void testNoAllocation(final String element, final String attributes, final String value) throws Exception {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+        .getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    final Matcher matcher = MatcherFactory.create(element, parse(attributes), value);
+    final Context ctx = new Context(new MemoryInputStream(DATA), new HashMap<>(), null, Locale.ROOT, null);
+    ctx.prefetchHeader(DATA.length);
+
+    // warm up, then measure
+    run(matcher, ctx, ITERATIONS);
+    final long thread = Thread.currentThread().getId();
+    final long before = threads.getThreadAllocatedBytes(thread);
+    run(matcher, ctx, ITERATIONS);
+    final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    // tolerate the odd allocation by the JVM itself, boxing would cost at least 16 bytes per call
+    assertEquals(0, allocated / ITERATIONS, "bytes allocated per call by " + element + " " + attributes);
+  }
+
+  @Test
+  void testGzipWithoutModificationTime() throws Exception {
+    final ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+    try (GZIPOutputStream os = new GZIPOutputStream(gzip)) {
+      os.write("gzip".getBytes(StandardCharsets.US_ASCII));
+    }
+    final byte[] data = gzip.toByteArray();
+    assertEquals(0, data[4] | data[5] | data[6] | data[7], "mtime");
+    // the first matching gzip sibling wins, so use a method none of the earlier siblings claims
+    data[2] = 0;
+
+    final Map<String, Object> result = Analyzer.getInstance("/magic-all.xml").analyze(new MemoryInputStream(data));
+    assertEquals("application/x-gzip", result.get(MimeTypeAction.KEY));
+    final String description = String.valueOf(result.get(DescriptionAction.KEY));
+    assertFalse(description.contains("last modified"), description);
+  }
+
+  /**
+   * Reports the bytes allocated per {@link Analyzer#analyze(java.io.InputStream)} call for the
+   * headers of the test images.
+   */
+  @Test
+  @Benchmark
+  void testAllocationPerAnalysis() throws Exception {
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+        .getThreadMXBean();
+    final Analyzer analyzer = Analyzer.getInstance("/magic.xml");
+    final long thread = Thread.currentThread().getId();
+
+    LOGGER.info(String.format(Locale.ROOT, "%-24s  %14s", "file", "bytes/analysis"));
+    for (String name : new String[]{
+        "Clocks.gif", "test.png", "g3-2d-byteswapped.tif"
+    }) {
+      final byte[] data = Files.readAllBytes(new File("src/test/resources/various_types", name).toPath());
+      for (int i = 0; i < 10000; i++) {
+        analyzer.analyze(new MemoryInputStream(data));
+      }
+      final long before = threads.getThreadAllocatedBytes(thread);
+      for (int i = 0; i < 10000; i++) {
+        analyzer.analyze(new MemoryInputStream(data));
+      }
+      LOGGER.info(String.format(Locale.ROOT, "%-24s  %14d", name, (threads.getThreadAllocatedBytes(thread) - before) / 10000));
+    }
+  }
+
+  private static void run(final Matcher matcher, final Context ctx, final int iterations) throws IOException {
+    for (int i = 0; i < iterations; i++) {
+      matcher.matches(ctx);
+    }
+  }
+
+  private static Map<String, String> parse(final String attributes) {
+    final Map<String, String> result = new LinkedHashMap<>();
+    for (String a : attributes.trim().split("\\s+")) {
+      final int eq = a.indexOf('=');
+      result.put(a.substring(0, eq), a.substring(eq + 1));
+    }
+    return result;
+  }
+}
@@ -1,18 +1,29 @@
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.jadice.filetype.Context;
 import org.jadice.filetype.database.DescriptionAction;
 import org.jadice.filetype.database.ExtensionAction;
 import org.jadice.filetype.database.MimeTypeAction;
 import org.jadice.filetype.io.MemoryInputStream;
+import org.jadice.filetype.io.SeekableInputStream;
 import org.jadice.filetype.matchers.OpenDocumentMatcher;
+import org.jadice.filetype.ziputil.ZipArchive;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -54,6 +65,109 @@ class TestOpenDocumentMatcher {
 
     }
 
+    @ParameterizedTest
+    @MethodSource("provideTestData")
+    void testTypeFromHeaderOnly(final String fileName, final String extension, final String mimeType, final String description) throws Exception {
+        // the stored mimetype entry at the start suffices; the archive must not be opened
+        final Context ctx = new Context(stream(fileName), new HashMap<>(), null, Locale.ENGLISH, null) {
+            @Override
+            public ZipArchive getZipArchive() {
+                throw new AssertionError("archive opened");
+            }
+        };
+
+        assertTrue(MATCHER.matches(ctx), "Matcher must match the given file");
+        assertEquals(mimeType, ctx.getProperty(MimeTypeAction.KEY), "MIME Type");
+        assertTrue(((Map<?, ?>) ctx.getProperty("ODF_DETAILS")).isEmpty(), "no metadata requested");
+    }
+
+    @Test
+    void testMetadata() throws Exception {
+        final Context ctx = createContext("OOoWriter.odt", false);
+        ctx.setOpenDocumentMetadata(true);
+
+        assertTrue(MATCHER.matches(ctx), "Matcher must match the given file");
+        final Map<?, ?> details = (Map<?, ?>) ctx.getProperty("ODF_DETAILS");
+        assertFalse(details.isEmpty(), "metadata requested");
+        assertTrue(details.keySet().stream().allMatch(k -> k.toString().startsWith("ODF_")), "ODF keys");
+    }
+
+    @Test
+    void testEpub() throws Exception {
+        final byte[] mimeType = "application/epub+zip".getBytes(StandardCharsets.US_ASCII);
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            final ZipEntry entry = new ZipEntry("mimetype");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(mimeType.length);
+            final CRC32 crc = new CRC32();
+            crc.update(mimeType);
+            entry.setCrc(crc.getValue());
+            zos.putNextEntry(entry);
+            zos.write(mimeType);
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("META-INF/container.xml"));
+            zos.write("<container/>".getBytes(StandardCharsets.US_ASCII));
+            zos.closeEntry();
+        }
+
+        final Context ctx = new Context(new MemoryInputStream(new ByteArrayInputStream(bos.toByteArray())),
+                new HashMap<>(), null, Locale.ENGLISH, null);
+        assertTrue(MATCHER.matches(ctx), "Matcher must match an EPUB");
+        assertEquals("application/epub+zip", ctx.getProperty(MimeTypeAction.KEY), "MIME Type");
+        assertEquals("epub", ctx.getProperty(ExtensionAction.KEY), "file extension");
+    }
+
+    private static SeekableInputStream stream(String fileName) throws IOException {
+        return new MemoryInputStream(TestOfficeOpenXMLMatcher.class.getResourceAsStream("/various_types/" + fileName));
+    }
+
+    @Test
+    void testManifestIsOnlyAFallback() throws Exception {
+        // the mimetype entry wins over a manifest stating a different type of the package
+        Context ctx = createContext(odf("application/vnd.oasis.opendocument.spreadsheet",
+                "application/vnd.oasis.opendocument.text"));
+        assertTrue(MATCHER.matches(ctx), "Matcher must match the given package");
+        assertEquals("application/vnd.oasis.opendocument.spreadsheet", ctx.getProperty(MimeTypeAction.KEY), "MIME Type");
+
+        // without a mimetype entry the manifest decides
+        ctx = createContext(odf(null, "application/vnd.oasis.opendocument.text"));
+        assertTrue(MATCHER.matches(ctx), "Matcher must match the given package");
+        assertEquals("application/vnd.oasis.opendocument.text", ctx.getProperty(MimeTypeAction.KEY), "MIME Type");
+    }
+
+    /**
+     * @return a package with an optional leading stored mimetype entry followed by a manifest
+     */
+    private static byte[] odf(final String mimeType, final String manifestMediaType) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            if (null != mimeType) {
+                final byte[] data = mimeType.getBytes(StandardCharsets.US_ASCII);
+                final ZipEntry entry = new ZipEntry("mimetype");
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(data.length);
+                final CRC32 crc = new CRC32();
+                crc.update(data);
+                entry.setCrc(crc.getValue());
+                zos.putNextEntry(entry);
+                zos.write(data);
+                zos.closeEntry();
+            }
+            zos.putNextEntry(new ZipEntry("META-INF/manifest.xml"));
+            zos.write(("<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\">"
+                    + "<manifest:file-entry manifest:full-path=\"/\" manifest:media-type=\"" + manifestMediaType + "\"/>"
+                    + "</manifest:manifest>").getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        return bos.toByteArray();
+    }
+
+    private static Context createContext(final byte[] data) throws IOException {
+        return new Context(new MemoryInputStream(new ByteArrayInputStream(data)), new HashMap<>(), null, Locale.ENGLISH,
+                null);
+    }
+
     private static Context createContext(String fileName, boolean withFileName) throws IOException {
         final InputStream is = TestOfficeOpenXMLMatcher.class.getResourceAsStream("/various_types/" + fileName);
         if (withFileName) {
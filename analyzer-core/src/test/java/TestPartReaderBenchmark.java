@@ -0,0 +1,119 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.jadice.filetype.Benchmark;
+import org.jadice.filetype.domutil.DOMUtil;
+import org.jadice.filetype.domutil.PartReader;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compares looking up the content type of the main document of a large spreadsheet in its
+ * <code>[Content_Types].xml</code> using the streaming {@link PartReader} with the former DOM-based
+ * lookup. Reports the time and the heap allocated per lookup.
+ */
+@Benchmark
+class TestPartReaderBenchmark {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TestPartReaderBenchmark.class);
+
+  private static final int SHEETS = 5000;
+  private static final int WARMUP = 50;
+  private static final int ROUNDS = 200;
+
+  private static final String MAIN_DOCUMENT = "xl/workbook.xml";
+
+  @FunctionalInterface
+  private interface Lookup {
+    String find(byte[] part) throws Exception;
+  }
+
+  @Test
+  void testContentTypeLookup() throws Exception {
+    // the main document usually comes first, but not necessarily
+    run("first", contentTypes(true));
+    run("last", contentTypes(false));
+  }
+
+  private static void run(final String position, final byte[] part) throws Exception {
+    final Lookup[] lookups = {
+        TestPartReaderBenchmark::dom, TestPartReaderBenchmark::stream
+    };
+    for (int i = 0; i < WARMUP; i++) {
+      for (Lookup l : lookups) {
+        l.find(part);
+      }
+    }
+
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long[] nanos = new long[2];
+    final long[] bytes = new long[2];
+    for (int r = 0; r < ROUNDS; r++) {
+      for (int m = 0; m < 2; m++) {
+        final long allocated = threads.getCurrentThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        if (null == lookups[m].find(part))
+          throw new AssertionError("not found");
+        nanos[m] += System.nanoTime() - start;
+        bytes[m] += threads.getCurrentThreadAllocatedBytes() - allocated;
+      }
+    }
+    LOGGER.info(String.format(Locale.ROOT,
+        "%d overrides, main document %-5s  DOM %8.1f us %10.0f B   PartReader %8.1f us %10.0f B", SHEETS + 1,
+        position, nanos[0] / 1000.0 / ROUNDS, (double) bytes[0] / ROUNDS, nanos[1] / 1000.0 / ROUNDS,
+        (double) bytes[1] / ROUNDS));
+  }
+
+  @SuppressWarnings("deprecation")
+  private static String dom(final byte[] part) throws Exception {
+    final DocumentBuilder builder = DOMUtil.createSimpleDocumentBuilder();
+    final Document doc = builder.parse(new ByteArrayInputStream(part));
+    final NodeList overrides = doc.getElementsByTagName("Override");
+    for (int i = 0; i < overrides.getLength(); i++) {
+      final Element e = (Element) overrides.item(i);
+      if (e.getAttribute("PartName").substring(1).equals(MAIN_DOCUMENT))
+        return e.getAttribute("ContentType");
+    }
+    return null;
+  }
+
+  private static String stream(final byte[] part) throws IOException {
+    try (PartReader reader = PartReader.open(new ByteArrayInputStream(part))) {
+      while (reader.nextElement()) {
+        if ("Override".equals(reader.getName())) {
+          final String name = reader.getAttribute("PartName");
+          if (null != name && MAIN_DOCUMENT.equals(name.substring(1)))
+            return reader.getAttribute("ContentType");
+        }
+      }
+    }
+    return null;
+  }
+
+  private static byte[] contentTypes(final boolean mainDocumentFirst) {
+    final String main = "<Override PartName=\"/" + MAIN_DOCUMENT
+        + "\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>";
+    final StringBuilder sb = new StringBuilder(
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+            + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+            + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+    if (mainDocumentFirst)
+      sb.append(main);
+    for (int i = 1; i <= SHEETS; i++) {
+      sb.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(
+          ".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+    }
+    if (!mainDocumentFirst)
+      sb.append(main);
+    return sb.append("</Types>").toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
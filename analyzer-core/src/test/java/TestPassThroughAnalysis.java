@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.jadice.filetype.AnalysisListener;
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.AnalyzerException;
+import org.jadice.filetype.PassThroughAnalysis;
+import org.jadice.filetype.io.MemoryInputStream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies that {@link Analyzer#analyzeAndPassThrough(InputStream, AnalysisListener, String)}
+ * delivers the results of a regular analysis along with the unchanged data, reading the source
+ * exactly once.
+ */
+class TestPassThroughAnalysis {
+
+  private static final File INPUT_FOLDER = new File("src/test/resources/various_types");
+
+  private static Analyzer analyzer;
+
+  @BeforeAll
+  public static void createAnalyzer() throws AnalyzerException {
+    analyzer = Analyzer.getInstance("/magic.xml");
+  }
+
+  /**
+   * Counts the bytes read and whether it has been closed.
+   */
+  private static final class CountingInputStream extends FilterInputStream {
+    long count;
+    boolean closed;
+
+    CountingInputStream(final byte[] data) {
+      super(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b >= 0)
+        count++;
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      final int read = super.read(b, off, len);
+      if (read > 0)
+        count += read;
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      super.close();
+    }
+  }
+
+  @Test
+  void testPassThrough() throws IOException {
+    final Analyzer spilling = new Analyzer(analyzer.getCompiledDatabase());
+    spilling.setMemoryThreshold(4096);
+
+    boolean partial = false;
+    for (File f : TestArchives.nullSafe(INPUT_FOLDER.listFiles())) {
+      final byte[] data = Files.readAllBytes(f.toPath());
+      final Map<String, Object> expected = analyzer.analyze(new ByteArrayInputStream(data), null, f.getName());
+
+      final CountingInputStream source = new CountingInputStream(data);
+      try (PassThroughAnalysis analysis = spilling.analyzeAndPassThrough(source, null, f.getName())) {
+        assertEquals(expected, analysis.getResult(), f.getName());
+        partial |= source.count < data.length;
+
+        assertArrayEquals(data, analysis.getStream().readAllBytes(), f.getName());
+        assertEquals(data.length, source.count, f.getName());
+      }
+      assertTrue(source.closed, f.getName());
+    }
+    assertTrue(partial);
+  }
+
+  @Test
+  void testSeekableInput() throws IOException {
+    final byte[] data = Files.readAllBytes(new File(INPUT_FOLDER, "test.png").toPath());
+    try (PassThroughAnalysis analysis = analyzer.analyzeAndPassThrough(new MemoryInputStream(data), null, null)) {
+      assertEquals("image/png", analysis.getResult().get("mimeType"));
+      assertArrayEquals(data, analysis.getStream().readAllBytes());
+    }
+  }
+}
@@ -0,0 +1,129 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.AnalyzerException;
+import org.jadice.filetype.database.DatabaseLoader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifies that analyzing NIO paths and channels, synchronously or asynchronously, yields the same
+ * results as analyzing files.
+ */
+class TestPathAnalysis {
+
+  private static final File INPUT_FOLDER = new File("src/test/resources/various_types");
+
+  private static Analyzer analyzer;
+
+  @TempDir
+  Path tmp;
+
+  @BeforeAll
+  public static void createAnalyzer() throws AnalyzerException {
+    analyzer = Analyzer.getInstance("/magic.xml");
+  }
+
+  @Test
+  void testDefaultFileSystem() throws Exception {
+    for (File f : TestArchives.nullSafe(INPUT_FOLDER.listFiles())) {
+      final Map<String, Object> expected = analyzer.analyze(f);
+      assertEquals(expected, analyzer.analyze(f.toPath()), f.getName());
+      assertEquals(expected, analyzer.analyzeAsync(f.toPath()).get(), f.getName());
+    }
+  }
+
+  @Test
+  void testZipFileSystem() throws Exception {
+    final URI uri = URI.create("jar:" + tmp.resolve("files.zip").toUri());
+    try (FileSystem zipfs = FileSystems.newFileSystem(uri, Collections.singletonMap("create", "true"))) {
+      for (File f : TestArchives.nullSafe(INPUT_FOLDER.listFiles())) {
+        Files.copy(f.toPath(), zipfs.getPath(f.getName()));
+      }
+      for (File f : TestArchives.nullSafe(INPUT_FOLDER.listFiles())) {
+        final Map<String, Object> expected = analyzer.analyze(f);
+        final Path path = zipfs.getPath(f.getName());
+        assertEquals(expected, analyzer.analyze(path), f.getName());
+        assertEquals(expected, analyzer.analyzeAsync(path).get(), f.getName());
+      }
+    }
+  }
+
+  @Test
+  void testChannel() throws IOException {
+    final File f = new File(INPUT_FOLDER, "Clocks.gif");
+    try (SeekableByteChannel channel = Files.newByteChannel(f.toPath())) {
+      channel.position(1000);
+      assertEquals("image/gif", analyzer.analyze(channel).get("mimeType"));
+      assertEquals(1000, channel.position());
+      assertTrue(channel.isOpen());
+    }
+  }
+
+  @Test
+  void testExecutor() throws Exception {
+    final AtomicInteger tasks = new AtomicInteger();
+    final Executor executor = command -> {
+      tasks.incrementAndGet();
+      ForkJoinPool.commonPool().execute(command);
+    };
+    for (File f : TestArchives.nullSafe(INPUT_FOLDER.listFiles())) {
+      final int before = tasks.get();
+      assertEquals(analyzer.analyze(f), analyzer.analyzeAsync(f.toPath(), null, executor).get(), f.getName());
+      assertTrue(tasks.get() > before, f.getName());
+    }
+  }
+
+  @Test
+  void testMorePagesThanCached() throws Exception {
+    // each type reads another page, the last one matches
+    final int pages = 300;
+    final StringBuilder database = new StringBuilder("<magic>");
+    for (int i = 1; i <= pages; i++) {
+      database.append("<type><match-string offset=\"").append(i * 65536L).append("\">").append(
+          i == pages ? "XY" : "--").append("</match-string><mime-type>x-test/").append(i).append(
+              "</mime-type></type>");
+    }
+    final Analyzer many = new Analyzer(DatabaseLoader.load(
+        new ByteArrayInputStream(database.append("</magic>").toString().getBytes(StandardCharsets.US_ASCII))));
+
+    final Path file = tmp.resolve("large.bin");
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(pages * 65536L);
+      raf.write(new byte[]{
+          'X', 'Y'
+      });
+    }
+    assertEquals("x-test/" + pages, many.analyze(file).get("mimeType"));
+    assertEquals("x-test/" + pages, many.analyzeAsync(file).get().get("mimeType"));
+  }
+
+  @Test
+  void testMissingFile() {
+    final ExecutionException e = assertThrows(ExecutionException.class,
+        () -> analyzer.analyzeAsync(tmp.resolve("missing")).get());
+    assertTrue(e.getCause() instanceof NoSuchFileException);
+  }
+}
@@ -0,0 +1,141 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import java.util.Random;
+
+import org.jadice.filetype.Benchmark;
+import org.jadice.filetype.io.MemoryInputStream;
+import org.jadice.filetype.io.SeekableInputStream;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the int and long reads of the {@link SeekableInputStream}, which read all bytes of a
+ * primitive at once, with the former implementations, which read them one by one. Reports the time
+ * and the heap allocated per read. Shorts are still read byte by byte, as two single byte reads are
+ * faster than a bulk read.
+ */
+@Benchmark
+class TestPrimitiveReadBenchmark {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TestPrimitiveReadBenchmark.class);
+
+  private static final int LENGTH = 1 << 20;
+  private static final int WARMUP = 5;
+  private static final int ROUNDS = 10;
+
+  @FunctionalInterface
+  private interface Read {
+    long read(SeekableInputStream s) throws IOException;
+  }
+
+  @Test
+  void testPrimitiveReads() throws IOException {
+    final byte[] data = new byte[LENGTH];
+    new Random(42).nextBytes(data);
+
+    for (ByteOrder order : new ByteOrder[]{
+        ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN
+    }) {
+      try (MemoryInputStream s = new MemoryInputStream(data)) {
+        s.setByteOrder(order);
+        run(s, order, "readInt", 4, TestPrimitiveReadBenchmark::legacyReadInt, SeekableInputStream::readInt);
+        run(s, order, "readLong", 8, TestPrimitiveReadBenchmark::legacyReadLong, SeekableInputStream::readLong);
+        run(s, order, "readInt(3)", 3, x -> legacyReadInt(x, 3), x -> x.readInt(3));
+      }
+    }
+  }
+
+  private static void run(final SeekableInputStream s, final ByteOrder order, final String name, final int size,
+      final Read legacy, final Read current) throws IOException {
+    for (int i = 0; i < WARMUP; i++) {
+      pass(s, size, legacy);
+      pass(s, size, current);
+    }
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long reads = (long) ROUNDS * (LENGTH / size);
+    final long[] nanos = new long[2];
+    final long[] bytes = new long[2];
+    final Read[] reads2 = {
+        legacy, current
+    };
+    for (int r = 0; r < ROUNDS; r++) {
+      for (int m = 0; m < 2; m++) {
+        final long allocated = threads.getCurrentThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        pass(s, size, reads2[m]);
+        nanos[m] += System.nanoTime() - start;
+        bytes[m] += threads.getCurrentThreadAllocatedBytes() - allocated;
+      }
+    }
+    LOGGER.info(String.format(Locale.ROOT, "%-13s %-10s legacy %6.2f ns/op %6.1f B/op   current %6.2f ns/op %6.1f B/op",
+        order, name, (double) nanos[0] / reads, (double) bytes[0] / reads, (double) nanos[1] / reads,
+        (double) bytes[1] / reads));
+  }
+
+  private static long pass(final SeekableInputStream s, final int size, final Read read) throws IOException {
+    s.seek(0);
+    long sum = 0;
+    for (int i = 0; i < LENGTH / size; i++) {
+      sum += read.read(s);
+    }
+    return sum;
+  }
+
+  private static int legacyReadInt(final SeekableInputStream s) throws IOException {
+    final int ch1 = s.read();
+    final int ch2 = s.read();
+    final int ch3 = s.read();
+    final int ch4 = s.read();
+    if ((ch1 | ch2 | ch3 | ch4) < 0) {
+      throw new EOFException();
+    }
+    if (s.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+      return (ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0);
+    } else {
+      return (ch4 << 24) + (ch3 << 16) + (ch2 << 8) + (ch1 << 0);
+    }
+  }
+
+  private static long legacyReadLong(final SeekableInputStream s) throws IOException {
+    final int i1 = legacyReadInt(s);
+    final int i2 = legacyReadInt(s);
+    if (s.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+      return ((long) i1 << 32) + (i2 & 0xFFFFFFFFL);
+    } else {
+      return ((long) i2 << 32) + (i1 & 0xFFFFFFFFL);
+    }
+  }
+
+  private static int legacyReadInt(final SeekableInputStream s, final int appliedBytes) throws IOException {
+    int[] readBuffer = new int[appliedBytes];
+    for (int i = 0; i < appliedBytes; i++) {
+      readBuffer[i] = s.read();
+      if (readBuffer[i] < 0) {
+        throw new EOFException();
+      }
+    }
+    if (s.getByteOrder() == ByteOrder.LITTLE_ENDIAN) {
+      final int[] swapped = new int[appliedBytes];
+      for (int i = 0; i < appliedBytes; i++) {
+        swapped[appliedBytes - 1 - i] = readBuffer[i];
+      }
+      readBuffer = swapped;
+    }
+    int result = 0;
+    for (int i = 0; i < appliedBytes; i++) {
+      result += (readBuffer[i] & 0xFF) << (8 * (appliedBytes - i - 1));
+    }
+    if ((readBuffer[0] & 0x80) == 0x80) {
+      int mask = 0;
+      for (int i = 0; i < appliedBytes; i++) {
+        mask += 0xFF << (8 * i);
+      }
+      result = -((~result & mask) + 1);
+    }
+    return result;
+  }
+}
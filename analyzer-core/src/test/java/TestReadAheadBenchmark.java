@@ -0,0 +1,107 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jadice.filetype.AnalysisListener;
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.Benchmark;
+import org.jadice.filetype.io.RandomAccessFileInputStream;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the adaptive read-ahead of the {@link RandomAccessFileInputStream} with the former fixed
+ * read-ahead of 32 bytes by analyzing the files in <code>various_types</code>. Reports the time per
+ * pass over the corpus, the number of reads from the file, the number of requests served from the
+ * read-ahead buffer and the bytes read ahead in vain.
+ */
+@Benchmark
+class TestReadAheadBenchmark {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TestReadAheadBenchmark.class);
+
+  private static final int WARMUP = 3;
+  private static final int ROUNDS = 7;
+
+  private static final AnalysisListener SILENT = new AnalysisListener() {
+    @Override
+    public void info(final Object src, final String message) {
+      // ignore
+    }
+
+    @Override
+    public void warning(final Object src, final String message) {
+      // ignore
+    }
+
+    @Override
+    public void error(final Object src, final String message, final Throwable cause) {
+      // ignore
+    }
+  };
+
+  private static final class Counters {
+    long misses;
+    long hits;
+    long overRead;
+  }
+
+  @Test
+  void testReadAhead() throws Exception {
+    final Analyzer analyzer = Analyzer.getInstance("/magic.xml");
+    final List<Path> files;
+    try (Stream<Path> s = Files.list(new File("src/test/resources/various_types").toPath())) {
+      files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+
+    final String[] modes = {
+        "fixed-32", "adaptive"
+    };
+    for (int i = 0; i < WARMUP; i++) {
+      for (String mode : modes) {
+        run(analyzer, files, mode, new Counters());
+      }
+    }
+
+    final long[][] times = new long[modes.length][ROUNDS];
+    final Counters[] counters = new Counters[modes.length];
+    for (int r = 0; r < ROUNDS; r++) {
+      for (int m = 0; m < modes.length; m++) {
+        counters[m] = new Counters();
+        final long start = System.nanoTime();
+        run(analyzer, files, modes[m], counters[m]);
+        times[m][r] = System.nanoTime() - start;
+      }
+    }
+
+    LOGGER.info(String.format(Locale.ROOT, "%-10s  %12s  %10s  %10s  %14s", "read-ahead", "ms/corpus", "reads", "hits",
+        "bytes over-read"));
+    for (int m = 0; m < modes.length; m++) {
+      Arrays.sort(times[m]);
+      LOGGER.info(String.format(Locale.ROOT, "%-10s  %12.2f  %10d  %10d  %14d", modes[m], times[m][ROUNDS / 2] / 1e6,
+          counters[m].misses, counters[m].hits, counters[m].overRead));
+    }
+  }
+
+  private static void run(final Analyzer analyzer, final List<Path> files, final String mode,
+      final Counters counters) throws IOException {
+    for (Path file : files) {
+      try (RandomAccessFileInputStream s = new RandomAccessFileInputStream(file.toFile())) {
+        if (mode.startsWith("fixed")) {
+          s.setReadAhead(32);
+        }
+        analyzer.analyze(s, SILENT, file.getFileName().toString());
+        counters.misses += s.getReadAheadMisses();
+        counters.hits += s.getReadAheadHits();
+        counters.overRead += s.getBytesOverRead();
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.jadice.filetype.AnalysisListener;
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.AnalyzerException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies that spilling a non-seekable input stream to disk doesn't change the analysis results.
+ */
+class TestSpillingAnalysis {
+
+  private static final File INPUT_FOLDER = new File("src/test/resources/various_types");
+
+  private static Analyzer analyzer;
+
+  @BeforeAll
+  public static void createAnalyzer() throws AnalyzerException {
+    analyzer = Analyzer.getInstance("/magic.xml");
+  }
+
+  /**
+   * Records the reported buffer usage.
+   */
+  private static final class BufferListener implements AnalysisListener {
+    long memoryBytes = -1;
+    long diskBytes = -1;
+
+    @Override
+    public void info(final Object src, final String message) {
+    }
+
+    @Override
+    public void warning(final Object src, final String message) {
+    }
+
+    @Override
+    public void error(final Object src, final String message, final Throwable cause) {
+    }
+
+    @Override
+    public void buffered(final Object src, final long memoryBytes, final long diskBytes) {
+      this.memoryBytes = memoryBytes;
+      this.diskBytes = diskBytes;
+    }
+  }
+
+  @Test
+  void testSpilledResults() throws IOException {
+    final Analyzer spilling = new Analyzer(analyzer.getCompiledDatabase());
+    spilling.setMemoryThreshold(512);
+    assertEquals(Analyzer.DEFAULT_MEMORY_THRESHOLD, analyzer.getMemoryThreshold());
+
+    boolean spilled = false;
+    for (File f : TestArchives.nullSafe(INPUT_FOLDER.listFiles())) {
+      final Map<String, Object> expected;
+      try (InputStream is = new FileInputStream(f)) {
+        expected = analyzer.analyze(is, null, f.getName());
+      }
+
+      final BufferListener listener = new BufferListener();
+      try (InputStream is = new FileInputStream(f)) {
+        assertEquals(expected, spilling.analyze(is, listener, f.getName()), f.getName());
+      }
+      assertTrue(listener.memoryBytes >= 0 && listener.memoryBytes <= 512, f.getName());
+      assertTrue(listener.diskBytes >= 0 && listener.memoryBytes + listener.diskBytes <= f.length(), f.getName());
+      spilled |= listener.diskBytes > 0;
+    }
+    assertTrue(spilled);
+  }
+}
@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+import jakarta.xml.bind.JAXBContext;
+
+import org.jadice.filetype.Analyzer;
+import org.jadice.filetype.Benchmark;
+import org.jadice.filetype.database.Type;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the cold start of the StAX based database loader with the JAXB path: the time from
+ * loading the database to the end of the first analysis and the number of classes loaded by then.
+ * Each measurement runs in a fresh JVM.
+ */
+@Benchmark
+class TestStartupBenchmark {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TestStartupBenchmark.class);
+
+  private static final int RUNS = 5;
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "/magic.xml", "/magic-all.xml"
+  })
+  void testStartup(final String database) throws Exception {
+    final long[] stax = measure("stax", database);
+    final long[] jaxb = measure("jaxb", database);
+
+    LOGGER.info(String.format(Locale.ROOT, "%-14s  %-5s  %10s  %8s", "database", "path", "first [ms]", "classes"));
+    LOGGER.info(String.format(Locale.ROOT, "%-14s  %-5s  %10.1f  %8d", database, "stax", stax[0] / 1e6, stax[1]));
+    LOGGER.info(String.format(Locale.ROOT, "%-14s  %-5s  %10.1f  %8d", database, "jaxb", jaxb[0] / 1e6, jaxb[1]));
+  }
+
+  /**
+   * @return the median time to first analysis in nanoseconds and the median loaded class count
+   */
+  private static long[] measure(final String mode, final String database) throws IOException, InterruptedException {
+    final long[] times = new long[RUNS];
+    final long[] classes = new long[RUNS];
+    for (int i = 0; i < RUNS; i++) {
+      final Process p = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(), "-cp",
+          System.getProperty("java.class.path"), TestStartupBenchmark.class.getName(), mode, database) //
+              .redirectError(ProcessBuilder.Redirect.INHERIT) //
+              .start();
+      final String[] out = new String(p.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).trim().split(
+          "\\s+");
+      assertEquals(0, p.waitFor(), "benchmark process failed");
+      times[i] = Long.parseLong(out[out.length - 2]);
+      classes[i] = Long.parseLong(out[out.length - 1]);
+    }
+    Arrays.sort(times);
+    Arrays.sort(classes);
+    return new long[]{
+        times[RUNS / 2], classes[RUNS / 2]
+    };
+  }
+
+  /**
+   * Entry point of the forked JVM. Prints the time to first analysis in nanoseconds and the number
+   * of loaded classes.
+   */
+  public static void main(final String[] args) throws Exception {
+    final long start = System.nanoTime();
+
+    final Analyzer analyzer;
+    if ("jaxb".equals(args[0])) {
+      analyzer = new Analyzer((Type) JAXBContext.newInstance("org.jadice.filetype.database:org.jadice.filetype.matchers")
+          .createUnmarshaller().unmarshal(Analyzer.class.getResource(args[1])));
+    } else {
+      analyzer = Analyzer.getInstance(args[1]);
+    }
+    analyzer.analyze(new ByteArrayInputStream("GIF89a".getBytes(StandardCharsets.US_ASCII)));
+
+    final long time = System.nanoTime() - start;
+    System.out.println(time + " " + ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+  }
+}
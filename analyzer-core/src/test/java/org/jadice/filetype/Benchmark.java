@@ -0,0 +1,26 @@
+package org.jadice.filetype;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Marks a benchmark or another expensive test. These are disabled by default, run them with
+ * <code>mvn test -Djadice.filetype.benchmark=true -Dtest=&lt;test class&gt;</code>. Benchmarks
+ * report their results through their logger.
+ */
+@Target({
+    ElementType.TYPE, ElementType.METHOD
+})
+@Retention(RetentionPolicy.RUNTIME)
+@EnabledIfSystemProperty(named = Benchmark.PROPERTY, matches = "true", disabledReason = "benchmarks are opt-in")
+public @interface Benchmark {
+
+  /**
+   * The system property enabling the benchmarks.
+   */
+  String PROPERTY = "jadice.filetype.benchmark";
+}
@@ -0,0 +1,113 @@
+package org.jadice.filetype.domutil;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies that the {@link PartReader} reports names, attributes and texts like a DOM parsed without
+ * namespace awareness.
+ */
+class TestPartReader {
+
+  private static final String META = "<?xml version=\"1.0\"?>\n" //
+      + "<office:document-meta xmlns:office=\"urn:office\" xmlns:meta=\"urn:meta\" xmlns:dc=\"urn:dc\">" //
+      + "<office:meta>" //
+      + "<dc:title>A <![CDATA[title]]> &amp; more</dc:title>" //
+      + "<meta:document-statistic meta:page-count=\"1\" meta:word-count=\"3\"/>" //
+      + "<meta:empty/>" //
+      + "<meta:mixed>a<b>nested</b>c</meta:mixed>" //
+      + "</office:meta>" //
+      + "<office:other><office:meta/></office:other>" //
+      + "</office:document-meta>";
+
+  @Test
+  void testNamesAndDepths() throws IOException {
+    try (PartReader reader = open(META)) {
+      assertTrue(reader.nextElement());
+      assertEquals("office:document-meta", reader.getName());
+      assertEquals(1, reader.getDepth());
+      assertEquals(0, reader.getAttributeCount(), "namespace declarations are no attributes");
+
+      assertTrue(reader.nextElement());
+      assertEquals("office:meta", reader.getName());
+      assertEquals(2, reader.getDepth());
+
+      assertTrue(reader.nextElement());
+      assertEquals("dc:title", reader.getName());
+      assertEquals(3, reader.getDepth());
+      assertEquals("A title & more", reader.getElementText());
+
+      assertTrue(reader.nextElement());
+      assertEquals("meta:document-statistic", reader.getName());
+      assertEquals(2, reader.getAttributeCount());
+      assertEquals("meta:page-count", reader.getAttributeName(0));
+      assertEquals("1", reader.getAttributeValue(0));
+      assertEquals("3", reader.getAttribute("meta:word-count"));
+      assertNull(reader.getAttribute("word-count"));
+
+      assertTrue(reader.nextElement());
+      assertEquals("meta:empty", reader.getName());
+      assertNull(reader.getElementText(), "an empty element has no text, like in the DOM");
+
+      // nested elements are skipped
+      assertTrue(reader.nextElement());
+      assertEquals("meta:mixed", reader.getName());
+      assertEquals("ac", reader.getElementText());
+
+      assertTrue(reader.nextElement());
+      assertEquals("office:other", reader.getName());
+      assertEquals(2, reader.getDepth());
+      assertTrue(reader.nextElement());
+      assertEquals(3, reader.getDepth());
+      assertFalse(reader.nextElement());
+    }
+  }
+
+  @Test
+  void testUnprefixedNames() throws IOException {
+    try (PartReader reader = open("<Types xmlns=\"urn:types\"><Override PartName=\"/a.xml\" ContentType=\"x\"/></Types>")) {
+      assertTrue(reader.nextElement());
+      assertEquals("Types", reader.getName());
+      assertTrue(reader.nextElement());
+      assertEquals("Override", reader.getName());
+      assertEquals("/a.xml", reader.getAttribute("PartName"));
+      assertFalse(reader.nextElement());
+    }
+  }
+
+  @Test
+  void testExternalEntitiesAreNotResolved() {
+    final String xml = "<!DOCTYPE r [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><r>&e;</r>";
+    assertThrows(IOException.class, () -> {
+      try (PartReader reader = open(xml)) {
+        while (reader.nextElement()) {
+          reader.getElementText();
+        }
+      }
+    });
+  }
+
+  @Test
+  void testMalformedPart() {
+    assertThrows(IOException.class, () -> {
+      try (PartReader reader = open("<a><b></a>")) {
+        while (reader.nextElement()) {
+          // read all
+        }
+      }
+    });
+  }
+
+  private static PartReader open(final String xml) throws IOException {
+    return PartReader.open(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,81 @@
+package org.jadice.filetype.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies that a {@link ByteBufferInputStream} reads the remaining content of its buffer in place.
+ */
+class TestByteBufferInputStream {
+
+  @ParameterizedTest
+  @ValueSource(booleans = {
+      false, true
+  })
+  void testRandomReads(final boolean direct) throws IOException {
+    final byte[] data = new byte[10000];
+    new Random(4711).nextBytes(data);
+    final ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(data.length + 200) : ByteBuffer.allocate(data.length + 200);
+    buffer.position(100);
+    buffer.put(data);
+    buffer.position(100).limit(100 + data.length);
+
+    final Random random = new Random(815);
+    try (ByteBufferInputStream s = new ByteBufferInputStream(buffer)) {
+      assertEquals(data.length, s.length());
+      for (int i = 0; i < 2000; i++) {
+        final int pos = random.nextInt(data.length + 100);
+        s.seek(pos);
+        if (random.nextBoolean()) {
+          assertEquals(pos < data.length ? data[pos] & 0xff : -1, s.read(), "read() at " + pos);
+        } else {
+          final int len = 1 + random.nextInt(300);
+          final byte[] actual = new byte[len];
+          final int n = s.read(actual, 0, len);
+          if (pos >= data.length) {
+            assertEquals(-1, n);
+          } else {
+            assertEquals(Math.min(len, data.length - pos), n);
+            assertArrayEquals(Arrays.copyOfRange(data, pos, pos + n), Arrays.copyOf(actual, n), "read at " + pos);
+          }
+        }
+      }
+
+      s.seek(96);
+      assertEquals(data[96] << 24 | (data[97] & 0xff) << 16 | (data[98] & 0xff) << 8 | data[99] & 0xff,
+          s.readInt());
+    }
+
+    // the buffer itself is left alone
+    assertEquals(100, buffer.position());
+    assertEquals(100 + data.length, buffer.limit());
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {
+      0, 7
+  })
+  void testBackingBuffer(final int offset) throws IOException {
+    final byte[] data = new byte[100];
+    new Random(42).nextBytes(data);
+    try (ByteBufferInputStream s = new ByteBufferInputStream(data, offset, 50)) {
+      final ByteBuffer backing = s.getBackingBuffer();
+      assertSame(data, backing.array());
+      assertEquals(offset, backing.arrayOffset());
+      assertEquals(0, backing.position());
+      assertEquals(50, backing.limit());
+      assertEquals(data[offset], backing.get(0));
+      assertTrue(s.isCachedMemory());
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.jadice.filetype.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifies that the cursors of a {@link FileChannelInputStream} read the same data as a
+ * {@link RandomAccessFileInputStream} and are independent of each other.
+ */
+class TestFileChannelInputStream {
+
+  @TempDir
+  Path tmp;
+
+  @Test
+  void testRandomReads() throws IOException {
+    final byte[] data = data(20000);
+    final Path file = write(data);
+
+    final Random random = new Random(815);
+    try (FileChannelInputStream fcis = new FileChannelInputStream(file);
+        RandomAccessFileInputStream raf = new RandomAccessFileInputStream(file.toFile())) {
+      assertEquals(data.length, fcis.length());
+      for (int i = 0; i < 2000; i++) {
+        final long pos = random.nextInt(data.length + 100);
+        fcis.seek(pos);
+        raf.seek(pos);
+        if (random.nextBoolean()) {
+          assertEquals(raf.read(), fcis.read(), "read() at " + pos);
+        } else {
+          final int len = 1 + random.nextInt(random.nextBoolean() ? 100 : 10000);
+          final byte[] expected = new byte[len];
+          final byte[] actual = new byte[len];
+          raf.readFully(expected, 0, Math.min(len, (int) Math.max(0, data.length - pos)));
+          fcis.readFully(actual, 0, Math.min(len, (int) Math.max(0, data.length - pos)));
+          assertArrayEquals(expected, actual, "readFully at " + pos);
+        }
+        assertEquals(raf.getStreamPosition(), fcis.getStreamPosition());
+      }
+    }
+  }
+
+  @Test
+  void testForksAreIndependent() throws IOException {
+    final byte[] data = data(10000);
+    final Path file = write(data);
+
+    final FileChannelInputStream original = new FileChannelInputStream(file);
+    original.seek(100);
+    final FileChannelInputStream fork = original.fork();
+    assertEquals(100, fork.getStreamPosition());
+
+    fork.seek(5000);
+    assertEquals(data[100] & 0xff, original.read());
+    assertEquals(data[5000] & 0xff, fork.read());
+    assertEquals(101, original.getStreamPosition());
+
+    // closing one cursor leaves the others usable
+    original.close();
+    assertThrows(IOException.class, original::read);
+    assertEquals(data[5001] & 0xff, fork.read());
+
+    final FileChannelInputStream second = fork.fork();
+    fork.close();
+    assertEquals(data[5002] & 0xff, second.read());
+    second.close();
+    assertThrows(IOException.class, second::fork);
+  }
+
+  @Test
+  void testConcurrentCursors() throws Exception {
+    final byte[] data = data(1 << 20);
+    final Path file = write(data);
+
+    try (FileChannelInputStream original = new FileChannelInputStream(file)) {
+      final ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+        final List<Future<byte[]>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+          final FileChannelInputStream cursor = original.fork();
+          final int chunk = 1000 + t * 17;
+          futures.add(executor.submit(() -> {
+            try (FileChannelInputStream c = cursor) {
+              final byte[] actual = new byte[data.length];
+              for (int pos = 0; pos < data.length; pos += chunk) {
+                c.seek(pos);
+                c.readFully(actual, pos, Math.min(chunk, data.length - pos));
+              }
+              return actual;
+            }
+          }));
+        }
+        for (Future<byte[]> future : futures) {
+          assertArrayEquals(data, future.get());
+        }
+      } finally {
+        executor.shutdown();
+      }
+    }
+  }
+
+  private static byte[] data(final int length) {
+    final byte[] data = new byte[length];
+    new Random(4711).nextBytes(data);
+    return data;
+  }
+
+  private Path write(final byte[] data) throws IOException {
+    final Path file = tmp.resolve("data.bin");
+    Files.write(file, data);
+    return file;
+  }
+}
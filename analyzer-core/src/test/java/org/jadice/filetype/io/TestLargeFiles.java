@@ -0,0 +1,138 @@
+package org.jadice.filetype.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.jadice.filetype.Benchmark;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Verifies that the file based streams handle positions and lengths beyond 2^31 and 2^32, using a
+ * sparse file which doesn't occupy the space on disk. As file systems without support for sparse
+ * files would write 4 GB, this runs only with the {@link Benchmark benchmarks}.
+ */
+@Benchmark
+class TestLargeFiles {
+
+  private static final long SIZE = (1L << 32) + 1000;
+
+  /**
+   * The positions around which data is written. Everything else is zero.
+   */
+  private static final long[] MARKS = {
+      0, Integer.MAX_VALUE + 1L, 1L << 32, SIZE - 8
+  };
+
+  private static final int MARK_RADIUS = 8;
+
+  private static Path file;
+
+  @BeforeAll
+  static void createSparseFile() throws IOException {
+    file = Files.createTempFile("jadice-filetype-large-", ".bin");
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(SIZE);
+      for (long mark : MARKS) {
+        final long start = Math.max(0, mark - MARK_RADIUS);
+        final long end = Math.min(SIZE, mark + MARK_RADIUS);
+        raf.seek(start);
+        raf.write(expected(start, (int) (end - start)));
+      }
+    }
+  }
+
+  @AfterAll
+  static void deleteSparseFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  private static byte[] expected(final long position, final int length) {
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      final long p = position + i;
+      for (long mark : MARKS) {
+        if (p >= mark - MARK_RADIUS && p < mark + MARK_RADIUS)
+          data[i] = (byte) (p * 31 + 7);
+      }
+    }
+    return data;
+  }
+
+  static Stream<Arguments> streams() {
+    return Stream.of( //
+        Arguments.of("RandomAccessFileInputStream"), //
+        Arguments.of("FileChannelInputStream"), //
+        Arguments.of("MappedFileInputStream"), //
+        Arguments.of("SeekableByteChannelInputStream"));
+  }
+
+  private static SeekableInputStream open(final String type) throws IOException {
+    switch (type){
+      case "RandomAccessFileInputStream" :
+        return new RandomAccessFileInputStream(file.toFile());
+      case "FileChannelInputStream" :
+        return new FileChannelInputStream(file);
+      case "MappedFileInputStream" :
+        return new MappedFileInputStream(file);
+      default :
+        return new SeekableByteChannelInputStream(Files.newByteChannel(file));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("streams")
+  void testReadsAcrossBoundaries(final String type) throws IOException {
+    try (SeekableInputStream s = open(type)) {
+      assertEquals(SIZE, s.length());
+      assertEquals(SIZE, s.getSizeEstimate());
+
+      for (long mark : MARKS) {
+        final long start = Math.max(0, mark - MARK_RADIUS);
+        final int length = (int) (Math.min(SIZE, mark + MARK_RADIUS) - start);
+
+        // bulk reads
+        s.seek(start);
+        final byte[] actual = new byte[length];
+        s.readFully(actual);
+        assertArrayEquals(expected(start, length), actual, type + " at " + start);
+        assertEquals(start + length, s.getStreamPosition());
+
+        // single byte reads
+        s.seek(start);
+        for (int i = 0; i < length; i++) {
+          assertEquals(expected(start + i, 1)[0] & 0xff, s.read(), type + " at " + (start + i));
+        }
+
+        // primitives spanning the mark
+        if (mark > 0 && mark < SIZE - 8) {
+          s.seek(mark - 2);
+          final byte[] b = expected(mark - 2, 4);
+          assertEquals(b[0] << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | b[3] & 0xff, s.readInt());
+        }
+      }
+
+      // skipping over the boundaries
+      s.seek(0);
+      assertEquals(3L << 30, s.skipBytes(3L << 30));
+      assertEquals(3L << 30, s.getStreamPosition());
+      assertEquals(0, s.read());
+
+      // the end of the stream
+      s.seek(SIZE);
+      assertEquals(-1, s.read());
+      assertEquals(-1, s.read(new byte[10], 0, 10));
+      s.seek(SIZE + (1L << 32));
+      assertEquals(-1, s.read());
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package org.jadice.filetype.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jadice.filetype.Analyzer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifies that a {@link MappedFileInputStream} reads the same data as a
+ * {@link RandomAccessFileInputStream}, in particular across the boundaries of its mapped windows.
+ */
+class TestMappedFileInputStream {
+
+  @TempDir
+  Path tmp;
+
+  @Test
+  void testReadsAcrossWindows() throws IOException {
+    final byte[] data = new byte[10000];
+    new Random(4711).nextBytes(data);
+    final Path file = tmp.resolve("data.bin");
+    Files.write(file, data);
+
+    final Random random = new Random(815);
+    try (MappedFileInputStream mapped = new MappedFileInputStream(file, 64);
+        RandomAccessFileInputStream raf = new RandomAccessFileInputStream(file.toFile())) {
+      assertEquals(data.length, mapped.length());
+      for (int i = 0; i < 2000; i++) {
+        final long pos = random.nextInt(data.length + 100);
+        mapped.seek(pos);
+        raf.seek(pos);
+        if (random.nextBoolean()) {
+          assertEquals(raf.read(), mapped.read(), "read() at " + pos);
+        } else {
+          final int len = 1 + random.nextInt(300);
+          final byte[] expected = new byte[len];
+          final byte[] actual = new byte[len];
+          final int n = readUpTo(raf, expected);
+          assertEquals(n, readUpTo(mapped, actual), "read(byte[]) at " + pos);
+          assertArrayEquals(expected, actual, "read(byte[]) at " + pos);
+        }
+        assertEquals(raf.getStreamPosition(), mapped.getStreamPosition());
+      }
+
+      mapped.seek(60);
+      assertEquals(data[60] << 24 | (data[61] & 0xff) << 16 | (data[62] & 0xff) << 8 | data[63] & 0xff,
+          mapped.readInt());
+      mapped.seek(62);
+      assertEquals(data[62] << 24 | (data[63] & 0xff) << 16 | (data[64] & 0xff) << 8 | data[65] & 0xff,
+          mapped.readInt());
+    }
+  }
+
+  @Test
+  void testWholeFile() throws IOException {
+    final byte[] data = new byte[1000];
+    new Random(42).nextBytes(data);
+    final Path file = tmp.resolve("whole.bin");
+    Files.write(file, data);
+
+    try (MappedFileInputStream mapped = new MappedFileInputStream(file)) {
+      final byte[] actual = new byte[2000];
+      assertEquals(data.length, mapped.read(actual, 0, actual.length));
+      assertArrayEquals(data, Arrays.copyOf(actual, data.length));
+      assertEquals(-1, mapped.read());
+      assertEquals(-1, mapped.read(actual, 0, 1));
+    }
+  }
+
+  @Test
+  void testEmptyFile() throws IOException {
+    final Path file = tmp.resolve("empty.bin");
+    Files.write(file, new byte[0]);
+
+    try (MappedFileInputStream mapped = new MappedFileInputStream(file)) {
+      assertEquals(0, mapped.length());
+      assertEquals(-1, mapped.read());
+      assertEquals(-1, mapped.read(new byte[1], 0, 1));
+    }
+  }
+
+  @Test
+  void testTruncated() throws IOException {
+    final Path file = tmp.resolve("truncated.bin");
+    final byte[] data = new byte[65536];
+    System.arraycopy("GIF89a".getBytes(StandardCharsets.US_ASCII), 0, data, 0, 6);
+    Files.write(file, data);
+
+    try (MappedFileInputStream mapped = new MappedFileInputStream(file)) {
+      // map the window before truncating, mapping beyond the end of the file fails right away
+      assertEquals('G', mapped.read());
+      mapped.seek(0);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.truncate(0);
+      } catch (IOException e) {
+        // mapped files can't be truncated on some systems
+        assumeTrue(false, e.getMessage());
+      }
+
+      // the stream or the analyzer report the fault, depending on whether it is raised synchronously
+      assertThrows(IOException.class, () -> Analyzer.getInstance("/magic.xml").analyze(mapped));
+    }
+  }
+
+  @Test
+  void testClosed() throws IOException {
+    final Path file = tmp.resolve("closed.bin");
+    Files.write(file, new byte[]{
+        1, 2, 3
+    });
+
+    final MappedFileInputStream mapped = new MappedFileInputStream(file);
+    mapped.close();
+    mapped.close();
+    assertThrows(IOException.class, mapped::read);
+    assertThrows(IOException.class, () -> mapped.seek(1));
+  }
+
+  /**
+   * Read until the buffer is full or the stream ends, since the two streams may split a request
+   * differently.
+   */
+  private static int readUpTo(final SeekableInputStream s, final byte[] b) throws IOException {
+    int n = 0;
+    while (n < b.length) {
+      final int r = s.read(b, n, b.length - n);
+      if (r < 0) {
+        break;
+      }
+      n += r;
+    }
+    return n > 0 ? n : -1;
+  }
+}
@@ -0,0 +1,175 @@
+package org.jadice.filetype.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies the block management of the {@link MemoryInputStream}.
+ */
+class TestMemoryInputStream {
+
+  private static final int LENGTH = 3 * 1024 * 1024 + 17;
+
+  /**
+   * Records all allocations and releases.
+   */
+  private static final class RecordingAllocator implements BlockAllocator {
+    private final BlockPool pool;
+    final List<Integer> allocated = new ArrayList<>();
+    final List<ByteBuffer> released = new ArrayList<>();
+
+    RecordingAllocator(final boolean direct) {
+      this.pool = new BlockPool(direct, 64 * 1024 * 1024);
+    }
+
+    @Override
+    public ByteBuffer allocate(final int capacity) {
+      allocated.add(capacity);
+      return pool.allocate(capacity);
+    }
+
+    @Override
+    public void release(final ByteBuffer block) {
+      released.add(block);
+      pool.release(block);
+    }
+  }
+
+  @Test
+  void testDefaultBlockSize() {
+    assertEquals(2048, MemoryInputStream.getDefaultBlockSize());
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {
+      false, true
+  })
+  void testGeometricBlocks(final boolean direct) throws IOException {
+    final byte[] data = data();
+    final RecordingAllocator allocator = new RecordingAllocator(direct);
+    final MemoryInputStream s = new MemoryInputStream(new ByteArrayInputStream(data), 2048, true, allocator);
+
+    final byte[] actual = new byte[LENGTH];
+    s.readFully(actual);
+    assertArrayEquals(data, actual);
+    assertEquals(-1, s.read());
+    assertEquals(LENGTH, s.length());
+
+    // 2K, 4K, ... 512K, then 1M blocks
+    assertEquals(Arrays.asList(2048, 4096, 8192, 16384, 32768, 65536, 131072, 262144, 524288, 1048576, 1048576,
+        1048576), allocator.allocated);
+
+    s.close();
+    assertEquals(allocator.allocated.size(), allocator.released.size());
+
+    // the blocks are recycled by the next stream
+    final MemoryInputStream t = new MemoryInputStream(new ByteArrayInputStream(data), 2048, true, allocator);
+    t.seek(LENGTH - 1);
+    assertEquals(data[LENGTH - 1] & 0xff, t.read());
+    assertTrue(allocator.released.contains(t.blockOf(0)));
+    t.close();
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {
+      false, true
+  })
+  void testRandomReads(final boolean direct) throws IOException {
+    final byte[] data = data();
+    final Random random = new Random(815);
+    try (MemoryInputStream s = new MemoryInputStream(trickle(data), 1024, false, new RecordingAllocator(direct))) {
+      for (int i = 0; i < 5000; i++) {
+        final int pos = random.nextInt(LENGTH + 10);
+        s.seek(pos);
+        if (random.nextBoolean()) {
+          assertEquals(pos < LENGTH ? data[pos] & 0xff : -1, s.read(), "read() at " + pos);
+        } else {
+          final int len = 1 + random.nextInt(100000);
+          final byte[] actual = new byte[len];
+          final int n = s.read(actual, 0, len);
+          if (pos >= LENGTH) {
+            assertEquals(-1, n);
+          } else {
+            assertTrue(n > 0 && n <= len);
+            assertArrayEquals(Arrays.copyOfRange(data, pos, pos + n), Arrays.copyOf(actual, n), "read at " + pos);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testWrappedDataIsNotReleased() throws IOException {
+    final byte[] data = {
+        1, 2, 3
+    };
+    final BlockPool pool = (BlockPool) MemoryInputStream.getDefaultAllocator();
+    final long pooled = pool.getPooledBytes();
+    final MemoryInputStream s = new MemoryInputStream(data);
+    assertSame(data, s.blockOf(0).array());
+    assertEquals(1, s.read());
+    s.close();
+    assertEquals(pooled, pool.getPooledBytes());
+  }
+
+  @Test
+  void testSizeEstimateBeyond4GB() throws IOException {
+    final long size = (1L << 32) + 1000;
+    try (MemoryInputStream s = new MemoryInputStream(new ByteArrayInputStream(new byte[0]))) {
+      s.seek(size);
+      assertEquals(size, s.getStreamPosition());
+      assertEquals(size, s.getSizeEstimate());
+      assertEquals(-1, s.read());
+    }
+  }
+
+  @Test
+  void testPoolIsBounded() {
+    final BlockPool pool = new BlockPool(false, 4096);
+    final ByteBuffer a = pool.allocate(4096);
+    final ByteBuffer b = pool.allocate(4096);
+    pool.release(a);
+    pool.release(b);
+    assertEquals(4096, pool.getPooledBytes());
+    assertSame(a, pool.allocate(4096));
+    assertEquals(0, pool.getPooledBytes());
+
+    // direct buffers are not mixed up with heap buffers
+    pool.release(ByteBuffer.allocateDirect(1024));
+    assertEquals(0, pool.getPooledBytes());
+  }
+
+  private static byte[] data() {
+    final byte[] data = new byte[LENGTH];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+
+  /**
+   * @return a stream returning at most 1000 bytes per read
+   */
+  private static InputStream trickle(final byte[] data) {
+    return new FilterInputStream(new ByteArrayInputStream(data)) {
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        return super.read(b, off, Math.min(len, 1000));
+      }
+    };
+  }
+}
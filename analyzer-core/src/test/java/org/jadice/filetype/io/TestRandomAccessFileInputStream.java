@@ -0,0 +1,135 @@
+package org.jadice.filetype.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifies the adaptive read-ahead of the {@link RandomAccessFileInputStream}.
+ */
+class TestRandomAccessFileInputStream {
+
+  private static final int LENGTH = 2 * 1024 * 1024;
+
+  @TempDir
+  Path tmp;
+
+  @Test
+  void testSequentialScanGrowsReadAhead() throws IOException {
+    final byte[] data = data();
+    try (RandomAccessFileInputStream s = new RandomAccessFileInputStream(write(data).toFile())) {
+      assertEquals(RandomAccessFileInputStream.MIN_READ_AHEAD, s.getReadAhead());
+
+      final byte[] actual = new byte[LENGTH];
+      for (int i = 0; i < LENGTH; i += 100) {
+        s.readFully(actual, i, Math.min(100, LENGTH - i));
+      }
+      assertArrayEquals(data, actual);
+      assertEquals(-1, s.read());
+
+      assertEquals(RandomAccessFileInputStream.MAX_READ_AHEAD, s.getReadAhead());
+      // a fixed read-ahead of 64 bytes would require LENGTH / 64 reads
+      assertTrue(s.getReadAheadMisses() < 30, "misses: " + s.getReadAheadMisses());
+      assertEquals(0, s.getBytesOverRead());
+    }
+  }
+
+  @Test
+  void testRandomProbesKeepReadAheadSmall() throws IOException {
+    final byte[] data = data();
+    try (RandomAccessFileInputStream s = new RandomAccessFileInputStream(write(data).toFile())) {
+      // grow it first
+      for (int i = 0; i < 1000; i++) {
+        s.readFully(new byte[100]);
+      }
+      assertTrue(s.getReadAhead() > RandomAccessFileInputStream.MIN_READ_AHEAD);
+
+      final Random random = new Random(815);
+      for (int i = 0; i < 100; i++) {
+        final int pos = random.nextInt(LENGTH - 4);
+        s.seek(pos);
+        assertEquals(data[pos] & 0xff, s.read());
+        assertEquals(data[pos + 1] & 0xff, s.read());
+      }
+      assertEquals(RandomAccessFileInputStream.MIN_READ_AHEAD, s.getReadAhead());
+      assertTrue(s.getBytesOverRead() < 100 * 2 * RandomAccessFileInputStream.MAX_READ_AHEAD / 8,
+          "over-read: " + s.getBytesOverRead());
+    }
+  }
+
+  @Test
+  void testMixedAccess() throws IOException {
+    final byte[] data = data();
+    final Random random = new Random(4711);
+    try (RandomAccessFileInputStream s = new RandomAccessFileInputStream(write(data).toFile())) {
+      for (int i = 0; i < 5000; i++) {
+        final int pos = random.nextBoolean() ? random.nextInt(LENGTH + 10) : (int) s.getStreamPosition();
+        s.seek(pos);
+        if (random.nextBoolean()) {
+          assertEquals(pos < LENGTH ? data[pos] & 0xff : -1, s.read(), "read() at " + pos);
+        } else {
+          final int len = 1 + random.nextInt(random.nextBoolean() ? 50 : 300000);
+          final byte[] actual = new byte[len];
+          final int n = s.read(actual, 0, len);
+          if (pos >= LENGTH) {
+            assertEquals(-1, n);
+          } else {
+            assertTrue(n > 0 && n <= len);
+            assertArrayEquals(Arrays.copyOfRange(data, pos, pos + n), Arrays.copyOf(actual, n), "read at " + pos);
+          }
+        }
+      }
+      assertTrue(s.getReadAheadHits() > 0);
+    }
+  }
+
+  @Test
+  void testLargeReadsDontReadAhead() throws IOException {
+    final byte[] data = data();
+    try (RandomAccessFileInputStream s = new RandomAccessFileInputStream(write(data).toFile())) {
+      final byte[] actual = new byte[LENGTH / 2];
+      s.readFully(actual);
+      assertArrayEquals(Arrays.copyOf(data, LENGTH / 2), actual);
+
+      s.seek(0);
+      assertEquals(data[0] & 0xff, s.read());
+      assertEquals(0, s.getBytesOverRead());
+
+      s.seek(LENGTH / 2);
+      assertEquals(data[LENGTH / 2] & 0xff, s.read());
+    }
+  }
+
+  @Test
+  void testFixedReadAhead() throws IOException {
+    try (RandomAccessFileInputStream s = new RandomAccessFileInputStream(write(data()).toFile())) {
+      s.setReadAhead(32);
+      s.readFully(new byte[10000]);
+      for (int i = 0; i < 1000; i++) {
+        s.read();
+      }
+      assertEquals(32, s.getReadAhead());
+    }
+  }
+
+  private static byte[] data() {
+    final byte[] data = new byte[LENGTH];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+
+  private Path write(final byte[] data) throws IOException {
+    final Path file = tmp.resolve("data.bin");
+    Files.write(file, data);
+    return file;
+  }
+}
@@ -0,0 +1,176 @@
+package org.jadice.filetype.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies the primitive reads of the {@link SeekableInputStream} against a {@link ByteBuffer} in
+ * both byte orders.
+ */
+class TestSeekableInputStream {
+
+  private static final int LENGTH = 4096;
+
+  private static byte[] data() {
+    final byte[] data = new byte[LENGTH];
+    new Random(4711).nextBytes(data);
+    return data;
+  }
+
+  private static ByteOrder order(final boolean bigEndian) {
+    return bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {
+      false, true
+  })
+  void testPrimitives(final boolean bigEndian) throws IOException {
+    final byte[] data = data();
+    final ByteBuffer expected = ByteBuffer.wrap(data).order(order(bigEndian));
+    try (MemoryInputStream s = new MemoryInputStream(data)) {
+      s.setByteOrder(order(bigEndian));
+      for (int pos = 0; pos < LENGTH - 8; pos += 3) {
+        s.seek(pos);
+        assertEquals(expected.getShort(pos), s.readShort());
+        s.seek(pos);
+        assertEquals(expected.getShort(pos) & 0xffff, s.readUnsignedShort());
+        s.seek(pos);
+        assertEquals(expected.getChar(pos), s.readChar());
+        s.seek(pos);
+        assertEquals(expected.getInt(pos), s.readInt());
+        assertEquals(pos + 4, s.getStreamPosition());
+        s.seek(pos);
+        assertEquals(expected.getInt(pos) & 0xffffffffL, s.readUnsignedInt());
+        s.seek(pos);
+        assertEquals(expected.getLong(pos), s.readLong());
+        assertEquals(pos + 8, s.getStreamPosition());
+        s.seek(pos);
+        assertEquals(Float.floatToRawIntBits(expected.getFloat(pos)), Float.floatToRawIntBits(s.readFloat()));
+        s.seek(pos);
+        assertEquals(Double.doubleToRawLongBits(expected.getDouble(pos)), Double.doubleToRawLongBits(s.readDouble()));
+
+        for (int n = 1; n <= 4; n++) {
+          s.seek(pos);
+          assertEquals(legacyReadInt(data, pos, n, bigEndian), s.readInt(n), "readInt(" + n + ") at " + pos);
+          s.seek(pos);
+          assertEquals(legacyReadInt(data, pos, n, bigEndian) & (0xffffffffL >>> 32 - 8 * n), s.readUnsignedInt(n),
+              "readUnsignedInt(" + n + ") at " + pos);
+        }
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {
+      false, true
+  })
+  void testArrays(final boolean bigEndian) throws IOException {
+    final byte[] data = data();
+    final ByteBuffer expected = ByteBuffer.wrap(data).order(order(bigEndian));
+    try (MemoryInputStream s = new MemoryInputStream(data)) {
+      s.setByteOrder(order(bigEndian));
+
+      final short[] shorts = new short[LENGTH / 2 + 1];
+      s.readFully(shorts, 1, LENGTH / 2);
+      final short[] expectedShorts = new short[LENGTH / 2 + 1];
+      expected.asShortBuffer().get(expectedShorts, 1, LENGTH / 2);
+      assertArrayEquals(expectedShorts, shorts);
+
+      s.seek(0);
+      final char[] chars = new char[LENGTH / 2];
+      s.readFully(chars, 0, chars.length);
+      final char[] expectedChars = new char[LENGTH / 2];
+      expected.asCharBuffer().get(expectedChars);
+      assertArrayEquals(expectedChars, chars);
+
+      s.seek(0);
+      final int[] ints = new int[LENGTH / 4];
+      s.readFully(ints, 0, ints.length);
+      final int[] expectedInts = new int[LENGTH / 4];
+      expected.asIntBuffer().get(expectedInts);
+      assertArrayEquals(expectedInts, ints);
+
+      s.seek(0);
+      final long[] longs = new long[LENGTH / 8];
+      s.readFully(longs, 0, longs.length);
+      final long[] expectedLongs = new long[LENGTH / 8];
+      expected.asLongBuffer().get(expectedLongs);
+      assertArrayEquals(expectedLongs, longs);
+
+      s.seek(0);
+      final float[] floats = new float[LENGTH / 4];
+      s.readFully(floats, 0, floats.length);
+      for (int i = 0; i < floats.length; i++) {
+        assertEquals(Float.floatToRawIntBits(expected.getFloat(4 * i)), Float.floatToRawIntBits(floats[i]));
+      }
+
+      s.seek(0);
+      final double[] doubles = new double[LENGTH / 8];
+      s.readFully(doubles, 0, doubles.length);
+      for (int i = 0; i < doubles.length; i++) {
+        assertEquals(Double.doubleToRawLongBits(expected.getDouble(8 * i)), Double.doubleToRawLongBits(doubles[i]));
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {
+      1, 2, 3
+  })
+  void testEndOfStream(final int available) throws IOException {
+    try (MemoryInputStream s = new MemoryInputStream(new byte[LENGTH])) {
+      s.seek(LENGTH - available);
+      assertThrows(EOFException.class, s::readInt);
+      s.seek(LENGTH - available);
+      assertThrows(EOFException.class, () -> s.readInt(available + 1));
+      s.seek(LENGTH - available);
+      assertThrows(EOFException.class, s::readLong);
+      s.seek(LENGTH - available);
+      assertEquals(0, s.readInt(available));
+    }
+    assertThrows(IllegalArgumentException.class, () -> new MemoryInputStream(new byte[8]).readInt(5));
+  }
+
+  /**
+   * The former implementation of {@link SeekableInputStream#readInt(int)}.
+   */
+  private static int legacyReadInt(final byte[] data, final int pos, final int appliedBytes, final boolean bigEndian) {
+    int[] readBuffer = new int[appliedBytes];
+    for (int i = 0; i < appliedBytes; i++) {
+      readBuffer[i] = data[pos + i] & 0xff;
+    }
+
+    if (!bigEndian) {
+      final int[] swapped = new int[appliedBytes];
+      for (int i = 0; i < appliedBytes; i++) {
+        swapped[appliedBytes - 1 - i] = readBuffer[i];
+      }
+      readBuffer = swapped;
+    }
+
+    int result = 0;
+    for (int i = 0; i < appliedBytes; i++) {
+      result += (readBuffer[i] & 0xFF) << (8 * (appliedBytes - i - 1));
+    }
+
+    if ((readBuffer[0] & 0x80) == 0x80) {
+      int mask = 0;
+      for (int i = 0; i < appliedBytes; i++) {
+        mask += 0xFF << (8 * i);
+      }
+      result = -((~result & mask) + 1);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,156 @@
+package org.jadice.filetype.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies that a {@link SpillingInputStream} reads the same data regardless of its threshold and
+ * cleans up its temporary file.
+ */
+class TestSpillingInputStream {
+
+  private static final int LENGTH = 200000;
+
+  @TempDir
+  Path tmp;
+
+  @ParameterizedTest
+  @ValueSource(longs = {
+      0, 1, 1000, LENGTH - 1, LENGTH, LENGTH + 1
+  })
+  void testRandomReads(final long threshold) throws IOException {
+    final byte[] data = data();
+    final Random random = new Random(815);
+    try (SpillingInputStream s = new SpillingInputStream(trickle(data), threshold, tmp)) {
+      for (int i = 0; i < 3000; i++) {
+        final int pos = random.nextInt(LENGTH + 10);
+        s.seek(pos);
+        if (random.nextBoolean()) {
+          assertEquals(pos < LENGTH ? data[pos] & 0xff : -1, s.read(), "read() at " + pos);
+        } else {
+          final int len = 1 + random.nextInt(random.nextBoolean() ? 100 : 100000);
+          final byte[] actual = new byte[len];
+          final int n = s.read(actual, 0, len);
+          if (pos >= LENGTH) {
+            assertEquals(-1, n);
+          } else {
+            assertTrue(n > 0 && n <= len);
+            assertArrayEquals(Arrays.copyOfRange(data, pos, pos + n), Arrays.copyOf(actual, n), "read at " + pos);
+          }
+        }
+      }
+      s.seek(LENGTH);
+      assertEquals(-1, s.read());
+      assertEquals(LENGTH, s.length());
+      assertEquals(Math.min(threshold, LENGTH), s.getMemoryBytes());
+      assertEquals(Math.max(0, LENGTH - threshold), s.getDiskBytes());
+    }
+  }
+
+  @Test
+  void testReadsOnlyWhatIsRequested() throws IOException {
+    final byte[] data = data();
+    try (SpillingInputStream s = new SpillingInputStream(new ByteArrayInputStream(data), 1024, tmp)) {
+      s.seek(100);
+      assertEquals(data[100] & 0xff, s.read());
+      assertEquals(0, s.getDiskBytes());
+      assertFalse(s.isCachedFile());
+      assertEquals(-1, s.length());
+
+      s.seek(5000);
+      final byte[] actual = new byte[10];
+      s.readFully(actual);
+      assertArrayEquals(Arrays.copyOfRange(data, 5000, 5010), actual);
+      assertEquals(5010 - 1024, s.getDiskBytes());
+      assertTrue(s.isCachedFile());
+      assertEquals(-1, s.length());
+    }
+  }
+
+  @Test
+  void testReplay() throws IOException {
+    final byte[] data = data();
+    final SpillingInputStream s = new SpillingInputStream(trickle(data), 1024, tmp);
+    s.seek(5000);
+    assertEquals(data[5000] & 0xff, s.read());
+
+    // single bytes and blocks from memory, the spill file and the remainder of the source
+    try (InputStream replay = s.replay()) {
+      final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[777];
+      int pos = 0;
+      while (true) {
+        if (pos++ % 2 == 0) {
+          final int b = replay.read();
+          if (b < 0)
+            break;
+          actual.write(b);
+        } else {
+          final int n = replay.read(buffer, 0, buffer.length);
+          if (n < 0)
+            break;
+          actual.write(buffer, 0, n);
+        }
+      }
+      assertArrayEquals(data, actual.toByteArray());
+    }
+    assertThrows(IOException.class, s::read);
+  }
+
+  @Test
+  void testTemporaryFileIsDeleted() throws IOException {
+    final byte[] data = data();
+    final SpillingInputStream s = new SpillingInputStream(new ByteArrayInputStream(data), 1024, tmp);
+    s.seek(LENGTH - 1);
+    assertEquals(data[LENGTH - 1] & 0xff, s.read());
+    assertTrue(s.isCachedFile());
+
+    s.close();
+    assertEquals(0, count(tmp));
+    assertThrows(IOException.class, s::read);
+    s.close();
+  }
+
+  private static long count(final Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  private static byte[] data() {
+    final byte[] data = new byte[LENGTH];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+
+  /**
+   * @return a stream returning at most 1000 bytes per read
+   */
+  private static InputStream trickle(final byte[] data) {
+    return new FilterInputStream(new ByteArrayInputStream(data)) {
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        return super.read(b, off, Math.min(len, 1000));
+      }
+    };
+  }
+}
@@ -0,0 +1,327 @@
+package org.jadice.filetype.ziputil;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.jadice.filetype.io.ByteBufferInputStream;
+import org.jadice.filetype.io.MemoryInputStream;
+import org.jadice.filetype.io.SeekableInputStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies that the {@link ZipArchive} reads archives in place, via the central directory as well
+ * as via the local file headers.
+ */
+class TestZipArchive {
+
+  private static final byte[] TEXT = "Hello, ZIP!".getBytes();
+
+  private static final byte[] RANDOM = new byte[100000];
+
+  static {
+    new Random(4711).nextBytes(RANDOM);
+  }
+
+  @Test
+  void testCentralDirectory() throws IOException {
+    final byte[] zip = zip(false);
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(zip, 0, zip.length));
+    assertTrue(archive.hasCentralDirectory());
+    assertEntries(archive);
+  }
+
+  @Test
+  void testLocalFileHeaders() throws IOException {
+    // the length of a stream being buffered is unknown
+    final byte[] zip = zip(false);
+    final SeekableInputStream sis = new MemoryInputStream(new ByteArrayInputStream(zip), 1024, false);
+    final ZipArchive archive = ZipArchive.open(sis);
+    assertFalse(archive.hasCentralDirectory());
+    assertEntries(archive);
+  }
+
+  @Test
+  void testStreamIsBufferedLazily() throws IOException {
+    final byte[] zip = zip(false);
+    final ByteArrayInputStream source = new ByteArrayInputStream(zip);
+    final ZipArchive archive = ZipArchive.open(new MemoryInputStream(source, 1024, false));
+    assertEquals("text.txt", archive.findEntry(e -> e.getName().endsWith(".txt")).getName());
+    assertTrue(source.available() > RANDOM.length, "the binary entries have not been buffered");
+  }
+
+  @Test
+  void testTruncatedArchive() throws IOException {
+    final byte[] zip = zip(false);
+    final byte[] truncated = Arrays.copyOf(zip, zip.length - 30);
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(truncated, 0, truncated.length));
+    assertFalse(archive.hasCentralDirectory());
+    assertEntries(archive);
+  }
+
+  @Test
+  void testDataDescriptorsAreNotInflated() throws IOException {
+    final byte[] zip = zip(false);
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(zip, 0, zip.length));
+    final ZipArchive.Entry deflated = archive.getEntry("deflated.bin");
+    assertTrue((deflated.getFlags() & ZipArchive.FLAG_DATA_DESCRIPTOR) != 0);
+
+    // make the deflated data invalid, so that inflating it fails
+    final byte[] corrupt = truncated(zip);
+    final int dataOffset = (int) deflated.getLocalHeaderOffset() + 30 + "deflated.bin".length();
+    Arrays.fill(corrupt, dataOffset, dataOffset + 4, (byte) 0xff);
+    final ZipArchive scanned = ZipArchive.open(new ByteBufferInputStream(corrupt, 0, corrupt.length));
+    assertFalse(scanned.hasCentralDirectory());
+    final ZipArchive.Entry entry = scanned.getEntry("deflated.bin");
+    assertEquals(deflated.getCompressedSize(), entry.getCompressedSize());
+    assertEquals(RANDOM.length, entry.getSize());
+    assertEquals(deflated.getCrc(), entry.getCrc());
+  }
+
+  @Test
+  void testDataDescriptorsWithoutSignature() throws IOException {
+    // drop the optional signatures of the data descriptors and the central directory
+    final byte[] zip = zip(false);
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(zip, 0, zip.length));
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    int p = 0;
+    for (ZipArchive.Entry e : archive.getEntries()) {
+      if ((e.getFlags() & ZipArchive.FLAG_DATA_DESCRIPTOR) != 0) {
+        final int descriptor = (int) (e.getLocalHeaderOffset() + 30 + e.getName().length() + e.getCompressedSize());
+        bos.write(zip, p, descriptor - p);
+        p = descriptor + 4;
+      }
+    }
+    final ZipArchive.Entry last = archive.getEntry("deflated.bin");
+    bos.write(zip, p, (int) (last.getLocalHeaderOffset() + 30 + last.getName().length() + last.getCompressedSize() + 16
+        - p));
+    final byte[] stripped = bos.toByteArray();
+
+    final ZipArchive scanned = ZipArchive.open(new ByteBufferInputStream(stripped, 0, stripped.length));
+    assertFalse(scanned.hasCentralDirectory());
+    assertEntries(scanned);
+  }
+
+  @Test
+  void testPrecedingData() throws IOException {
+    final byte[] zip = zip(false);
+    final byte[] prefixed = new byte[1000 + zip.length];
+    System.arraycopy(zip, 0, prefixed, 1000, zip.length);
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(prefixed, 0, prefixed.length));
+    assertTrue(archive.hasCentralDirectory());
+    assertEntries(archive);
+  }
+
+  @Test
+  void testArchiveComment() throws IOException {
+    final byte[] zip = zip(true);
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(zip, 0, zip.length));
+    assertTrue(archive.hasCentralDirectory());
+    assertEntries(archive);
+  }
+
+  @Test
+  void testZip64() throws IOException {
+    // more than 65535 entries require the ZIP64 end of central directory record
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+      for (int i = 0; i < 70000; i++) {
+        zos.putNextEntry(new ZipEntry("e" + i));
+        zos.write(i & 0xff);
+        zos.closeEntry();
+      }
+    }
+    final byte[] zip = bos.toByteArray();
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(zip, 0, zip.length));
+    assertTrue(archive.hasCentralDirectory());
+    assertEquals(70000, archive.getEntries().size());
+    try (InputStream is = archive.getInputStream(archive.getEntry("e69999"))) {
+      assertEquals(69999 & 0xff, is.read());
+      assertEquals(-1, is.read());
+    }
+  }
+
+  @Test
+  void testCorruptEntry() throws IOException {
+    final byte[] zip = zip(false);
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(zip, 0, zip.length));
+    final ZipArchive.Entry stored = archive.getEntry("stored.bin");
+
+    // flip a byte of the stored data
+    final byte[] corrupt = zip.clone();
+    final int dataOffset = (int) stored.getLocalHeaderOffset() + 30 + "stored.bin".length();
+    corrupt[dataOffset + 10] ^= 1;
+    final ZipArchive corrupted = ZipArchive.open(new ByteBufferInputStream(corrupt, 0, corrupt.length));
+    try (InputStream is = corrupted.getInputStream(corrupted.getEntry("stored.bin"))) {
+      assertThrows(ZipException.class, is::readAllBytes);
+    }
+  }
+
+  @Test
+  void testEncryptionMethods() throws IOException {
+    final byte[] aes = {
+        2, 0, 'A', 'E', 3, 8, 0
+    };
+    assertEncryptionMethod(ZipArchive.EncryptionMethod.NONE, 0, ZipArchive.STORED, null);
+    assertEncryptionMethod(ZipArchive.EncryptionMethod.ZIP_CRYPTO, ZipArchive.FLAG_ENCRYPTED, ZipArchive.STORED, null);
+    assertEncryptionMethod(ZipArchive.EncryptionMethod.STRONG,
+        ZipArchive.FLAG_ENCRYPTED | ZipArchive.FLAG_STRONG_ENCRYPTION, ZipArchive.STORED, null);
+    assertEncryptionMethod(ZipArchive.EncryptionMethod.AES_256, ZipArchive.FLAG_ENCRYPTED,
+        ZipArchive.AES_ENCRYPTED, aes);
+    aes[4] = 1;
+    assertEncryptionMethod(ZipArchive.EncryptionMethod.AES_128, ZipArchive.FLAG_ENCRYPTED,
+        ZipArchive.AES_ENCRYPTED, aes);
+    assertEncryptionMethod(ZipArchive.EncryptionMethod.UNKNOWN, ZipArchive.FLAG_ENCRYPTED,
+        ZipArchive.AES_ENCRYPTED, null);
+  }
+
+  @Test
+  void testFindEntryScansLazily() throws IOException {
+    final byte[] zip = truncated(zip(false));
+    final ZipArchive archive = ZipArchive.open(new ByteBufferInputStream(zip, 0, zip.length));
+    assertEquals("text.txt", archive.findEntry(e -> e.getName().endsWith(".txt")).getName());
+
+    // the deflated binary entry hasn't been reached yet
+    assertEquals("stored.bin", archive.findEntry(e -> e.getName().endsWith(".bin")).getName());
+    assertNull(archive.findEntry(ZipArchive.Entry::isEncrypted));
+    assertEquals(4, archive.getEntries().size());
+  }
+
+  /**
+   * Patch the flags and compression method of a single-entry archive, in the local as well as the
+   * central header, and check the encryption method in both.
+   */
+  private static void assertEncryptionMethod(final ZipArchive.EncryptionMethod expected, final int flags,
+      final int method, final byte[] aesField) throws IOException {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+      final ZipEntry entry = new ZipEntry("secret.bin");
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(TEXT.length);
+      final CRC32 crc = new CRC32();
+      crc.update(TEXT);
+      entry.setCrc(crc.getValue());
+      if (null != aesField) {
+        final ByteBuffer extra = ByteBuffer.allocate(4 + aesField.length).order(ByteOrder.LITTLE_ENDIAN);
+        extra.putShort((short) 0x9901).putShort((short) aesField.length).put(aesField);
+        entry.setExtra(extra.array());
+      }
+      zos.putNextEntry(entry);
+      zos.write(TEXT);
+      zos.closeEntry();
+    }
+    final ByteBuffer zip = ByteBuffer.wrap(bos.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    zip.putShort(6, (short) flags).putShort(8, (short) method);
+    for (int i = 0; i < zip.limit() - 4; i++) {
+      if (zip.getInt(i) == 0x02014b50) {
+        zip.putShort(i + 8, (short) flags).putShort(i + 10, (short) method);
+        break;
+      }
+    }
+
+    final byte[] data = zip.array();
+    final ZipArchive central = ZipArchive.open(new ByteBufferInputStream(data, 0, data.length));
+    assertEquals(expected, central.getEntry("secret.bin").getEncryptionMethod());
+    final byte[] truncated = truncated(data);
+    final ZipArchive local = ZipArchive.open(new ByteBufferInputStream(truncated, 0, truncated.length));
+    assertFalse(local.hasCentralDirectory());
+    assertEquals(expected, local.getEntry("secret.bin").getEncryptionMethod());
+  }
+
+  @Test
+  void testNotAZip() {
+    final byte[] data = "no zip at all".getBytes();
+    assertThrows(ZipException.class, () -> ZipArchive.open(new ByteBufferInputStream(data, 0, data.length)));
+  }
+
+  private static void assertEntries(final ZipArchive archive) throws IOException {
+    assertEquals(Arrays.asList("dir/", "text.txt", "stored.bin", "deflated.bin"),
+        archive.getEntries().stream().map(ZipArchive.Entry::getName).toList());
+    assertTrue(archive.getEntry("dir/").isDirectory());
+    assertNull(archive.getEntry("missing"));
+
+    // read the entries interleaved to make sure they don't share the stream position
+    try (InputStream stored = archive.getInputStream(archive.getEntry("stored.bin"));
+        InputStream deflated = archive.getInputStream(archive.getEntry("deflated.bin"))) {
+      final byte[] a = new byte[RANDOM.length];
+      final byte[] b = new byte[RANDOM.length];
+      int pa = 0;
+      int pb = 0;
+      while (pa < a.length || pb < b.length) {
+        if (pa < a.length)
+          pa += stored.read(a, pa, Math.min(1000, a.length - pa));
+        if (pb < b.length)
+          pb += deflated.read(b, pb, Math.min(777, b.length - pb));
+      }
+      assertEquals(-1, stored.read());
+      assertEquals(-1, deflated.read());
+      assertArrayEquals(RANDOM, a);
+      assertArrayEquals(RANDOM, b);
+    }
+
+    final ZipArchive.Entry text = archive.getEntry("text.txt");
+    assertNotNull(text);
+    assertEquals(ZipArchive.DEFLATED, text.getMethod());
+    assertEquals(TEXT.length, text.getSize());
+    try (InputStream is = archive.getInputStream(text)) {
+      assertArrayEquals(TEXT, is.readAllBytes());
+    }
+  }
+
+  /**
+   * @return the archive without its end of central directory record, so that its entries must be
+   *         scanned
+   */
+  private static byte[] truncated(final byte[] zip) {
+    return Arrays.copyOf(zip, zip.length - 22);
+  }
+
+  /**
+   * @return an archive with a directory, a deflated text, a stored and a deflated binary entry; the
+   *         deflated entries use data descriptors
+   */
+  private static byte[] zip(final boolean comment) throws IOException {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+      if (comment)
+        zos.setComment("A comment containing PK\u0005\u0006 to confuse the search");
+      zos.putNextEntry(new ZipEntry("dir/"));
+      zos.closeEntry();
+      zos.putNextEntry(new ZipEntry("text.txt"));
+      zos.write(TEXT);
+      zos.closeEntry();
+
+      final ZipEntry stored = new ZipEntry("stored.bin");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(RANDOM.length);
+      final CRC32 crc = new CRC32();
+      crc.update(RANDOM);
+      stored.setCrc(crc.getValue());
+      zos.putNextEntry(stored);
+      zos.write(RANDOM);
+      zos.closeEntry();
+
+      zos.putNextEntry(new ZipEntry("deflated.bin"));
+      zos.write(RANDOM);
+      zos.closeEntry();
+    }
+    return bos.toByteArray();
+  }
+}
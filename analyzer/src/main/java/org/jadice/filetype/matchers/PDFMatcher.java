@@ -305,28 +305,4 @@ public class PDFMatcher extends Matcher {
     }
   }
 
-  /**
-   * Reads the whole stream to determine the length of it.
-   *
-   * @param sis stream
-   * @return length of given stream or -1 if any error occurred
-   */
-  private static long getFileLength(final SeekableInputStream sis) {
-    try {
-      sis.seek(0);
-      int read = 0;
-      final byte[] buffer = new byte[4096];
-      do {
-        synchronized (sis) { // perform synchronization inside while loop! See DOCPV-932
-          read = sis.read(buffer);
-        }
-      } while (read != -1);
-
-      // whole sis is read now
-      return sis.length();
-    } catch (Exception e) {
-      LOGGER.warn("Failed to determine file length.", e);
-      return -1;
-    }
-  }
 }
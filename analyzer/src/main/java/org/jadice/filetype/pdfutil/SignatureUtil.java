@@ -85,20 +85,24 @@ public abstract class SignatureUtil {
   }
 
   /**
-   * Reads the whole stream to determine the length of it.
+   * Determines the length of the stream, reading the whole stream if the length is not known yet.
+   * The stream is owned by the current analysis, so no synchronization is required.
    *
    * @param sis stream
    * @return length of given stream or -1 if any error occurred
    */
   protected static long getFileLength(final SeekableInputStream sis) {
     try {
+      final long length = sis.length();
+      if (length >= 0) {
+        return length;
+      }
+
       sis.seek(0);
       int read = 0;
       final byte[] buffer = new byte[4096];
       do {
-        synchronized (sis) { // perform synchronization inside while loop! See DOCPV-932
-          read = sis.read(buffer);
-        }
+        read = sis.read(buffer);
       } while (read != -1);
 
       // whole sis is read now